@@ -0,0 +1,61 @@
+package com.xiaomi.infra.galaxy.fds.android;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.xiaomi.infra.galaxy.fds.android.model.FDSCallback;
+import com.xiaomi.infra.galaxy.fds.android.model.FDSObject;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
+import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
+
+/**
+ * Asynchronous version of {@link GalaxyFDSClient}. Every method returns
+ * immediately with a {@link Future} of the result, and notifies the optional
+ * callback when the request completes. The failure of a request is reported
+ * both to the callback and by {@link Future#get()}, wrapped in an
+ * {@link java.util.concurrent.ExecutionException}. A request rejected by the
+ * executor, e.g. after it is shut down, fails the same way. The callback is
+ * not notified of a request cancelled through its future.
+ * <p/>
+ * The params, progress listener and callback arguments may be null.
+ */
+public interface AsyncGalaxyFDSClient {
+
+  /**
+   * @see GalaxyFDSClient#getObject(String, String, long, List, ProgressListener)
+   */
+  Future<FDSObject> getObject(String bucketName, String objectName,
+      long offset, List<UserParam> params, ProgressListener progressListener,
+      FDSCallback<FDSObject> callback);
+
+  /**
+   * @see GalaxyFDSClient#getObject(String, String, File, List, ProgressListener)
+   */
+  Future<ObjectMetadata> getObject(String bucketName, String objectName,
+      File destinationFile, List<UserParam> params,
+      ProgressListener progressListener, FDSCallback<ObjectMetadata> callback);
+
+  /**
+   * @see GalaxyFDSClient#putObject(String, String, File, List, ProgressListener)
+   */
+  Future<PutObjectResult> putObject(String bucketName, String objectName,
+      File file, List<UserParam> params, ProgressListener progressListener,
+      FDSCallback<PutObjectResult> callback);
+
+  /**
+   * @see GalaxyFDSClient#putObject(String, String, InputStream, ObjectMetadata, List, ProgressListener)
+   */
+  Future<PutObjectResult> putObject(String bucketName, String objectName,
+      InputStream input, ObjectMetadata metadata, List<UserParam> params,
+      ProgressListener progressListener, FDSCallback<PutObjectResult> callback);
+
+  /**
+   * @see GalaxyFDSClient#doesObjectExist(String, String)
+   */
+  Future<Boolean> doesObjectExist(String bucketName, String objectName,
+      FDSCallback<Boolean> callback);
+}
@@ -0,0 +1,175 @@
+package com.xiaomi.infra.galaxy.fds.android;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
+import com.xiaomi.infra.galaxy.fds.android.model.FDSCallback;
+import com.xiaomi.infra.galaxy.fds.android.model.FDSObject;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
+import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
+import com.xiaomi.infra.galaxy.fds.android.util.Args;
+
+/**
+ * Runs the requests of a {@link GalaxyFDSClient} on an executor. The requests
+ * share the HTTP connection pool and the multipart upload thread pool of the
+ * wrapped client, so a single client should be shared by the synchronous and
+ * asynchronous callers of an application.
+ * <p/>
+ * The executor should not be the one used by the wrapped client for
+ * uploading parts, otherwise an upload may wait for its own parts forever.
+ */
+public class AsyncGalaxyFDSClientImpl implements AsyncGalaxyFDSClient {
+
+  private final GalaxyFDSClient client;
+  private final Executor executor;
+
+  public AsyncGalaxyFDSClientImpl(GalaxyFDSClient client, Executor executor) {
+    Args.notNull(client, "client");
+    Args.notNull(executor, "executor");
+    this.client = client;
+    this.executor = executor;
+  }
+
+  public AsyncGalaxyFDSClientImpl(FDSClientConfiguration config,
+      Executor executor) {
+    this(new GalaxyFDSClientImpl(config), executor);
+  }
+
+  /**
+   * @return The synchronous client which runs the requests
+   */
+  public GalaxyFDSClient getClient() {
+    return client;
+  }
+
+  @Override
+  public Future<FDSObject> getObject(final String bucketName,
+      final String objectName, final long offset, final List<UserParam> params,
+      final ProgressListener progressListener,
+      FDSCallback<FDSObject> callback) {
+    return submit(new Callable<FDSObject>() {
+      @Override
+      public FDSObject call() throws Exception {
+        return client.getObject(bucketName, objectName, offset, params,
+            progressListener);
+      }
+    }, callback);
+  }
+
+  @Override
+  public Future<ObjectMetadata> getObject(final String bucketName,
+      final String objectName, final File destinationFile,
+      final List<UserParam> params, final ProgressListener progressListener,
+      FDSCallback<ObjectMetadata> callback) {
+    return submit(new Callable<ObjectMetadata>() {
+      @Override
+      public ObjectMetadata call() throws Exception {
+        return client.getObject(bucketName, objectName, destinationFile,
+            params, progressListener);
+      }
+    }, callback);
+  }
+
+  @Override
+  public Future<PutObjectResult> putObject(final String bucketName,
+      final String objectName, final File file, final List<UserParam> params,
+      final ProgressListener progressListener,
+      FDSCallback<PutObjectResult> callback) {
+    return submit(new Callable<PutObjectResult>() {
+      @Override
+      public PutObjectResult call() throws Exception {
+        return client.putObject(bucketName, objectName, file, params,
+            progressListener);
+      }
+    }, callback);
+  }
+
+  @Override
+  public Future<PutObjectResult> putObject(final String bucketName,
+      final String objectName, final InputStream input,
+      final ObjectMetadata metadata, final List<UserParam> params,
+      final ProgressListener progressListener,
+      FDSCallback<PutObjectResult> callback) {
+    return submit(new Callable<PutObjectResult>() {
+      @Override
+      public PutObjectResult call() throws Exception {
+        return client.putObject(bucketName, objectName, input, metadata,
+            params, progressListener);
+      }
+    }, callback);
+  }
+
+  @Override
+  public Future<Boolean> doesObjectExist(final String bucketName,
+      final String objectName, FDSCallback<Boolean> callback) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return client.doesObjectExist(bucketName, objectName);
+      }
+    }, callback);
+  }
+
+  private <T> Future<T> submit(Callable<T> callable, FDSCallback<T> callback) {
+    FDSFutureTask<T> task = new FDSFutureTask<T>(callable, callback);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // Reported the same as a failed request, so the callback still knows
+      task.fail(new GalaxyFDSClientException(
+          "The request is rejected by the executor", e));
+    }
+    return task;
+  }
+
+  /**
+   * A future task which notifies the callback once it completes
+   */
+  private static class FDSFutureTask<T> extends FutureTask<T> {
+    private final FDSCallback<T> callback;
+
+    FDSFutureTask(Callable<T> callable, FDSCallback<T> callback) {
+      super(callable);
+      this.callback = callback;
+    }
+
+    /**
+     * Fails the task which is never run
+     */
+    void fail(Exception e) {
+      setException(e);
+    }
+
+    @Override
+    protected void done() {
+      if (callback == null || isCancelled()) {
+        return;
+      }
+
+      T result;
+      try {
+        result = get();
+      } catch (InterruptedException e) {
+        // Never happens as the task is done
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        callback.onFailure(cause instanceof Exception ? (Exception) cause
+            : new GalaxyFDSClientException(cause));
+        return;
+      }
+      callback.onSuccess(result);
+    }
+  }
+}
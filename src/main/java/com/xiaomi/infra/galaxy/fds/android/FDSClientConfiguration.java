@@ -1,6 +1,9 @@
 package com.xiaomi.infra.galaxy.fds.android;
 
+import java.io.File;
+
 import com.xiaomi.infra.galaxy.fds.android.auth.GalaxyFDSCredential;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportType;
 import com.xiaomi.infra.galaxy.fds.android.util.Args;
 
 public class FDSClientConfiguration {
@@ -26,6 +29,67 @@ public class FDSClientConfiguration {
    */
   public static final int DEFAULT_UPLOAD_PART_SIZE = 4096;
 
+  /**
+   * The default max number of parts of a multipart upload
+   */
+  public static final int DEFAULT_MAX_UPLOAD_PART_NUMBER = 10000;
+
+  /**
+   * The default min size of a upload part when adaptive part size is enabled
+   */
+  public static final int DEFAULT_MIN_UPLOAD_PART_SIZE = 64 * 1024;
+
+  /**
+   * The default size of the first upload part when adaptive part size is
+   * enabled
+   */
+  public static final int DEFAULT_INITIAL_UPLOAD_PART_SIZE = 1024 * 1024;
+
+  /**
+   * The default max size of a upload part when adaptive part size is enabled
+   */
+  public static final int DEFAULT_MAX_UPLOAD_PART_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * The default size of a range downloaded in parallel
+   */
+  public static final int DEFAULT_DOWNLOAD_RANGE_SIZE = 1024 * 1024;
+
+  /**
+   * The default max number of ranges downloaded concurrently
+   */
+  public static final int DEFAULT_MAX_PARALLEL_DOWNLOAD_RANGES = 4;
+
+  /**
+   * The default max number of objects checked concurrently by a batch check
+   */
+  public static final int DEFAULT_MAX_PARALLEL_OBJECT_CHECKS = 8;
+
+  /**
+   * The default max total size of the objects cached on disk
+   */
+  public static final long DEFAULT_OBJECT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * The default max size of an object cached in memory
+   */
+  public static final int DEFAULT_MEMORY_CACHE_MAX_OBJECT_SIZE = 64 * 1024;
+
+  /**
+   * The default time to live of an object cached in memory
+   */
+  public static final long DEFAULT_MEMORY_CACHE_TTL_MS = 60 * 1000;
+
+  /**
+   * The default max number of objects whose metadata is cached
+   */
+  public static final int DEFAULT_METADATA_CACHE_MAX_ENTRIES = 1024;
+
+  /**
+   * The default max number of presigned URIs cached
+   */
+  public static final int DEFAULT_PRESIGNED_URI_CACHE_SIZE = 1024;
+
   /**
    * The amount of time to wait (in milliseconds) for data to be transfered
    * over an established, open connection before the connection is timed out.
@@ -43,6 +107,35 @@ public class FDSClientConfiguration {
    */
   private int connectionTimeoutMs = DEFAULT_CONNECTION_TIMEOUT_MS;
 
+  /**
+   * The default max number of pooled connections to the same host, which is
+   * the same as the default max size of the thread pool so that the parts of
+   * an upload are sent in parallel
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+  /**
+   * The default max number of pooled connections in total
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+  /**
+   * The default time after which an idle pooled connection is closed
+   */
+  public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 60 * 1000;
+
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  /**
+   * The max time a connection is kept alive in the pool after it is
+   * released, 0 means as long as the server allows
+   */
+  private long connectionTtlMs = 0;
+  private long idleConnectionTimeoutMs = DEFAULT_IDLE_CONNECTION_TIMEOUT_MS;
+  private boolean enableIdleConnectionReaper = false;
+  private HttpTransportType httpTransportType = HttpTransportType.APACHE;
+
   /**
    * Optional size hint (in bytes) for the low level TCP send buffer. This is
    * an advanced option for advanced users who want to tune low level TCP
@@ -67,6 +160,78 @@ public class FDSClientConfiguration {
    */
   private int uploadPartSize = DEFAULT_UPLOAD_PART_SIZE;
 
+  /**
+   * The max number of parts of a multipart upload accepted by the server,
+   * the upload part size is enlarged for large objects to respect it
+   */
+  private int maxUploadPartNumber = DEFAULT_MAX_UPLOAD_PART_NUMBER;
+
+  /**
+   * Whether to adjust the size of upload parts to the measured throughput,
+   * starting from initialUploadPartSize and bounded by min and max upload
+   * part size
+   */
+  private boolean enableAdaptiveUploadPartSize = false;
+  private int initialUploadPartSize = DEFAULT_INITIAL_UPLOAD_PART_SIZE;
+  private int minUploadPartSize = DEFAULT_MIN_UPLOAD_PART_SIZE;
+  private int maxUploadPartSize = DEFAULT_MAX_UPLOAD_PART_SIZE;
+
+  /**
+   * Objects smaller than this are uploaded in a single request instead of a
+   * multipart upload. A value of 0 means always using multipart upload.
+   */
+  private int directUploadThreshold = 0;
+
+  /**
+   * The directory to store the journals of resumable file uploads, null
+   * means file uploads are not resumable
+   */
+  private File uploadCheckpointDir;
+
+  /**
+   * Whether to download objects to files by parallel ranged requests
+   */
+  private boolean enableParallelDownload = false;
+  private int downloadRangeSize = DEFAULT_DOWNLOAD_RANGE_SIZE;
+  private int maxParallelDownloadRanges = DEFAULT_MAX_PARALLEL_DOWNLOAD_RANGES;
+
+  /**
+   * Whether to keep resume records of file downloads across calls
+   */
+  private boolean enableResumableDownload = false;
+
+  /**
+   * The max number of HEAD requests of a batch existence check in flight
+   */
+  private int maxParallelObjectChecks = DEFAULT_MAX_PARALLEL_OBJECT_CHECKS;
+
+  /**
+   * The directory to cache the downloaded objects, null means objects are
+   * not cached on disk
+   */
+  private File objectCacheDir;
+  private long objectCacheSize = DEFAULT_OBJECT_CACHE_SIZE;
+
+  /**
+   * The max total size of the small objects cached in memory, 0 means
+   * objects are not cached in memory
+   */
+  private long memoryCacheSize = 0;
+  private int memoryCacheMaxObjectSize = DEFAULT_MEMORY_CACHE_MAX_OBJECT_SIZE;
+  private long memoryCacheTtlMs = DEFAULT_MEMORY_CACHE_TTL_MS;
+
+  /**
+   * The time to live of the cached metadata of objects, 0 means the metadata
+   * is not cached
+   */
+  private long metadataCacheTtlMs = 0;
+  private int metadataCacheMaxEntries = DEFAULT_METADATA_CACHE_MAX_ENTRIES;
+
+  /**
+   * The max number of presigned URIs cached, 0 means the URIs are not cached
+   */
+  private int presignedUriCacheSize = DEFAULT_PRESIGNED_URI_CACHE_SIZE;
+
   public static final int DEFAULT_THREAD_POOL_CORE_SIZE = 4;
 
   private int threadPoolCoreSize = DEFAULT_THREAD_POOL_CORE_SIZE;
@@ -83,6 +248,18 @@ public class FDSClientConfiguration {
 
   private int workQueueCapacity = DEFAULT_WORK_QUEUE_CAPACITY;
 
+  /**
+   * The default max number of upload parts buffered in memory at once
+   */
+  public static final int DEFAULT_MAX_IN_FLIGHT_UPLOAD_PARTS = 16;
+
+  /**
+   * The max number of upload parts which have been read from the input stream
+   * but not uploaded yet. The peak memory used by an upload is roughly
+   * maxInFlightUploadParts * uploadPartSize
+   */
+  private int maxInFlightUploadParts = DEFAULT_MAX_IN_FLIGHT_UPLOAD_PARTS;
+
   /**
    * The credential of FDS client
    */
@@ -208,6 +385,197 @@ public class FDSClientConfiguration {
     return this;
   }
 
+  /**
+   * Gets the max number of pooled connections to the same host
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Sets the max number of pooled connections to the same host. Requests to
+   * the host beyond this number wait for a connection to be released, so it
+   * should be no less than the number of parallel uploads and downloads.
+   * <p/>
+   * @param maxConnectionsPerRoute
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    Args.positive(maxConnectionsPerRoute, "max connections per route");
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * Sets the max number of pooled connections to the same host, and returns
+   * the updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxConnectionsPerRoute
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxConnectionsPerRoute(
+      int maxConnectionsPerRoute) {
+    setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+    return this;
+  }
+
+  /**
+   * Gets the max number of pooled connections in total
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Sets the max number of pooled connections in total
+   * <p/>
+   * @param maxConnections
+   */
+  public void setMaxConnections(int maxConnections) {
+    Args.positive(maxConnections, "max connections");
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Sets the max number of pooled connections in total, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxConnections
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxConnections(int maxConnections) {
+    setMaxConnections(maxConnections);
+    return this;
+  }
+
+  /**
+   * Gets the max time a connection is kept alive in the pool after it is
+   * released
+   */
+  public long getConnectionTtlMs() {
+    return connectionTtlMs;
+  }
+
+  /**
+   * Sets the max time a connection is kept alive in the pool after it is
+   * released. The connection is closed afterwards even if the server would
+   * keep it alive longer, e.g. to pick up DNS changes.
+   * <p/>
+   * @param connectionTtlMs The time in milliseconds, or 0 to keep the
+   *                        connections alive as long as the server allows
+   */
+  public void setConnectionTtlMs(long connectionTtlMs) {
+    Args.notNegative(connectionTtlMs, "connection ttl");
+    this.connectionTtlMs = connectionTtlMs;
+  }
+
+  /**
+   * Sets the max time a connection is kept alive in the pool after it is
+   * released, and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param connectionTtlMs
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withConnectionTtlMs(long connectionTtlMs) {
+    setConnectionTtlMs(connectionTtlMs);
+    return this;
+  }
+
+  /**
+   * Gets the time after which an idle pooled connection is closed
+   */
+  public long getIdleConnectionTimeoutMs() {
+    return idleConnectionTimeoutMs;
+  }
+
+  /**
+   * Sets the time after which an idle pooled connection is closed. The idle
+   * and expired connections are evicted when connections are requested, so
+   * no background thread is needed.
+   * <p/>
+   * @param idleConnectionTimeoutMs
+   */
+  public void setIdleConnectionTimeoutMs(long idleConnectionTimeoutMs) {
+    Args.positive(idleConnectionTimeoutMs, "idle connection timeout");
+    this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+  }
+
+  /**
+   * Sets the time after which an idle pooled connection is closed, and
+   * returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param idleConnectionTimeoutMs
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withIdleConnectionTimeoutMs(
+      long idleConnectionTimeoutMs) {
+    setIdleConnectionTimeoutMs(idleConnectionTimeoutMs);
+    return this;
+  }
+
+  /**
+   * Whether the idle connections are also closed by a reaper thread
+   */
+  public boolean isIdleConnectionReaperEnabled() {
+    return enableIdleConnectionReaper;
+  }
+
+  /**
+   * Sets whether the idle connections are also closed by a reaper thread,
+   * which is shared by all the clients and checks their pools every minute.
+   * This releases the connections of the clients which are kept but rarely
+   * used, while the idle connections of the busy clients are closed when
+   * they request connections anyway. A client is removed from the reaper
+   * once it is shut down.
+   * <p/>
+   * @param enableIdleConnectionReaper
+   */
+  public void enableIdleConnectionReaper(boolean enableIdleConnectionReaper) {
+    this.enableIdleConnectionReaper = enableIdleConnectionReaper;
+  }
+
+  /**
+   * Sets whether the idle connections are also closed by a reaper thread,
+   * and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param enableIdleConnectionReaper
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withIdleConnectionReaper(
+      boolean enableIdleConnectionReaper) {
+    enableIdleConnectionReaper(enableIdleConnectionReaper);
+    return this;
+  }
+
+  /**
+   * Returns the HTTP stack the requests are sent with
+   */
+  public HttpTransportType getHttpTransportType() {
+    return httpTransportType;
+  }
+
+  /**
+   * Sets the HTTP stack the requests are sent with, the Apache HttpClient by
+   * default
+   * <p/>
+   * @param httpTransportType
+   */
+  public void setHttpTransportType(HttpTransportType httpTransportType) {
+    Args.notNull(httpTransportType, "http transport type");
+    this.httpTransportType = httpTransportType;
+  }
+
+  /**
+   * Sets the HTTP stack the requests are sent with, and returns the updated
+   * FDSClientConfiguration object.
+   * <p/>
+   * @param httpTransportType
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withHttpTransportType(
+      HttpTransportType httpTransportType) {
+    setHttpTransportType(httpTransportType);
+    return this;
+  }
+
   /**
    * Returns the optional size hints (in bytes) for the low level TCP send and
    * receive buffers. This is an advanced option for advanced users who want
@@ -361,6 +729,630 @@ public class FDSClientConfiguration {
     return this;
   }
 
+  /**
+   * Gets the max number of parts of a multipart upload
+   */
+  public int getMaxUploadPartNumber() {
+    return maxUploadPartNumber;
+  }
+
+  /**
+   * Sets the max number of parts of a multipart upload. Objects which would
+   * need more parts than this are uploaded with larger parts.
+   * <p/>
+   * This is an advanced option which should match the limit of FDS service
+   * <p/>
+   * @param maxUploadPartNumber
+   */
+  public void setMaxUploadPartNumber(int maxUploadPartNumber) {
+    Args.positive(maxUploadPartNumber, "max upload part number");
+    this.maxUploadPartNumber = maxUploadPartNumber;
+  }
+
+  /**
+   * Sets the max number of parts of a multipart upload, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxUploadPartNumber
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxUploadPartNumber(
+      int maxUploadPartNumber) {
+    setMaxUploadPartNumber(maxUploadPartNumber);
+    return this;
+  }
+
+  public boolean isAdaptiveUploadPartSizeEnabled() {
+    return enableAdaptiveUploadPartSize;
+  }
+
+  /**
+   * Enables or disables adaptive upload part size. When enabled, the size of
+   * each part is chosen from the throughput of the parts uploaded before, so
+   * that fast links send fewer and larger parts while slow links send smaller
+   * parts which are cheaper to retry.
+   * <p/>
+   * The first part is sized by initialUploadPartSize, and all the parts are
+   * bounded by minUploadPartSize and maxUploadPartSize. It doesn't apply to
+   * the file uploads when uploadCheckpointDir is set, whose parts are all of
+   * uploadPartSize so that a resumed upload has the same parts.
+   * <p/>
+   * @param enableAdaptiveUploadPartSize
+   */
+  public void enableAdaptiveUploadPartSize(
+      boolean enableAdaptiveUploadPartSize) {
+    this.enableAdaptiveUploadPartSize = enableAdaptiveUploadPartSize;
+  }
+
+  public FDSClientConfiguration withAdaptiveUploadPartSize(
+      boolean enableAdaptiveUploadPartSize) {
+    enableAdaptiveUploadPartSize(enableAdaptiveUploadPartSize);
+    return this;
+  }
+
+  /**
+   * Gets the size of the first part uploaded when adaptive part size is
+   * enabled
+   */
+  public int getInitialUploadPartSize() {
+    return initialUploadPartSize;
+  }
+
+  /**
+   * Sets the size of the first part uploaded when adaptive part size is
+   * enabled. It is bounded by minUploadPartSize and maxUploadPartSize.
+   * <p/>
+   * @param initialUploadPartSize
+   */
+  public void setInitialUploadPartSize(int initialUploadPartSize) {
+    Args.positive(initialUploadPartSize, "initial upload part size");
+    this.initialUploadPartSize = initialUploadPartSize;
+  }
+
+  /**
+   * Sets the size of the first part uploaded when adaptive part size is
+   * enabled, and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param initialUploadPartSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withInitialUploadPartSize(
+      int initialUploadPartSize) {
+    setInitialUploadPartSize(initialUploadPartSize);
+    return this;
+  }
+
+  /**
+   * Gets the min size of each part uploaded when adaptive part size is enabled
+   */
+  public int getMinUploadPartSize() {
+    return minUploadPartSize;
+  }
+
+  /**
+   * Sets the min size of each part uploaded when adaptive part size is enabled
+   * <p/>
+   * @param minUploadPartSize
+   */
+  public void setMinUploadPartSize(int minUploadPartSize) {
+    Args.positive(minUploadPartSize, "min upload part size");
+    this.minUploadPartSize = minUploadPartSize;
+  }
+
+  /**
+   * Sets the min size of each part uploaded when adaptive part size is
+   * enabled, and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param minUploadPartSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMinUploadPartSize(int minUploadPartSize) {
+    setMinUploadPartSize(minUploadPartSize);
+    return this;
+  }
+
+  /**
+   * Gets the max size of each part uploaded when adaptive part size is enabled
+   */
+  public int getMaxUploadPartSize() {
+    return maxUploadPartSize;
+  }
+
+  /**
+   * Sets the max size of each part uploaded when adaptive part size is
+   * enabled. The peak memory used by an upload from an input stream is
+   * roughly maxInFlightUploadParts * maxUploadPartSize
+   * <p/>
+   * @param maxUploadPartSize
+   */
+  public void setMaxUploadPartSize(int maxUploadPartSize) {
+    Args.positive(maxUploadPartSize, "max upload part size");
+    this.maxUploadPartSize = maxUploadPartSize;
+  }
+
+  /**
+   * Sets the max size of each part uploaded when adaptive part size is
+   * enabled, and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxUploadPartSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxUploadPartSize(int maxUploadPartSize) {
+    setMaxUploadPartSize(maxUploadPartSize);
+    return this;
+  }
+
+  /**
+   * Gets the size below which objects are uploaded in a single request
+   */
+  public int getDirectUploadThreshold() {
+    return directUploadThreshold;
+  }
+
+  /**
+   * Sets the size below which objects are uploaded in a single request. A
+   * multipart upload takes at least three requests, so small objects are
+   * uploaded much faster by a single PUT, or a POST if the object name is to
+   * be generated by FDS service. A value of 0 disables it.
+   * <p/>
+   * @param directUploadThreshold
+   */
+  public void setDirectUploadThreshold(int directUploadThreshold) {
+    Args.notNegative(directUploadThreshold, "direct upload threshold");
+    this.directUploadThreshold = directUploadThreshold;
+  }
+
+  /**
+   * Sets the size below which objects are uploaded in a single request, and
+   * returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param directUploadThreshold
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withDirectUploadThreshold(
+      int directUploadThreshold) {
+    setDirectUploadThreshold(directUploadThreshold);
+    return this;
+  }
+
+  /**
+   * Gets the directory to store the journals of resumable file uploads
+   */
+  public File getUploadCheckpointDir() {
+    return uploadCheckpointDir;
+  }
+
+  /**
+   * Sets the directory to store the journals of resumable file uploads. When
+   * set, a failed multipart upload of a file is kept instead of aborted, and
+   * the uploaded parts are recorded in a journal, so that uploading the same
+   * file to the same object again only uploads the remaining parts. The
+   * journal is discarded if the file has been modified since, or if the
+   * server rejects the upload, in which case the upload is started over.
+   * The parts of such uploads are all of uploadPartSize, adaptive upload
+   * part size doesn't apply to them.
+   * <p/>
+   * @param uploadCheckpointDir The directory, or null to disable resumable
+   *                            uploads
+   */
+  public void setUploadCheckpointDir(File uploadCheckpointDir) {
+    this.uploadCheckpointDir = uploadCheckpointDir;
+  }
+
+  /**
+   * Sets the directory to store the journals of resumable file uploads, and
+   * returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param uploadCheckpointDir
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withUploadCheckpointDir(
+      File uploadCheckpointDir) {
+    setUploadCheckpointDir(uploadCheckpointDir);
+    return this;
+  }
+
+  public boolean isParallelDownloadEnabled() {
+    return enableParallelDownload;
+  }
+
+  /**
+   * Enables or disables parallel download. When enabled, objects downloaded
+   * to files are split into ranges of downloadRangeSize, and at most
+   * maxParallelDownloadRanges of them are downloaded concurrently. This is
+   * much faster on links with high bandwidth and high latency.
+   * <p/>
+   * Thumbnails are always downloaded by a single request. The ranges keep no
+   * resume record, so parallel download is not used while resumable download
+   * is enabled.
+   * <p/>
+   * @param enableParallelDownload
+   */
+  public void enableParallelDownload(boolean enableParallelDownload) {
+    this.enableParallelDownload = enableParallelDownload;
+  }
+
+  public FDSClientConfiguration withParallelDownload(
+      boolean enableParallelDownload) {
+    enableParallelDownload(enableParallelDownload);
+    return this;
+  }
+
+  /**
+   * Gets the size of each range downloaded in parallel
+   */
+  public int getDownloadRangeSize() {
+    return downloadRangeSize;
+  }
+
+  /**
+   * Sets the size of each range downloaded in parallel
+   * <p/>
+   * @param downloadRangeSize
+   */
+  public void setDownloadRangeSize(int downloadRangeSize) {
+    Args.positive(downloadRangeSize, "download range size");
+    this.downloadRangeSize = downloadRangeSize;
+  }
+
+  /**
+   * Sets the size of each range downloaded in parallel, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param downloadRangeSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withDownloadRangeSize(int downloadRangeSize) {
+    setDownloadRangeSize(downloadRangeSize);
+    return this;
+  }
+
+  /**
+   * Gets the max number of ranges downloaded concurrently
+   */
+  public int getMaxParallelDownloadRanges() {
+    return maxParallelDownloadRanges;
+  }
+
+  /**
+   * Sets the max number of ranges downloaded concurrently. The downloads
+   * run on the thread pool of the client, so the actual concurrency is also
+   * bounded by the size of the thread pool.
+   * <p/>
+   * @param maxParallelDownloadRanges
+   */
+  public void setMaxParallelDownloadRanges(int maxParallelDownloadRanges) {
+    Args.positive(maxParallelDownloadRanges, "max parallel download ranges");
+    this.maxParallelDownloadRanges = maxParallelDownloadRanges;
+  }
+
+  /**
+   * Sets the max number of ranges downloaded concurrently, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxParallelDownloadRanges
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxParallelDownloadRanges(
+      int maxParallelDownloadRanges) {
+    setMaxParallelDownloadRanges(maxParallelDownloadRanges);
+    return this;
+  }
+
+  public boolean isResumableDownloadEnabled() {
+    return enableResumableDownload;
+  }
+
+  /**
+   * Enables or disables resumable download. A failed download to a file is
+   * always resumed on retry if the object is unchanged. When enabled, the
+   * resume record is also kept in a sidecar file named after the destination
+   * file with the suffix ".fdsresume", so that downloading the same object to
+   * the same file again resumes from where the last download stopped, even
+   * after the process is restarted.
+   * <p/>
+   * The two options can't be combined: when enabled, files are downloaded by
+   * a single request even if parallel download is enabled.
+   * <p/>
+   * @param enableResumableDownload
+   */
+  public void enableResumableDownload(boolean enableResumableDownload) {
+    this.enableResumableDownload = enableResumableDownload;
+  }
+
+  public FDSClientConfiguration withResumableDownload(
+      boolean enableResumableDownload) {
+    enableResumableDownload(enableResumableDownload);
+    return this;
+  }
+
+  /**
+   * Gets the max number of objects checked concurrently by a batch check
+   */
+  public int getMaxParallelObjectChecks() {
+    return maxParallelObjectChecks;
+  }
+
+  /**
+   * Sets the max number of objects checked concurrently by a batch check.
+   * The checks run on the thread pool of the client and the calling thread,
+   * so the actual concurrency is also bounded by the size of the thread pool.
+   * The requests are not pipelined, so each concurrent check also takes a
+   * pooled connection, bounded by {@link #getMaxConnectionsPerRoute()}.
+   * <p/>
+   * @param maxParallelObjectChecks
+   */
+  public void setMaxParallelObjectChecks(int maxParallelObjectChecks) {
+    Args.positive(maxParallelObjectChecks, "max parallel object checks");
+    this.maxParallelObjectChecks = maxParallelObjectChecks;
+  }
+
+  /**
+   * Sets the max number of objects checked concurrently by a batch check,
+   * and returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxParallelObjectChecks
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxParallelObjectChecks(
+      int maxParallelObjectChecks) {
+    setMaxParallelObjectChecks(maxParallelObjectChecks);
+    return this;
+  }
+
+  /**
+   * Gets the directory to cache the downloaded objects
+   */
+  public File getObjectCacheDir() {
+    return objectCacheDir;
+  }
+
+  /**
+   * Sets the directory to cache the downloaded objects. When set, the
+   * objects read as streams from the beginning are kept in the directory
+   * once read to the end, keyed by their URIs and user defined parameters.
+   * A later read of the same object asks the server with If-None-Match and
+   * If-Modified-Since, and reads the cached copy if it is unchanged.
+   * <p/>
+   * @param objectCacheDir The directory, or null to disable the cache
+   */
+  public void setObjectCacheDir(File objectCacheDir) {
+    this.objectCacheDir = objectCacheDir;
+  }
+
+  /**
+   * Sets the directory to cache the downloaded objects, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param objectCacheDir
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withObjectCacheDir(File objectCacheDir) {
+    setObjectCacheDir(objectCacheDir);
+    return this;
+  }
+
+  /**
+   * Gets the max total size of the objects cached on disk
+   */
+  public long getObjectCacheSize() {
+    return objectCacheSize;
+  }
+
+  /**
+   * Sets the max total size of the objects cached on disk, the least
+   * recently used objects are evicted beyond it
+   * <p/>
+   * @param objectCacheSize
+   */
+  public void setObjectCacheSize(long objectCacheSize) {
+    Args.positive(objectCacheSize, "object cache size");
+    this.objectCacheSize = objectCacheSize;
+  }
+
+  /**
+   * Sets the max total size of the objects cached on disk, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param objectCacheSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withObjectCacheSize(long objectCacheSize) {
+    setObjectCacheSize(objectCacheSize);
+    return this;
+  }
+
+  /**
+   * Gets the max total size of the small objects cached in memory
+   */
+  public long getMemoryCacheSize() {
+    return memoryCacheSize;
+  }
+
+  /**
+   * Sets the max total size of the small objects cached in memory. When
+   * positive, the objects no larger than memoryCacheMaxObjectSize read as
+   * streams from the beginning are kept in memory once read to the end, and
+   * a later read of the same object within memoryCacheTtlMs returns the
+   * cached content without asking the server. The cached copies of an
+   * object are dropped when it is uploaded by this client, but changes made
+   * by others are only seen once the copies expire.
+   * <p/>
+   * @param memoryCacheSize The size in bytes, or 0 to disable the cache
+   */
+  public void setMemoryCacheSize(long memoryCacheSize) {
+    Args.notNegative(memoryCacheSize, "memory cache size");
+    this.memoryCacheSize = memoryCacheSize;
+  }
+
+  /**
+   * Sets the max total size of the small objects cached in memory, and
+   * returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param memoryCacheSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMemoryCacheSize(long memoryCacheSize) {
+    setMemoryCacheSize(memoryCacheSize);
+    return this;
+  }
+
+  /**
+   * Gets the max size of an object cached in memory
+   */
+  public int getMemoryCacheMaxObjectSize() {
+    return memoryCacheMaxObjectSize;
+  }
+
+  /**
+   * Sets the max size of an object cached in memory
+   * <p/>
+   * @param memoryCacheMaxObjectSize
+   */
+  public void setMemoryCacheMaxObjectSize(int memoryCacheMaxObjectSize) {
+    Args.positive(memoryCacheMaxObjectSize, "memory cache max object size");
+    this.memoryCacheMaxObjectSize = memoryCacheMaxObjectSize;
+  }
+
+  /**
+   * Sets the max size of an object cached in memory, and returns the updated
+   * FDSClientConfiguration object.
+   * <p/>
+   * @param memoryCacheMaxObjectSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMemoryCacheMaxObjectSize(
+      int memoryCacheMaxObjectSize) {
+    setMemoryCacheMaxObjectSize(memoryCacheMaxObjectSize);
+    return this;
+  }
+
+  /**
+   * Gets the time to live of an object cached in memory
+   */
+  public long getMemoryCacheTtlMs() {
+    return memoryCacheTtlMs;
+  }
+
+  /**
+   * Sets the time to live of an object cached in memory, during which the
+   * cached content is returned even if the object has changed
+   * <p/>
+   * @param memoryCacheTtlMs
+   */
+  public void setMemoryCacheTtlMs(long memoryCacheTtlMs) {
+    Args.positive(memoryCacheTtlMs, "memory cache ttl");
+    this.memoryCacheTtlMs = memoryCacheTtlMs;
+  }
+
+  /**
+   * Sets the time to live of an object cached in memory, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param memoryCacheTtlMs
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMemoryCacheTtlMs(long memoryCacheTtlMs) {
+    setMemoryCacheTtlMs(memoryCacheTtlMs);
+    return this;
+  }
+
+  /**
+   * Gets the time to live of the cached metadata of objects
+   */
+  public long getMetadataCacheTtlMs() {
+    return metadataCacheTtlMs;
+  }
+
+  /**
+   * Sets the time to live of the cached metadata of objects. When positive,
+   * the results of heading objects, including the objects not found, are
+   * cached and reused by getObjectMetadata and doesObjectExist until they
+   * expire or the object is put by this client.
+   * <p/>
+   * @param metadataCacheTtlMs The time in milliseconds, or 0 to disable the
+   *                           cache
+   */
+  public void setMetadataCacheTtlMs(long metadataCacheTtlMs) {
+    Args.notNegative(metadataCacheTtlMs, "metadata cache ttl");
+    this.metadataCacheTtlMs = metadataCacheTtlMs;
+  }
+
+  /**
+   * Sets the time to live of the cached metadata of objects, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param metadataCacheTtlMs
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMetadataCacheTtlMs(
+      long metadataCacheTtlMs) {
+    setMetadataCacheTtlMs(metadataCacheTtlMs);
+    return this;
+  }
+
+  /**
+   * Gets the max number of objects whose metadata is cached
+   */
+  public int getMetadataCacheMaxEntries() {
+    return metadataCacheMaxEntries;
+  }
+
+  /**
+   * Sets the max number of objects whose metadata is cached
+   * <p/>
+   * @param metadataCacheMaxEntries
+   */
+  public void setMetadataCacheMaxEntries(int metadataCacheMaxEntries) {
+    Args.positive(metadataCacheMaxEntries, "metadata cache max entries");
+    this.metadataCacheMaxEntries = metadataCacheMaxEntries;
+  }
+
+  /**
+   * Sets the max number of objects whose metadata is cached, and returns the
+   * updated FDSClientConfiguration object.
+   * <p/>
+   * @param metadataCacheMaxEntries
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMetadataCacheMaxEntries(
+      int metadataCacheMaxEntries) {
+    setMetadataCacheMaxEntries(metadataCacheMaxEntries);
+    return this;
+  }
+
+  /**
+   * Gets the max number of presigned URIs cached
+   */
+  public int getPresignedUriCacheSize() {
+    return presignedUriCacheSize;
+  }
+
+  /**
+   * Sets the max number of presigned URIs cached. A cached URI is returned
+   * by generatePresignedUri instead of signing the object again as long as
+   * it remains valid for most of the requested duration.
+   * <p/>
+   * @param presignedUriCacheSize The number of URIs, or 0 to disable the cache
+   */
+  public void setPresignedUriCacheSize(int presignedUriCacheSize) {
+    Args.notNegative(presignedUriCacheSize, "presigned uri cache size");
+    this.presignedUriCacheSize = presignedUriCacheSize;
+  }
+
+  /**
+   * Sets the max number of presigned URIs cached, and returns the updated
+   * FDSClientConfiguration object.
+   * <p/>
+   * @param presignedUriCacheSize
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withPresignedUriCacheSize(
+      int presignedUriCacheSize) {
+    setPresignedUriCacheSize(presignedUriCacheSize);
+    return this;
+  }
+
   public int getThreadPoolCoreSize() {
     return this.threadPoolCoreSize;
   }
@@ -414,6 +1406,42 @@ public class FDSClientConfiguration {
     return this;
   }
 
+  /**
+   * Gets the max number of upload parts buffered in memory at once
+   */
+  public int getMaxInFlightUploadParts() {
+    return maxInFlightUploadParts;
+  }
+
+  /**
+   * Sets the max number of upload parts buffered in memory at once. When the
+   * limit is reached, reading from the input stream blocks until one of the
+   * pending parts has been uploaded.
+   * <p/>
+   * This is an advanced option for advanced users who want to control the
+   * memory used by uploading, which is roughly
+   * maxInFlightUploadParts * uploadPartSize
+   * <p/>
+   * @param maxInFlightUploadParts
+   */
+  public void setMaxInFlightUploadParts(int maxInFlightUploadParts) {
+    Args.positive(maxInFlightUploadParts, "max in-flight upload parts");
+    this.maxInFlightUploadParts = maxInFlightUploadParts;
+  }
+
+  /**
+   * Sets the max number of upload parts buffered in memory at once, and
+   * returns the updated FDSClientConfiguration object.
+   * <p/>
+   * @param maxInFlightUploadParts
+   * @return The updated FDSClientConfiguration object.
+   */
+  public FDSClientConfiguration withMaxInFlightUploadParts(
+      int maxInFlightUploadParts) {
+    setMaxInFlightUploadParts(maxInFlightUploadParts);
+    return this;
+  }
+
   /**
    * Gets the credential information of FDS client
    */
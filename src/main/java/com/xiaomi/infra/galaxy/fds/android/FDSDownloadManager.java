@@ -0,0 +1,489 @@
+package com.xiaomi.infra.galaxy.fds.android;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
+import com.xiaomi.infra.galaxy.fds.android.model.FDSCallback;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
+import com.xiaomi.infra.galaxy.fds.android.util.Args;
+
+/**
+ * Downloads objects to files in the order of their priorities. At most
+ * maxDownloads objects are downloaded at once, and the downloads from the
+ * same host open at most maxConnectionsPerHost connections, counting the
+ * parallel ranged requests of each download. A download of the same object
+ * to the same file as one pending or in progress joins it instead of being
+ * started again.
+ * <p/>
+ * A pending download can be reprioritized, and a download can be cancelled
+ * whether or not it has started, which aborts its requests in flight.
+ */
+public class FDSDownloadManager {
+
+  /**
+   * The default max number of objects downloaded at once
+   */
+  public static final int DEFAULT_MAX_DOWNLOADS = 4;
+
+  /**
+   * How often the progress of a download is checked to be forwarded to its
+   * listeners
+   */
+  private static final long PROGRESS_CHECK_INTERVAL_MS = 100;
+
+  private final GalaxyFDSClientImpl client;
+  private final int maxDownloads;
+  private final int maxConnectionsPerHost;
+  private final ExecutorService executor;
+  private final AtomicLong nextSequence = new AtomicLong(0);
+
+  // All the fields below are guarded by this
+  private final PriorityQueue<DownloadTask> pendingTasks =
+      new PriorityQueue<DownloadTask>();
+  private final Map<String, DownloadTask> tasks =
+      new HashMap<String, DownloadTask>();
+  private final Map<String, Integer> connectionsPerHost =
+      new HashMap<String, Integer>();
+  private int runningTasks = 0;
+  private boolean isShutdown = false;
+
+  /**
+   * Creates a download manager which opens at most as many connections to a
+   * host as the connection pool of the client keeps per route
+   */
+  public FDSDownloadManager(GalaxyFDSClientImpl client) {
+    this(client, DEFAULT_MAX_DOWNLOADS,
+        client.getConfig().getMaxConnectionsPerRoute());
+  }
+
+  /**
+   * @param client                The client to download the objects with
+   * @param maxDownloads          The max number of objects downloaded at once
+   * @param maxConnectionsPerHost The max number of connections the downloads
+   *                              from the same host open at once. A download
+   *                              needing more is started alone.
+   */
+  public FDSDownloadManager(GalaxyFDSClientImpl client, int maxDownloads,
+      int maxConnectionsPerHost) {
+    Args.notNull(client, "client");
+    Args.positive(maxDownloads, "max downloads");
+    Args.positive(maxConnectionsPerHost, "max connections per host");
+    this.client = client;
+    this.maxDownloads = maxDownloads;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.executor = Executors.newFixedThreadPool(maxDownloads,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "FDS-download-thread");
+          }
+        });
+  }
+
+  /**
+   * @see #download(String, File, List, int, ProgressListener, FDSCallback)
+   */
+  public DownloadTask download(String bucketName, String objectName,
+      File destinationFile, List<UserParam> params, int priority,
+      ProgressListener progressListener, FDSCallback<ObjectMetadata> callback) {
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notEmpty(objectName, "object name");
+    return download(client.getConfig().getDownloadBaseUri() + "/"
+        + bucketName + "/" + objectName, destinationFile, params, priority,
+        progressListener, callback);
+  }
+
+  /**
+   * Schedules the download of an object to a file. Downloads of higher
+   * priorities are started first, and downloads of the same priority are
+   * started in the order they are scheduled.
+   * <p/>
+   * If the same object is being downloaded to the same file, the download
+   * is joined, its priority is raised to the given one if that is higher,
+   * and the listener and callback are notified of it as well. A download
+   * which has completed or been cancelled is never joined.
+   *
+   * @param uriString        The URI of the object
+   * @param destinationFile  The file to save the object content to
+   * @param params           The user defined parameters, may be null
+   * @param priority         The priority of the download
+   * @param progressListener The progress listener, may be null
+   * @param callback         The callback notified when the download
+   *                         completes, may be null
+   * @return The task of the download
+   */
+  public DownloadTask download(String uriString, File destinationFile,
+      List<UserParam> params, int priority, ProgressListener progressListener,
+      FDSCallback<ObjectMetadata> callback) {
+    Args.notEmpty(uriString, "uri");
+    Args.notNull(destinationFile, "destination file");
+
+    String key = getKey(uriString, destinationFile, params);
+    DownloadTask task;
+    synchronized (this) {
+      Args.check(!isShutdown, "Download manager is shut down");
+      task = tasks.get(key);
+      if (task != null && task.join(progressListener, callback)) {
+        if (priority > task.priority) {
+          reprioritize(task, priority);
+        }
+        return task;
+      }
+
+      task = new DownloadTask(key, getHost(uriString),
+          client.getMaxConnectionsPerDownload(params), uriString,
+          destinationFile, params, priority, new CancellableListener());
+      task.join(progressListener, callback);
+      tasks.put(key, task);
+      pendingTasks.add(task);
+      schedule();
+    }
+    return task;
+  }
+
+  /**
+   * Cancels all the downloads, and stops the download threads once the
+   * downloads in progress are cancelled
+   */
+  public void shutdown() {
+    List<DownloadTask> allTasks;
+    synchronized (this) {
+      isShutdown = true;
+      allTasks = new ArrayList<DownloadTask>(tasks.values());
+    }
+    for (DownloadTask task : allTasks) {
+      task.cancelForAll();
+    }
+    executor.shutdown();
+  }
+
+  private static String getKey(String uriString, File destinationFile,
+      List<UserParam> params) {
+    StringBuilder builder = new StringBuilder(uriString);
+    if (params != null) {
+      for (UserParam param : params) {
+        builder.append('&').append(param.toString());
+      }
+    }
+    return builder.append(' ').append(destinationFile.getAbsolutePath())
+        .toString();
+  }
+
+  private static String getHost(String uriString) {
+    try {
+      String host = new URI(uriString).getHost();
+      return host != null ? host : "";
+    } catch (Exception e) {
+      return "";
+    }
+  }
+
+  /**
+   * Starts the pending downloads of the highest priorities as long as the
+   * limits allow
+   */
+  private synchronized void schedule() {
+    if (runningTasks >= maxDownloads || pendingTasks.isEmpty()) {
+      return;
+    }
+
+    List<DownloadTask> skippedTasks = new ArrayList<DownloadTask>();
+    DownloadTask task;
+    while (runningTasks < maxDownloads
+        && (task = pendingTasks.poll()) != null) {
+      Integer hostConnections = connectionsPerHost.get(task.host);
+      if (hostConnections != null
+          && hostConnections + task.connections > maxConnectionsPerHost) {
+        skippedTasks.add(task);
+        continue;
+      }
+      connectionsPerHost.put(task.host, hostConnections == null
+          ? task.connections : hostConnections + task.connections);
+      runningTasks++;
+      executor.execute(task);
+    }
+    pendingTasks.addAll(skippedTasks);
+  }
+
+  private synchronized void reprioritize(DownloadTask task, int priority) {
+    // The queue is reordered only when a task is added
+    boolean isPending = pendingTasks.remove(task);
+    task.priority = priority;
+    if (isPending) {
+      pendingTasks.add(task);
+    }
+  }
+
+  /**
+   * Called when a started download has stopped
+   */
+  private synchronized void onFinished(DownloadTask task) {
+    runningTasks--;
+    int hostConnections = connectionsPerHost.get(task.host) - task.connections;
+    if (hostConnections == 0) {
+      connectionsPerHost.remove(task.host);
+    } else {
+      connectionsPerHost.put(task.host, hostConnections);
+    }
+    if (tasks.get(task.key) == task) {
+      tasks.remove(task.key);
+    }
+    schedule();
+  }
+
+  /**
+   * Called when a download is cancelled before it is started
+   */
+  private synchronized void onCancelled(DownloadTask task) {
+    if (pendingTasks.remove(task) && tasks.get(task.key) == task) {
+      tasks.remove(task.key);
+    }
+  }
+
+  /**
+   * The task of a download, which is also the future of its result. The
+   * task is shared by all the callers that scheduled or joined the download.
+   */
+  public class DownloadTask extends FutureTask<ObjectMetadata>
+      implements Comparable<DownloadTask> {
+    private final String key;
+    private final String host;
+    private final int connections;
+    private final long sequence;
+    private final CancellableListener listener;
+    // Guarded by this
+    private final List<FDSCallback<ObjectMetadata>> callbacks =
+        new ArrayList<FDSCallback<ObjectMetadata>>();
+    private int joiners = 0;
+    private boolean isClosed = false;
+    // Guarded by the download manager
+    private int priority;
+
+    private DownloadTask(String key, String host, int connections,
+        final String uriString, final File destinationFile,
+        final List<UserParam> params, int priority,
+        final CancellableListener listener) {
+      super(new Callable<ObjectMetadata>() {
+        @Override
+        public ObjectMetadata call() throws Exception {
+          return client.getObject(uriString, destinationFile, params,
+              listener);
+        }
+      });
+      this.listener = listener;
+      this.key = key;
+      this.host = host;
+      this.connections = connections;
+      this.priority = priority;
+      this.sequence = nextSequence.getAndIncrement();
+    }
+
+    public int getPriority() {
+      synchronized (FDSDownloadManager.this) {
+        return priority;
+      }
+    }
+
+    /**
+     * Changes the priority of the download, which takes effect if it has
+     * not been started yet
+     */
+    public void setPriority(int priority) {
+      reprioritize(this, priority);
+    }
+
+    /**
+     * Cancels the download for the caller. The download is stopped only
+     * when every caller that scheduled or joined it has cancelled it, and
+     * false is returned until then.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      synchronized (this) {
+        if (isClosed || --joiners > 0) {
+          return false;
+        }
+        // No one can join the download being cancelled
+        isClosed = true;
+      }
+      return super.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Cancels the download regardless of the other callers
+     */
+    private void cancelForAll() {
+      synchronized (this) {
+        isClosed = true;
+      }
+      super.cancel(false);
+    }
+
+    /**
+     * @return Whether the download is joined, false if it has completed or
+     * been cancelled
+     */
+    private synchronized boolean join(ProgressListener progressListener,
+        FDSCallback<ObjectMetadata> callback) {
+      if (isClosed) {
+        return false;
+      }
+      if (progressListener != null) {
+        listener.addListener(progressListener);
+      }
+      if (callback != null) {
+        callbacks.add(callback);
+      }
+      joiners++;
+      return true;
+    }
+
+    @Override
+    public int compareTo(DownloadTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1
+          : (sequence == other.sequence ? 0 : 1);
+    }
+
+    @Override
+    public void run() {
+      try {
+        super.run();
+      } finally {
+        onFinished(this);
+      }
+    }
+
+    @Override
+    protected void done() {
+      // The callbacks of every joined caller are notified
+      List<FDSCallback<ObjectMetadata>> callbacks;
+      synchronized (this) {
+        isClosed = true;
+        callbacks = new ArrayList<FDSCallback<ObjectMetadata>>(this.callbacks);
+      }
+      if (isCancelled()) {
+        listener.cancel();
+        onCancelled(this);
+        return;
+      }
+
+      ObjectMetadata result = null;
+      Exception failure = null;
+      try {
+        result = get();
+      } catch (InterruptedException e) {
+        // Never happens as the task is done
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        failure = cause instanceof Exception ? (Exception) cause
+            : new GalaxyFDSClientException(cause);
+      }
+      for (FDSCallback<ObjectMetadata> callback : callbacks) {
+        if (failure == null) {
+          callback.onSuccess(result);
+        } else {
+          callback.onFailure(failure);
+        }
+      }
+    }
+  }
+
+  /**
+   * Aborts the requests of the download in flight once it is cancelled, and
+   * forwards the progress to the listeners of the download, each no more
+   * often than its own interval
+   */
+  private static class CancellableListener extends ProgressListener
+      implements GalaxyFDSClientImpl.RequestObserver {
+    private final List<ProgressListener> listeners =
+        new ArrayList<ProgressListener>();
+    private final Map<ProgressListener, Long> lastNotifyTimes =
+        new HashMap<ProgressListener, Long>();
+    // Guarded by this
+    private final Set<HttpUriRequest> requests = new HashSet<HttpUriRequest>();
+    private volatile boolean isCancelled = false;
+
+    synchronized void addListener(ProgressListener listener) {
+      listeners.add(listener);
+    }
+
+    private synchronized List<ProgressListener> getListeners() {
+      return new ArrayList<ProgressListener>(listeners);
+    }
+
+    void cancel() {
+      List<HttpUriRequest> abortedRequests;
+      synchronized (this) {
+        isCancelled = true;
+        abortedRequests = new ArrayList<HttpUriRequest>(requests);
+      }
+      for (HttpUriRequest request : abortedRequests) {
+        request.abort();
+      }
+    }
+
+    private void checkCancelled() {
+      if (isCancelled) {
+        throw new CancellationException("Download is cancelled");
+      }
+    }
+
+    @Override
+    public synchronized void onRequestStarted(HttpUriRequest request) {
+      // No request is sent once cancelled, nor retried
+      checkCancelled();
+      requests.add(request);
+    }
+
+    @Override
+    public synchronized void onRequestFinished(HttpUriRequest request) {
+      requests.remove(request);
+    }
+
+    @Override
+    public void onProgress(long transferred, long total) {
+      checkCancelled();
+
+      long now = System.currentTimeMillis();
+      boolean isFinished = transferred == total;
+      for (ProgressListener listener : getListeners()) {
+        Long lastNotifyTime = lastNotifyTimes.get(listener);
+        if (isFinished || lastNotifyTime == null
+            || now - lastNotifyTime >= listener.progressInterval()) {
+          lastNotifyTimes.put(listener, now);
+          listener.onProgress(transferred, total);
+        }
+      }
+    }
+
+    @Override
+    public long progressInterval() {
+      return PROGRESS_CHECK_INTERVAL_MS;
+    }
+  }
+}
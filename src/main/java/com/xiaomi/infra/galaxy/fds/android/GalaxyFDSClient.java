@@ -2,12 +2,18 @@ package com.xiaomi.infra.galaxy.fds.android;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
 import com.xiaomi.infra.galaxy.fds.android.model.FDSObject;
+import com.xiaomi.infra.galaxy.fds.model.HttpMethod;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectKey;
 import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
 import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectRequest;
 import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
 import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
 
@@ -442,6 +448,62 @@ public interface GalaxyFDSClient {
       ObjectMetadata metadata, List<UserParam> params,
       ProgressListener progressListener) throws GalaxyFDSClientException;
 
+  /**
+   * Uploads a batch of objects. The parts of all the objects are scheduled on
+   * one budget of {@link FDSClientConfiguration#getMaxInFlightUploadParts()}
+   * pending parts, and smaller objects are uploaded first so that they
+   * finish early.
+   * <p/>
+   * The progress of each object is reported to the listener of its request,
+   * and the progress of the whole batch to the given listener. The batch
+   * stops at the first failure, and the uploads in progress are aborted
+   * unless they are resumable.
+   *
+   * @param requests         The objects to be uploaded
+   * @param progressListener The progress listener for receiving updates about
+   *                         the whole batch, may be null
+   * @return The results of the uploads, in the order of the requests
+   * @throws GalaxyFDSClientException If any of the uploads fails
+   */
+  List<PutObjectResult> putObjects(List<PutObjectRequest> requests,
+      ProgressListener progressListener) throws GalaxyFDSClientException;
+
+  /**
+   * Generates a presigned URI of an object locally without any request to
+   * the server, with which anyone can access the object with the given
+   * method until the URI expires. The client must be configured with a
+   * {@link com.xiaomi.infra.galaxy.fds.android.auth.SignatureCredential}.
+   * <p/>
+   * Recently presigned URIs are cached, and a cached URI is returned as
+   * long as it remains valid for at least nine tenths of the requested
+   * duration.
+   *
+   * @param bucketName  The name of the bucket containing the object
+   * @param objectName  The name of the object
+   * @param httpMethod  The HTTP method allowed by the URI, GET URIs point to
+   *                    the download service and other URIs to the upload
+   *                    service
+   * @param expiresInMs How long the URI remains valid in milliseconds
+   * @return The absolute presigned URI
+   * @throws GalaxyFDSClientException If the client has no secret key to sign
+   *                                  the URI
+   */
+  String generatePresignedUri(String bucketName, String objectName,
+      HttpMethod httpMethod, long expiresInMs) throws GalaxyFDSClientException;
+
+  /**
+   * Gets the metadata of an object without downloading its content. The
+   * result is cached if {@link FDSClientConfiguration#getMetadataCacheTtlMs()}
+   * is positive.
+   *
+   * @param bucketName The name of the bucket containing the desired object.
+   * @param objectName The name of the desired object
+   * @return The metadata of the object, or null if the object doesn't exist
+   * @throws GalaxyFDSClientException
+   */
+  ObjectMetadata getObjectMetadata(String bucketName, String objectName)
+      throws GalaxyFDSClientException;
+
   /**
    * Test if object exists.
    *
@@ -452,4 +514,58 @@ public interface GalaxyFDSClient {
    */
   boolean doesObjectExist(String bucketName, String objectName)
       throws GalaxyFDSClientException;
+
+  /**
+   * Tests if objects exist. The objects are checked concurrently, at most
+   * {@link FDSClientConfiguration#getMaxParallelObjectChecks()} at a time,
+   * reusing the kept-alive connections of the client.
+   * <p/>
+   * The requests are not pipelined: each HEAD request is sent over a
+   * connection only after the previous response on it is read, so the
+   * concurrent checks take as many connections. With the OkHttp transport
+   * and an HTTP/2 server they are multiplexed over one connection instead.
+   *
+   * @param objectKeys The keys of the objects to be tested
+   * @return A map from each distinct key to true if the object exists,
+   * otherwise false, in the order of the given keys
+   * @throws GalaxyFDSClientException If any of the checks fails
+   */
+  Map<ObjectKey, Boolean> doesObjectsExist(Collection<ObjectKey> objectKeys)
+      throws GalaxyFDSClientException;
+
+  /**
+   * Opens connections to the upload and download hosts before the first
+   * transfer, so that the transfers don't wait for the TCP and TLS
+   * handshakes. A HEAD request is sent to the host for each connection and
+   * the connection is kept alive once any response, e.g. 403, is received.
+   * The requests run at most getMaxConnectionsPerRoute() at once and may
+   * reuse a connection pooled by an earlier one, while a transport
+   * multiplexing over HTTP/2 opens only one for each host. The TLS sessions
+   * are cached and resumed by the later connections, of this client and the
+   * others.
+   *
+   * @param connections The number of HEAD requests to send to each host
+   * @return The number of the HEAD requests that got a response, which is
+   * not the number of distinct connections opened
+   */
+  int prewarm(int connections);
+
+  /**
+   * Shuts down the client once it is no longer used, giving the part uploads
+   * which have been submitted up to 30 seconds to finish. As it may block
+   * that long, call it off the main thread, or call
+   * {@link #shutdown(long, TimeUnit)} with a short timeout instead.
+   */
+  void shutdown();
+
+  /**
+   * Shuts down the client once it is no longer used. The part uploads which
+   * have been submitted are given up to the timeout to finish and are then
+   * interrupted, then the threads and the pooled connections of the client
+   * are released. The client can't be used afterwards.
+   *
+   * @param timeout The max time to wait, 0 to stop the uploads at once
+   * @param unit    The unit of the timeout
+   */
+  void shutdown(long timeout, TimeUnit unit);
 }
@@ -1,74 +1,105 @@
 package com.xiaomi.infra.galaxy.fds.android;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.util.Log;
-import com.google.gson.Gson;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.scheme.SocketFactory;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 
 import com.xiaomi.infra.galaxy.fds.android.auth.GalaxyFDSCredential;
+import com.xiaomi.infra.galaxy.fds.android.auth.OAuthCredential;
+import com.xiaomi.infra.galaxy.fds.android.auth.SignatureCredential;
 import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
+import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSServerException;
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
 import com.xiaomi.infra.galaxy.fds.android.model.FDSObject;
 import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
 import com.xiaomi.infra.galaxy.fds.model.HttpMethod;
 import com.xiaomi.infra.galaxy.fds.android.model.InitMultipartUploadResult;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectKey;
 import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
 import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectRequest;
 import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
 import com.xiaomi.infra.galaxy.fds.android.model.ThumbParam;
 import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResult;
 import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResultList;
 import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransport;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportFactory;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportType;
+import com.xiaomi.infra.galaxy.fds.android.util.AdaptivePartSizer;
 import com.xiaomi.infra.galaxy.fds.android.util.Args;
+import com.xiaomi.infra.galaxy.fds.android.util.ByteArrayRegionEntity;
 import com.xiaomi.infra.galaxy.fds.android.util.Consts;
+import com.xiaomi.infra.galaxy.fds.android.util.DiskObjectCache;
+import com.xiaomi.infra.galaxy.fds.android.util.DownloadCheckpoint;
+import com.xiaomi.infra.galaxy.fds.android.util.FileRegionEntity;
+import com.xiaomi.infra.galaxy.fds.android.util.JsonCodec;
+import com.xiaomi.infra.galaxy.fds.android.util.MemoryObjectCache;
+import com.xiaomi.infra.galaxy.fds.android.util.ObjectMetadataCache;
+import com.xiaomi.infra.galaxy.fds.android.util.PresignedUriCache;
 import com.xiaomi.infra.galaxy.fds.android.util.ObjectInputStream;
+import com.xiaomi.infra.galaxy.fds.android.util.ProgressNotifier;
+import com.xiaomi.infra.galaxy.fds.android.util.ReleasableTask;
 import com.xiaomi.infra.galaxy.fds.android.util.RequestFactory;
+import com.xiaomi.infra.galaxy.fds.android.util.UploadCheckpoint;
+import com.xiaomi.infra.galaxy.fds.android.util.UploadPartPlanner;
 import com.xiaomi.infra.galaxy.fds.android.util.Util;
 
 public class GalaxyFDSClientImpl implements GalaxyFDSClient {
 
   private static final String LOG_TAG = "GalaxyFDSClientImpl";
-  private static final String HTTP_SCHEME = "http";
-  private static final String HTTPS_SCHEME = "https";
+  private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+  private static final long DEFAULT_SHUTDOWN_TIMEOUT_SECS = 30;
 
   private static final boolean TEST_MODE;
   static {
@@ -81,15 +112,61 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
   }
 
   private final FDSClientConfiguration config;
-  private final HttpClient httpClient;
-  private ThreadPoolExecutor threadPoolExecutor;
+  private final HttpTransport transport;
+  private final DiskObjectCache objectCache;
+  private final MemoryObjectCache memoryCache;
+  private final ObjectMetadataCache metadataCache;
+  private final PresignedUriCache presignedUriCache;
+  private final ThreadPoolExecutor threadPoolExecutor;
 
   public GalaxyFDSClientImpl(FDSClientConfiguration config) {
     this.config = config;
-    this.httpClient = createHttpClient(this.config);
+    this.transport = createHttpTransport(this.config);
+    if (this.config.getCredential() instanceof OAuthCredential) {
+      ((OAuthCredential) this.config.getCredential()).setHttpTransport(
+          this.transport);
+    }
+    this.objectCache = createObjectCache(this.config);
+    this.memoryCache = createMemoryCache(this.config);
+    this.metadataCache = createMetadataCache(this.config);
+    this.presignedUriCache = createPresignedUriCache(this.config);
+    this.threadPoolExecutor = createThreadPoolExecutor(this.config);
+  }
+
+  @Deprecated
+  public GalaxyFDSClientImpl(String fdsServiceBaseUri,
+      GalaxyFDSCredential credential, FDSClientConfiguration config) {
+    this.config = config;
+    this.config.setCredential(credential);
+    this.transport = createHttpTransport(this.config);
+    if (this.config.getCredential() instanceof OAuthCredential) {
+      ((OAuthCredential) this.config.getCredential()).setHttpTransport(
+          this.transport);
+    }
+    this.objectCache = createObjectCache(this.config);
+    this.memoryCache = createMemoryCache(this.config);
+    this.metadataCache = createMetadataCache(this.config);
+    this.presignedUriCache = createPresignedUriCache(this.config);
+    this.threadPoolExecutor = createThreadPoolExecutor(this.config);
+  }
+
+  private static HttpTransport createHttpTransport(
+      FDSClientConfiguration config) {
+    if (!HttpTransportFactory.isAvailable(config.getHttpTransportType())) {
+      if (!TEST_MODE) {
+        Log.w(LOG_TAG, "HTTP transport " + config.getHttpTransportType()
+            + " is not available, falling back to "
+            + HttpTransportType.URL_CONNECTION);
+      }
+    }
+    return HttpTransportFactory.create(config);
+  }
+
+  private static ThreadPoolExecutor createThreadPoolExecutor(
+      FDSClientConfiguration config) {
     BlockingQueue workQueue = new ArrayBlockingQueue<Runnable>(
         config.getWorkQueueCapacity(), true);
-    this.threadPoolExecutor = new ThreadPoolExecutor(
+    return new ThreadPoolExecutor(
         config.getThreadPoolCoreSize(), config.getThreadPoolMaxSize(),
         config.getThreadPoolKeepAliveSecs(), TimeUnit.SECONDS, workQueue,
         new ThreadFactory() {
@@ -100,47 +177,222 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
         });
   }
 
-  @Deprecated
-  public GalaxyFDSClientImpl(String fdsServiceBaseUri,
-      GalaxyFDSCredential credential, FDSClientConfiguration config) {
-    this.config = config;
-    this.config.setCredential(credential);
-    this.httpClient = createHttpClient(this.config);
+  private static DiskObjectCache createObjectCache(
+      FDSClientConfiguration config) {
+    if (config.getObjectCacheDir() == null) {
+      return null;
+    }
+    return new DiskObjectCache(config.getObjectCacheDir(),
+        config.getObjectCacheSize());
+  }
+
+  private static MemoryObjectCache createMemoryCache(
+      FDSClientConfiguration config) {
+    if (config.getMemoryCacheSize() == 0) {
+      return null;
+    }
+    return new MemoryObjectCache(config.getMemoryCacheSize(),
+        config.getMemoryCacheMaxObjectSize(), config.getMemoryCacheTtlMs());
+  }
+
+  private static ObjectMetadataCache createMetadataCache(
+      FDSClientConfiguration config) {
+    if (config.getMetadataCacheTtlMs() == 0) {
+      return null;
+    }
+    return new ObjectMetadataCache(config.getMetadataCacheMaxEntries(),
+        config.getMetadataCacheTtlMs());
+  }
+
+  private static PresignedUriCache createPresignedUriCache(
+      FDSClientConfiguration config) {
+    if (config.getPresignedUriCacheSize() == 0) {
+      return null;
+    }
+    return new PresignedUriCache(config.getPresignedUriCacheSize());
+  }
+
+  /**
+   * Drops what is cached of the object which may have changed, except in
+   * the disk cache which is revalidated on use
+   */
+  private void invalidateCache(String bucketName, String objectName) {
+    if (objectName == null) {
+      return;
+    }
+    if (metadataCache != null) {
+      metadataCache.remove(bucketName + "/" + objectName);
+    }
+    if (memoryCache != null) {
+      memoryCache.removeObject(getMemoryCacheObjectKey(
+          bucketName + "/" + objectName));
+    }
+  }
+
+  /**
+   * Gets the key shared by the memory cache entries of an object from the
+   * path of its URI, i.e. "bucket/object"
+   */
+  private static String getMemoryCacheObjectKey(String path) {
+    int start = 0;
+    while (start < path.length() && path.charAt(start) == '/') {
+      start++;
+    }
+    return path.substring(start);
+  }
+
+  FDSClientConfiguration getConfig() {
+    return config;
+  }
+
+  /**
+   * The max number of connections a download to a file may open at once
+   */
+  int getMaxConnectionsPerDownload(List<UserParam> params) {
+    return isParallelDownload(params)
+        ? 1 + config.getMaxParallelDownloadRanges() : 1;
+  }
+
+  /**
+   * Whether a download to a file is done by parallel ranged requests. The
+   * ranges keep no resume record, so resumable download takes precedence.
+   */
+  private boolean isParallelDownload(List<UserParam> params) {
+    return config.isParallelDownloadEnabled()
+        && !config.isResumableDownloadEnabled() && !isGetThumbnail(params);
   }
 
-  private HttpClient createHttpClient(FDSClientConfiguration config) {
-        /* Set HTTP client parameters */
-    HttpParams httpClientParams = new BasicHttpParams();
-    HttpConnectionParams.setConnectionTimeout(httpClientParams,
-        config.getConnectionTimeoutMs());
-    HttpConnectionParams.setSoTimeout(httpClientParams,
-        config.getSocketTimeoutMs());
-    HttpConnectionParams.setStaleCheckingEnabled(httpClientParams, true);
-    HttpConnectionParams.setTcpNoDelay(httpClientParams, true);
+  /**
+   * A progress listener of a download to a file that is also told of the
+   * requests of the download, so that it can abort them
+   */
+  interface RequestObserver {
+    /**
+     * Called before the request is sent, throws to stop the download
+     */
+    void onRequestStarted(HttpUriRequest request);
 
-    int socketSendBufferSizeHint = config.getSocketBufferSizeHints()[0];
-    int socketReceiveBufferSizeHint = config.getSocketBufferSizeHints()[1];
-    if (socketSendBufferSizeHint > 0 || socketReceiveBufferSizeHint > 0) {
-      HttpConnectionParams.setSocketBufferSize(httpClientParams,
-          Math.max(socketSendBufferSizeHint, socketReceiveBufferSizeHint));
+    void onRequestFinished(HttpUriRequest request);
+  }
+
+  private HttpResponse executeDownloadRequest(HttpUriRequest request,
+      ProgressListener listener) throws IOException {
+    if (listener instanceof RequestObserver) {
+      ((RequestObserver) listener).onRequestStarted(request);
     }
+    return transport.execute(request);
+  }
 
-    SchemeRegistry registry = new SchemeRegistry();
-    SocketFactory socketFactory = PlainSocketFactory.getSocketFactory();
-    registry.register(new Scheme(HTTP_SCHEME, socketFactory, 80));
+  private static void finishDownloadRequest(HttpUriRequest request,
+      ProgressListener listener) {
+    if (request != null && listener instanceof RequestObserver) {
+      ((RequestObserver) listener).onRequestFinished(request);
+    }
+  }
 
-    if (config.isHttpsEnabled()) {
-      SSLSocketFactory sslSocketFactory = SSLSocketFactory.getSocketFactory();
-      sslSocketFactory.setHostnameVerifier(
-          SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-      registry.register(new Scheme(HTTPS_SCHEME, sslSocketFactory, 443));
+  @Override
+  public int prewarm(int connections) {
+    Args.positive(connections, "connections");
+    Set<String> baseUris = new LinkedHashSet<String>();
+    baseUris.add(config.getUploadBaseUri());
+    baseUris.add(config.getDownloadBaseUri());
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+    for (final String baseUri : baseUris) {
+      for (int i = 0; i < connections; i++) {
+        tasks.add(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return openConnection(baseUri);
+          }
+        });
+      }
     }
 
-    ThreadSafeClientConnManager connectionManager =
-        new ThreadSafeClientConnManager(httpClientParams, registry);
-    DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager,
-        httpClientParams);
-    return httpClient;
+    // Not run by the upload threads, and no more threads than the pool can
+    // keep connections to a host
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(tasks.size(), config.getMaxConnectionsPerRoute()),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "FDS-prewarm-thread");
+          }
+        });
+    int openedConnections = 0;
+    try {
+      for (Future<Boolean> future : executor.invokeAll(tasks)) {
+        if (future.get()) {
+          openedConnections++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Never happens as the failures are returned
+    } finally {
+      executor.shutdownNow();
+    }
+    return openedConnections;
+  }
+
+  private boolean openConnection(String baseUri) {
+    HttpEntity entity = null;
+    try {
+      HttpResponse response = transport.execute(new HttpHead(baseUri + "/"));
+      entity = response.getEntity();
+      return true;
+    } catch (IOException e) {
+      if (!TEST_MODE) {
+        Log.i(LOG_TAG, "Fail to open connection to " + baseUri
+            + " cause:" + e.getMessage());
+      }
+      return false;
+    } finally {
+      if (entity != null) {
+        try {
+          entity.consumeContent();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown(DEFAULT_SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void shutdown(long timeout, TimeUnit unit) {
+    Args.notNegative(timeout, "timeout");
+    Args.notNull(unit, "time unit");
+    threadPoolExecutor.shutdown();
+    try {
+      if (!threadPoolExecutor.awaitTermination(timeout, unit)) {
+        threadPoolExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      threadPoolExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+
+    if (config.getCredential() instanceof OAuthCredential) {
+      ((OAuthCredential) config.getCredential()).removeHttpTransport(
+          transport);
+    }
+    transport.shutdown();
+  }
+
+  /**
+   * Gets a snapshot of the statistics of the connection pool, which tells
+   * whether the requests are waiting for connections
+   *
+   * @return The statistics, or null if the pool is not managed by the
+   * transport of the client
+   */
+  public ConnectionPoolStats getConnectionPoolStats() {
+    return transport.getConnectionPoolStats();
   }
 
   private boolean isGetThumbnail(List<UserParam> params) {
@@ -156,6 +408,22 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     return isGetThumbnail;
   }
 
+  private String appendParams(String uriString, List<UserParam> params) {
+    if (params != null) {
+      StringBuilder builder = new StringBuilder(uriString);
+      for (UserParam param : params) {
+        if (builder.indexOf("?") == -1) {
+          builder.append('?');
+        } else {
+          builder.append('&');
+        }
+        builder.append(param.toString());
+      }
+      uriString = builder.toString();
+    }
+    return uriString;
+  }
+
   @Override
   public FDSObject getObject(String bucketName, String objectName)
       throws GalaxyFDSClientException {
@@ -201,24 +469,16 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     Args.notNull(uriString, "URI");
     Args.notNegative(offset, "offset in content");
 
-    if (params != null) {
-      StringBuilder builder = new StringBuilder(uriString);
-      for (UserParam param : params) {
-        if (builder.indexOf("?") == -1) {
-          builder.append('?');
-        } else {
-          builder.append('&');
-        }
-        builder.append(param.toString());
-      }
-      uriString = builder.toString();
-    }
+    uriString = appendParams(uriString, params);
 
     String bucketName;
     String objectName;
+    String memoryCacheObjectKey;
     try {
       URI uri = new URI(uriString);
       String path = uri.getPath();
+      // Object names are put into URIs as they are on upload
+      memoryCacheObjectKey = getMemoryCacheObjectKey(uri.getRawPath());
       int firstSlashIndex = 0;
       int secondSlashIndex = path.indexOf('/', firstSlashIndex + 1);
       if (secondSlashIndex == -1) {
@@ -232,6 +492,22 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
           + "and object name form it:" + uriString, e);
     }
 
+    if (memoryCache != null && offset == 0) {
+      MemoryObjectCache.Entry memoryEntry = memoryCache.get(uriString);
+      if (memoryEntry != null) {
+        FDSObject object = new FDSObject(bucketName, objectName);
+        ObjectMetadata metadata = memoryEntry.getMetadata();
+        object.setObjectContent(new ObjectInputStream(new ByteArrayInputStream(
+            memoryEntry.getContent()), metadata, listener));
+        object.setObjectMetadata(metadata);
+        return object;
+      }
+    }
+
+    // Only whole objects are cached
+    boolean isCacheable = objectCache != null && offset == 0;
+    DiskObjectCache.Entry cacheEntry = isCacheable ?
+        objectCache.get(uriString) : null;
     InputStream responseContent = null;
     GalaxyFDSClientException lastException = null;
     try {
@@ -240,11 +516,37 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
       if (offset > 0 && !isGetThumbnail(params)) {
         headers.put(HttpHeaders.RANGE, "bytes=" + offset + "-");
       }
+      if (cacheEntry != null) {
+        // Revalidates the cached object
+        if (cacheEntry.getEtag() != null) {
+          headers.put(HttpHeaders.IF_NONE_MATCH, cacheEntry.getEtag());
+        }
+        Date lastModified = cacheEntry.getMetadata().getLastModified();
+        if (lastModified != null) {
+          headers.put(HttpHeaders.IF_MODIFIED_SINCE,
+              Util.formatDateString(lastModified));
+        }
+      }
       HttpUriRequest request = RequestFactory.createRequest(uriString,
           config.getCredential(), HttpMethod.GET, headers);
-      HttpResponse response = httpClient.execute(request);
-      responseContent = response.getEntity().getContent();
+      HttpResponse response = transport.execute(request);
+      HttpEntity entity = response.getEntity();
+      responseContent = entity != null ? entity.getContent() : null;
       int statusCode = response.getStatusLine().getStatusCode();
+      FDSObject object = new FDSObject(bucketName, objectName);
+      if (statusCode == HttpStatus.SC_NOT_MODIFIED && cacheEntry != null) {
+        closeQuietly(responseContent);
+        InputStream content = cacheEntry.getContent();
+        if (memoryCache != null) {
+          content = memoryCache.cache(content, uriString,
+              memoryCacheObjectKey, cacheEntry.getMetadata());
+        }
+        object.setObjectContent(new ObjectInputStream(content,
+            cacheEntry.getMetadata(), listener));
+        object.setObjectMetadata(cacheEntry.getMetadata());
+        cacheEntry = null;
+        return object;
+      }
       if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
         lastException = new GalaxyFDSClientException("Unable to get object["
             + bucketName + "/" + objectName + "] from URI :" + uriString
@@ -252,9 +554,18 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
         throw lastException;
       }
 
-      FDSObject object = new FDSObject(bucketName, objectName);
       ObjectMetadata metadata = ObjectMetadata.parseObjectMetadata(
           response.getAllHeaders());
+      if (isCacheable && statusCode == HttpStatus.SC_OK) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        responseContent = objectCache.cache(responseContent, uriString,
+            metadata, etag != null ? etag.getValue() : null);
+      }
+      if (memoryCache != null && offset == 0
+          && statusCode == HttpStatus.SC_OK) {
+        responseContent = memoryCache.cache(responseContent, uriString,
+            memoryCacheObjectKey, metadata);
+      }
       object.setObjectContent(new ObjectInputStream(responseContent, metadata,
           listener));
       object.setObjectMetadata(metadata);
@@ -265,6 +576,9 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
           + " Exception:" + e.getMessage(), e);
       throw lastException;
     } finally {
+      if (cacheEntry != null) {
+        closeQuietly(cacheEntry.getContent());
+      }
       if (lastException != null && responseContent != null) {
         try {
           responseContent.close();
@@ -292,100 +606,891 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
   public ObjectMetadata getObject(String bucketName, String objectName,
       File destinationFile, List<UserParam> params, ProgressListener listener)
       throws GalaxyFDSClientException {
+    Args.notNull(bucketName, "bucket name");
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notNull(objectName, "object name");
+    Args.notEmpty(objectName, "object name");
+
+    return getObject(config.getDownloadBaseUri() + "/" + bucketName + "/"
+        + objectName, destinationFile, params, listener);
+  }
+
+  /**
+   * In this deprecated method, parameter fromCdn is ignored.
+   */
+  @Override
+  @Deprecated
+  public ObjectMetadata getObject(String bucketName, String objectName,
+      File destinationFile, List<UserParam> params,
+      ProgressListener listener, boolean fromCdn)
+      throws GalaxyFDSClientException {
+    return getObject(bucketName, objectName, destinationFile, params, listener);
+ }
+
+  @Override
+  public ObjectMetadata getObject(String uriString, File destinationFile,
+      List<UserParam> params, ProgressListener listener)
+      throws GalaxyFDSClientException {
+    Args.notNull(uriString, "URI");
     Args.notNull(destinationFile, "Destination file");
 
-    int retriedTimes = 0;
-    boolean isGetThumbnail = isGetThumbnail(params);
-    while (true) {
-      try {
-        boolean isAppend = retriedTimes != 0 && !isGetThumbnail;
-        FDSObject object = getObject(bucketName, objectName,
-            isAppend ? destinationFile.length() : 0, params, listener);
-        // If never retried before, downloads the file from beginning,
-        // otherwise downloads the file from the position where last download ends
-        Util.downloadObjectToFile(object, destinationFile, isAppend);
-        return object.getObjectMetadata();
-      } catch (GalaxyFDSClientException e) {
-        if (++retriedTimes >= config.getMaxRetryTimes()) {
-          throw e;
-        } else if (!TEST_MODE) {
-            Log.i(LOG_TAG, "Retry the download of object:" + objectName + " bucket"
-                + ":" + bucketName + " to file: " + destinationFile.getAbsolutePath()
-                + " cause:" + Util.getStackTrace(e));
+    if (isParallelDownload(params)) {
+      ObjectMetadata metadata = getObjectInParallel(
+          appendParams(uriString, params), destinationFile, listener);
+      if (metadata != null) {
+        return metadata;
+      }
+    }
+    return downloadObjectToFile(uriString, destinationFile, params, listener);
+  }
+
+  /**
+   * Downloads an object to the file, and resumes from the end of the file on
+   * retry. The resumed request carries the ETag or Last-Modified of the first
+   * response in If-Range, so the server sends the whole object again if it
+   * has changed, and the file is then rewritten from the beginning.
+   * <p/>
+   * If resumable download is enabled, the validator is also kept in a
+   * sidecar file until the download is done, so that a later download of the
+   * same object to the same file resumes too.
+   */
+  private ObjectMetadata downloadObjectToFile(String uriString,
+      File destinationFile, List<UserParam> params, ProgressListener listener)
+      throws GalaxyFDSClientException {
+    // Thumbnails are generated on the fly and can't be resumed
+    boolean isResumable = !isGetThumbnail(params);
+    boolean isCheckpointed = isResumable
+        && config.isResumableDownloadEnabled();
+    uriString = appendParams(uriString, params);
+    String validator = isCheckpointed ?
+        DownloadCheckpoint.load(destinationFile, uriString) : null;
+
+    int retriedTimes = 0;
+    while (true) {
+      HttpUriRequest request = null;
+      InputStream responseContent = null;
+      boolean isCompleted = false;
+      try {
+        long offset = validator != null && destinationFile.exists() ?
+            destinationFile.length() : 0;
+        Map<String, String> headers = new HashMap<String, String>();
+        if (offset > 0) {
+          headers.put(HttpHeaders.RANGE, "bytes=" + offset + "-");
+          headers.put(HttpHeaders.IF_RANGE, validator);
+        }
+        request = RequestFactory.createRequest(uriString,
+            config.getCredential(), HttpMethod.GET, headers);
+        try {
+          HttpResponse response = executeDownloadRequest(request, listener);
+          responseContent = response.getEntity().getContent();
+          int statusCode = response.getStatusLine().getStatusCode();
+          ObjectMetadata metadata = ObjectMetadata.parseObjectMetadata(
+              response.getAllHeaders());
+          Header contentRange = response.getFirstHeader(
+              HttpHeaders.CONTENT_RANGE);
+          if (statusCode == HttpStatus.SC_PARTIAL_CONTENT && offset > 0
+              && parseContentRangeStart(contentRange) == offset) {
+            // The object is unchanged, continues from the end of the file
+            long contentLength = parseContentRangeTotal(contentRange);
+            if (contentLength >= 0) {
+              metadata.setContentLength(contentLength);
+            }
+          } else if (statusCode == HttpStatus.SC_OK) {
+            // Downloads the whole object, which may have changed
+            offset = 0;
+            validator = isResumable ? getValidator(response) : null;
+            if (isCheckpointed && validator != null) {
+              saveDownloadCheckpoint(destinationFile, uriString, validator);
+            }
+          } else {
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT
+                || statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+              // Unexpected range, downloads the whole object on retry
+              validator = null;
+            }
+            throw new GalaxyFDSClientException("Unable to get object from URI :"
+                + uriString + ". Cause:" + response.getStatusLine().toString());
+          }
+
+          ProgressNotifier progressNotifier = new ProgressNotifier(listener,
+              metadata.getContentLength());
+          progressNotifier.onTransferred(offset);
+          writeToFile(responseContent, destinationFile, offset > 0,
+              progressNotifier);
+          progressNotifier.finish();
+          isCompleted = true;
+          if (isCheckpointed) {
+            DownloadCheckpoint.delete(destinationFile);
+          }
+          return metadata;
+        } catch (IOException e) {
+          throw new GalaxyFDSClientException("Unable to get object from URI :"
+              + uriString + " to file: " + destinationFile.getAbsolutePath()
+              + " Exception:" + e.getMessage(), e);
+        }
+      } catch (GalaxyFDSClientException e) {
+        if (++retriedTimes >= config.getMaxRetryTimes()) {
+          throw e;
+        } else if (!TEST_MODE) {
+          Log.i(LOG_TAG, "Retry the download of object:" + uriString
+              + " to file: " + destinationFile.getAbsolutePath()
+              + " cause:" + Util.getStackTrace(e));
+        }
+      } finally {
+        if (!isCompleted && request != null) {
+          // Doesn't read the rest of the response
+          request.abort();
+        }
+        closeQuietly(responseContent);
+        finishDownloadRequest(request, listener);
+      }
+    }
+  }
+
+  private void saveDownloadCheckpoint(File destinationFile, String uriString,
+      String validator) {
+    try {
+      DownloadCheckpoint.save(destinationFile, uriString, validator);
+    } catch (IOException e) {
+      // The download is still resumable on retry in this call
+      if (!TEST_MODE) {
+        Log.w(LOG_TAG, "Fail to save the checkpoint of downloading object:"
+            + uriString + " to file: " + destinationFile.getAbsolutePath()
+            + " cause:" + Util.getStackTrace(e));
+      }
+    }
+  }
+
+  /**
+   * Gets the strong validator of the response, ETag is preferred
+   */
+  private static String getValidator(HttpResponse response) {
+    Header header = response.getFirstHeader(HttpHeaders.ETAG);
+    if (header == null) {
+      header = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    }
+    return header != null ? header.getValue() : null;
+  }
+
+  private static void writeToFile(InputStream content, File destinationFile,
+      boolean isAppend, ProgressNotifier progressNotifier) throws IOException {
+    // attempt to create the parent if it doesn't exist
+    File parentDirectory = destinationFile.getParentFile();
+    if (!isAppend && parentDirectory != null && !parentDirectory.exists()) {
+      parentDirectory.mkdirs();
+    }
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(
+        destinationFile, isAppend), DOWNLOAD_BUFFER_SIZE);
+    try {
+      byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+      int bytesRead;
+      while ((bytesRead = content.read(buffer)) != -1) {
+        out.write(buffer, 0, bytesRead);
+        progressNotifier.onTransferred(bytesRead);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Downloads an object to the file by parallel ranged requests. The first
+   * range also tells the size of the object, then the rest ranges are
+   * downloaded concurrently and written at their offsets in the file.
+   * <p/>
+   * The later ranges carry the ETag of the first response in If-Match, or
+   * its Last-Modified in If-Unmodified-Since, so that the download fails
+   * instead of mixing two versions if the object is overwritten meanwhile.
+   *
+   * @return The metadata of the object, or null if the object should be
+   * downloaded by a single request, e.g. the server doesn't support range or
+   * gives no validator
+   */
+  private ObjectMetadata getObjectInParallel(final String uriString,
+      File destinationFile, final ProgressListener listener)
+      throws GalaxyFDSClientException {
+    final long rangeSize = config.getDownloadRangeSize();
+    HttpUriRequest request = null;
+    HttpResponse response;
+    InputStream responseContent = null;
+    try {
+      Map<String, String> headers = new HashMap<String, String>();
+      headers.put(HttpHeaders.RANGE, "bytes=0-" + (rangeSize - 1));
+      request = RequestFactory.createRequest(uriString,
+          config.getCredential(), HttpMethod.GET, headers);
+      response = executeDownloadRequest(request, listener);
+      responseContent = response.getEntity().getContent();
+    } catch (IOException e) {
+      closeQuietly(responseContent);
+      finishDownloadRequest(request, listener);
+      return null;
+    }
+
+    RandomAccessFile randomAccessFile = null;
+    List<Future<Void>> futures = null;
+    final AtomicBoolean isAborted = new AtomicBoolean(false);
+    try {
+      final long contentLength = parseContentRangeTotal(
+          response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+      final Header validator = getValidatorHeader(response);
+      if (response.getStatusLine().getStatusCode()
+          != HttpStatus.SC_PARTIAL_CONTENT || contentLength < 0
+          || validator == null) {
+        // Doesn't read the response which may be the whole object
+        request.abort();
+        return null;
+      }
+      ObjectMetadata metadata = ObjectMetadata.parseObjectMetadata(
+          response.getAllHeaders());
+      metadata.setContentLength(contentLength);
+
+      File parentDirectory = destinationFile.getParentFile();
+      if (parentDirectory != null && !parentDirectory.exists()) {
+        parentDirectory.mkdirs();
+      }
+      randomAccessFile = new RandomAccessFile(destinationFile, "rw");
+      randomAccessFile.setLength(contentLength);
+      final FileChannel channel = randomAccessFile.getChannel();
+      final ProgressNotifier progressNotifier = new ProgressNotifier(listener,
+          contentLength);
+
+      // Downloads the rest ranges while reading the first one
+      final AtomicLong nextRangeOffset = new AtomicLong(rangeSize);
+      long numRestRanges = (contentLength - 1) / rangeSize;
+      int numWorkers = (int) Math.min(numRestRanges,
+          config.getMaxParallelDownloadRanges());
+      futures = new ArrayList<Future<Void>>(numWorkers);
+      for (int i = 0; i < numWorkers; i++) {
+        futures.add(threadPoolExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            long offset;
+            while (!isAborted.get() && (offset = nextRangeOffset.getAndAdd(
+                rangeSize)) < contentLength) {
+              getRange(uriString, validator, channel, offset,
+                  Math.min(offset + rangeSize, contentLength),
+                  progressNotifier, listener);
+            }
+            return null;
+          }
+        }));
+      }
+
+      long firstRangeEnd = Math.min(rangeSize, contentLength);
+      long position = 0;
+      try {
+        position = writeToChannel(responseContent, channel, 0, firstRangeEnd,
+            progressNotifier);
+      } catch (IOException e) {
+        // Continued by another request below
+      }
+      if (position < firstRangeEnd) {
+        getRange(uriString, validator, channel, position, firstRangeEnd,
+            progressNotifier, listener);
+      }
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      progressNotifier.finish();
+      return metadata;
+    } catch (Exception e) {
+      isAborted.set(true);
+      if (futures != null) {
+        // The workers stop after their current ranges, the file is closed
+        // only once they are done
+        for (Future<Void> future : futures) {
+          try {
+            future.get();
+          } catch (InterruptedException interruption) {
+            Thread.currentThread().interrupt();
+            break;
+          } catch (ExecutionException failure) {
+            // Only the first failure is thrown
+          }
+        }
+      }
+      if (e instanceof GalaxyFDSClientException) {
+        throw (GalaxyFDSClientException) e;
+      }
+      throw new GalaxyFDSClientException("Unable to download object from URI :"
+          + uriString + " to file:" + destinationFile.getAbsolutePath(), e);
+    } finally {
+      closeQuietly(responseContent);
+      finishDownloadRequest(request, listener);
+      if (randomAccessFile != null) {
+        try {
+          randomAccessFile.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the ETag header of the response, or its Last-Modified header if it
+   * has no ETag
+   */
+  private static Header getValidatorHeader(HttpResponse response) {
+    Header header = response.getFirstHeader(HttpHeaders.ETAG);
+    if (header == null) {
+      header = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    }
+    return header;
+  }
+
+  /**
+   * Downloads the range [start, end) of an object and writes it at the same
+   * offset of the file channel, retries from where the last try stops. The
+   * range must be of the version of the object that has the validator,
+   * otherwise it fails without retry.
+   */
+  private void getRange(String uriString, Header validator,
+      FileChannel channel, long start, long end,
+      ProgressNotifier progressNotifier, ProgressListener listener)
+      throws GalaxyFDSClientException {
+    long position = start;
+    int retriedTimes = 0;
+    boolean isChanged = false;
+    while (true) {
+      HttpUriRequest request = null;
+      InputStream responseContent = null;
+      try {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HttpHeaders.RANGE, "bytes=" + position + "-" + (end - 1));
+        headers.put(validator.getName().equalsIgnoreCase(HttpHeaders.ETAG) ?
+            HttpHeaders.IF_MATCH : HttpHeaders.IF_UNMODIFIED_SINCE,
+            validator.getValue());
+        request = RequestFactory.createRequest(uriString,
+            config.getCredential(), HttpMethod.GET, headers);
+        try {
+          HttpResponse response = executeDownloadRequest(request, listener);
+          responseContent = response.getEntity().getContent();
+          Header responseValidator = response.getFirstHeader(
+              validator.getName());
+          if (response.getStatusLine().getStatusCode()
+              == HttpStatus.SC_PRECONDITION_FAILED
+              || (responseValidator != null
+              && !responseValidator.getValue().equals(validator.getValue()))) {
+            isChanged = true;
+            throw new GalaxyFDSClientException("Object of URI :" + uriString
+                + " has changed during the download, " + validator.getName()
+                + " was " + validator.getValue() + ", now "
+                + (responseValidator != null ? responseValidator.getValue()
+                    : response.getStatusLine().toString()));
+          }
+          if (response.getStatusLine().getStatusCode()
+              != HttpStatus.SC_PARTIAL_CONTENT) {
+            throw new GalaxyFDSClientException("Unable to get range["
+                + position + ", " + end + ") from URI :" + uriString
+                + ". Cause:" + response.getStatusLine().toString());
+          }
+          position = writeToChannel(responseContent, channel, position, end,
+              progressNotifier);
+          if (position < end) {
+            throw new GalaxyFDSClientException("Unexpected end of range["
+                + start + ", " + end + ") from URI :" + uriString
+                + " at " + position);
+          }
+          return;
+        } catch (IOException e) {
+          throw new GalaxyFDSClientException("Unable to get range[" + position
+              + ", " + end + ") from URI :" + uriString + " Exception:"
+              + e.getMessage(), e);
+        }
+      } catch (GalaxyFDSClientException e) {
+        if (isChanged || ++retriedTimes >= config.getMaxRetryTimes()) {
+          throw e;
+        } else if (!TEST_MODE) {
+          Log.i(LOG_TAG, "Retry the download of range[" + position + ", "
+              + end + ") from URI :" + uriString + " cause:"
+              + Util.getStackTrace(e));
+        }
+      } finally {
+        closeQuietly(responseContent);
+        finishDownloadRequest(request, listener);
+      }
+    }
+  }
+
+  /**
+   * Writes the content to the file channel from the position until the end
+   * or the content ends, and returns the position reached
+   */
+  private static long writeToChannel(InputStream content, FileChannel channel,
+      long position, long end, ProgressNotifier progressNotifier)
+      throws IOException {
+    byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+    int bytesRead;
+    while (position < end && (bytesRead = content.read(buffer, 0,
+        (int) Math.min(buffer.length, end - position))) != -1) {
+      ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, bytesRead);
+      while (byteBuffer.hasRemaining()) {
+        position += channel.write(byteBuffer, position);
+      }
+      progressNotifier.onTransferred(bytesRead);
+    }
+    return position;
+  }
+
+  /**
+   * Parses the first byte position from a header like "bytes 0-1023/4096",
+   * returns -1 if it is invalid
+   */
+  private static long parseContentRangeStart(Header contentRange) {
+    if (contentRange != null) {
+      String value = contentRange.getValue().trim();
+      int spaceIndex = value.indexOf(' ');
+      int dashIndex = value.indexOf('-');
+      if (spaceIndex != -1 && dashIndex > spaceIndex) {
+        try {
+          return Long.parseLong(value.substring(spaceIndex + 1, dashIndex)
+              .trim());
+        } catch (NumberFormatException e) {
+          // Invalid
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Parses the complete length from a header like "bytes 0-1023/4096",
+   * returns -1 if it is unknown
+   */
+  private static long parseContentRangeTotal(Header contentRange) {
+    if (contentRange != null) {
+      String value = contentRange.getValue();
+      int slashIndex = value.lastIndexOf('/');
+      if (slashIndex != -1) {
+        try {
+          return Long.parseLong(value.substring(slashIndex + 1).trim());
+        } catch (NumberFormatException e) {
+          // Unknown length, i.e. "*"
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static void closeQuietly(InputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // Ignored
+      }
+    }
+  }
+
+  @Override
+  public PutObjectResult putObject(String bucketName, String objectName,
+      File file) throws GalaxyFDSClientException {
+    return putObject(bucketName, objectName, file, null);
+  }
+
+  @Override
+  public PutObjectResult putObject(String bucketName, String objectName,
+      File file, List<UserParam> params) throws GalaxyFDSClientException {
+    return putObject(bucketName, objectName, file, params, null);
+  }
+
+  @Override
+  public PutObjectResult putObject(String bucketName, String objectName,
+      File file, List<UserParam> params, ProgressListener listener)
+      throws GalaxyFDSClientException {
+    Args.notNull(file, "file");
+    Args.notNull(bucketName, "bucket name");
+    Args.notEmpty(bucketName, "bucket name");
+
+    return putFile(bucketName, objectName, file, params,
+        new ProgressNotifier(listener, file.length()), null);
+  }
+
+  private PutObjectResult putFile(String bucketName, String objectName,
+      File file, List<UserParam> params, ProgressNotifier progressNotifier,
+      Semaphore inFlightParts) throws GalaxyFDSClientException {
+    RandomAccessFile randomAccessFile;
+    try {
+      randomAccessFile = new RandomAccessFile(file, "r");
+    } catch (FileNotFoundException e) {
+      throw new GalaxyFDSClientException("Unable to find the file to be uploaded"
+          + ":" + file.getAbsolutePath(), e);
+    }
+
+    try {
+      ObjectMetadata metadata = new ObjectMetadata();
+      metadata.setContentLength(file.length());
+      metadata.setContentType(Util.getMimeType(file));
+      metadata.setLastModified(new Date(file.lastModified()));
+      // Each part is an independent region of the file, which is sent
+      // directly from the file and re-read on retry
+      final FileChannel channel = randomAccessFile.getChannel();
+      UploadCheckpoint checkpoint = null;
+      if (config.getUploadCheckpointDir() != null) {
+        checkpoint = UploadCheckpoint.open(config.getUploadCheckpointDir(),
+            bucketName, objectName, file, config.getUploadPartSize(),
+            config.getMaxUploadPartNumber());
+      }
+      return uploadObject(bucketName, objectName, metadata, params,
+          new UploadPartSource() {
+            @Override
+            public HttpEntity nextPart(long offset, int length) {
+              return new FileRegionEntity(channel, offset, length);
+            }
+
+            @Override
+            public void release(HttpEntity part) {
+            }
+          }, progressNotifier, inFlightParts, checkpoint);
+    } finally {
+      try {
+        randomAccessFile.close();
+      } catch (IOException e) {
+        // Ignore IOException when close file
+      }
+    }
+  }
+
+  /**
+   * Supplies the content of upload parts, in the order of part number
+   */
+  private interface UploadPartSource {
+    HttpEntity nextPart(long offset, int length) throws IOException;
+
+    /**
+     * Called once the part is no longer used, whether or not the upload
+     * succeeded
+     */
+    void release(HttpEntity part);
+  }
+
+  /**
+   * Uploads an object by multipart upload, the parts are taken from the part
+   * source and uploaded concurrently, with at most maxInFlightUploadParts
+   * parts pending at once. The progress notifier may be null if the progress
+   * is tracked by the part source.
+   * <p/>
+   * A part takes a permit of inFlightParts while it is pending, so that the
+   * uploads of a batch share one budget. If it is null, the upload has its
+   * own budget. On failure, the parts not started yet are cancelled and give
+   * their permits back, and the running ones are waited for.
+   * <p/>
+   * If a checkpoint is given, the upload is resumed from it and every
+   * uploaded part is recorded in it, and the upload is kept on failure so
+   * that it can be resumed later. If the upload ID is not found by the
+   * server, i.e. it has expired or been aborted, the upload is aborted and
+   * its checkpoint discarded instead, and a resumed upload is started over
+   * once. Other errors, such as 403 or 429, keep the checkpoint. The parts of a checkpointed upload are all of the same size, so
+   * adaptive part size doesn't apply to them.
+   */
+  private PutObjectResult uploadObject(final String bucketName,
+      String objectName, ObjectMetadata metadata, List<UserParam> params,
+      final UploadPartSource partSource,
+      final ProgressNotifier progressNotifier, Semaphore inFlightParts,
+      UploadCheckpoint checkpoint) throws GalaxyFDSClientException {
+    final String requestedObjectName = objectName;
+    long contentLength = metadata.getContentLength();
+    Args.notNegative(contentLength, "content length");
+
+    if (metadata.getContentType() == null) {
+      metadata.setContentType(Consts.APPLICATION_OCTET_STREAM);
+    }
+
+    if (inFlightParts == null) {
+      inFlightParts = new Semaphore(config.getMaxInFlightUploadParts());
+    }
+    final Semaphore finalInFlightParts = inFlightParts;
+
+    if (contentLength < config.getDirectUploadThreshold()) {
+      try {
+        inFlightParts.acquire();
+      } catch (InterruptedException e) {
+        throw new GalaxyFDSClientException(e);
+      }
+      try {
+        return directUploadObject(bucketName, objectName, metadata, params,
+            partSource, progressNotifier);
+      } finally {
+        inFlightParts.release();
+      }
+    }
+
+    String uploadId = null;
+    UploadCheckpoint journal = null;
+    boolean isResumed = false;
+    // The progress of this try, which is rolled back if it is started over
+    final AtomicLong transferredBytes = new AtomicLong(0);
+    List<ReleasableTask<UploadPartResult>> tasks = null;
+    List<Future<UploadPartResult>> futures = null;
+    try {
+      if (checkpoint != null && checkpoint.getUploadId() != null) {
+        isResumed = true;
+        uploadId = checkpoint.getUploadId();
+        objectName = checkpoint.getUploadObjectName();
+        journal = checkpoint;
+      } else {
+        InitMultipartUploadResult initMultipartUploadResult =
+            initMultipartUpload(bucketName, objectName, contentLength);
+        // Object name may be null
+        objectName = initMultipartUploadResult.getObjectName();
+        uploadId = initMultipartUploadResult.getUploadId();
+        if (checkpoint != null) {
+          try {
+            checkpoint.start(uploadId, objectName);
+            journal = checkpoint;
+          } catch (IOException e) {
+            if (!TEST_MODE) {
+              Log.w(LOG_TAG, "Fail to save the checkpoint of uploading object:"
+                  + objectName + " bucket:" + bucketName + ", the upload "
+                  + "won't be resumable. cause:" + Util.getStackTrace(e));
+            }
+          }
+        }
+      }
+
+      // The part plan of a resumed upload must be the same as the first try
+      UploadPartPlanner planner = new UploadPartPlanner(contentLength,
+          journal != null ? journal.getMaxPartNumber()
+              : config.getMaxUploadPartNumber());
+      final AdaptivePartSizer partSizer = journal == null
+          && config.isAdaptiveUploadPartSizeEnabled() ? new AdaptivePartSizer(
+              config.getInitialUploadPartSize(), config.getMinUploadPartSize(),
+              config.getMaxUploadPartSize()) : null;
+
+      final String finalUploadId = uploadId;
+      final String finalObjectName = objectName;
+      final UploadCheckpoint finalJournal = journal;
+      List<UploadPartResult> results = new ArrayList<UploadPartResult>();
+      tasks = new ArrayList<ReleasableTask<UploadPartResult>>();
+      futures = new ArrayList<Future<UploadPartResult>>();
+      int checkedParts = 0;
+      while (planner.hasNextPart()) {
+        inFlightParts.acquire();
+        // The permit and the entity are released by the part once it is
+        // submitted, whether it runs or is cancelled
+        ReleasableTask<UploadPartResult> task = null;
+        boolean isSubmitted = false;
+        try {
+          // Stop as soon as any finished part has failed
+          while (checkedParts < futures.size()
+              && futures.get(checkedParts).isDone()) {
+            futures.get(checkedParts++).get();
+          }
+
+          UploadPartPlanner.Part part;
+          if (journal != null) {
+            part = planner.nextPart(journal.getPartSize());
+            UploadPartResult uploadedPart = journal.getUploadedPart(
+                part.getPartNumber());
+            if (uploadedPart != null) {
+              results.add(uploadedPart);
+              if (progressNotifier != null) {
+                transferredBytes.addAndGet(part.getLength());
+                progressNotifier.onTransferred(part.getLength());
+              }
+              continue;
+            }
+          } else {
+            part = planner.nextPart(partSizer != null ?
+                partSizer.getPartSize() : config.getUploadPartSize());
+          }
+          final int partNumber = part.getPartNumber();
+          final int uploadBytes = part.getLength();
+          final HttpEntity entity = partSource.nextPart(part.getOffset(),
+              uploadBytes);
+          task = new ReleasableTask<UploadPartResult>(
+              new Callable<UploadPartResult>() {
+            @Override
+            public UploadPartResult call() throws Exception {
+              long startTime = System.currentTimeMillis();
+              UploadPartResult result = uploadPart(finalUploadId, bucketName,
+                  finalObjectName, partNumber, entity);
+              if (partSizer != null) {
+                partSizer.onPartUploaded(uploadBytes,
+                    System.currentTimeMillis() - startTime);
+              }
+              if (finalJournal != null) {
+                saveUploadedPart(finalJournal, finalUploadId, result);
+              }
+              if (progressNotifier != null) {
+                transferredBytes.addAndGet(uploadBytes);
+                progressNotifier.onTransferred(uploadBytes);
+              }
+              return result;
+            }
+          }, new Runnable() {
+            @Override
+            public void run() {
+              partSource.release(entity);
+              finalInFlightParts.release();
+            }
+          });
+          futures.add(threadPoolExecutor.submit(task));
+          tasks.add(task);
+          isSubmitted = true;
+        } finally {
+          if (!isSubmitted) {
+            if (task != null) {
+              task.cancelIfNotStarted();
+            } else {
+              inFlightParts.release();
+            }
+          }
+        }
+      }
+
+      for (Future<UploadPartResult> future : futures) {
+        results.add(future.get());
+      }
+      Collections.sort(results, new Comparator<UploadPartResult>() {
+        @Override
+        public int compare(UploadPartResult lhs, UploadPartResult rhs) {
+          return lhs.getPartNumber() < rhs.getPartNumber() ? -1
+              : (lhs.getPartNumber() == rhs.getPartNumber() ? 0 : 1);
+        }
+      });
+      if (progressNotifier != null) {
+        progressNotifier.finish();
+      }
+      UploadPartResultList uploadPartResultList = new UploadPartResultList();
+      uploadPartResultList.setUploadPartResultList(results);
+      PutObjectResult result = completeMultipartUpload(uploadId, bucketName,
+          objectName, metadata, uploadPartResultList, params);
+      if (journal != null) {
+        journal.delete();
+      }
+      return result;
+    } catch (Exception e) {
+      if (futures != null) {
+        cancelParts(tasks, futures);
+      }
+      if (journal != null && isUploadNotFound(e)) {
+        // The upload can never be resumed
+        journal.reset();
+        abortMultipartUploadQuietly(bucketName, objectName, uploadId);
+        if (isResumed) {
+          if (!TEST_MODE) {
+            Log.i(LOG_TAG, "Resumed upload of object:" + objectName
+                + " bucket:" + bucketName + " upload id:" + uploadId
+                + " is rejected, start over. cause:" + Util.getStackTrace(e));
+          }
+          if (progressNotifier != null) {
+            progressNotifier.onTransferred(-transferredBytes.get());
+          }
+          return uploadObject(bucketName, requestedObjectName, metadata,
+              params, partSource, progressNotifier, inFlightParts, journal);
         }
       }
+      // A journaled upload is kept to be resumed later
+      if (uploadId != null && journal == null) {
+        abortMultipartUpload(bucketName, objectName, uploadId);
+      }
+      throw new GalaxyFDSClientException(e);
     }
   }
 
   /**
-   * In this deprecated method, parameter fromCdn is ignored.
+   * Cancels the parts which haven't started, which gives back their permits
+   * and entities, and waits for the running ones to finish, so that the
+   * upload is neither aborted nor its source closed under them
    */
-  @Override
-  @Deprecated
-  public ObjectMetadata getObject(String bucketName, String objectName,
-      File destinationFile, List<UserParam> params,
-      ProgressListener listener, boolean fromCdn)
-      throws GalaxyFDSClientException {
-    return getObject(bucketName, objectName, destinationFile, params, listener);
- }
-
-  @Override
-  public ObjectMetadata getObject(String uriString, File destinationFile,
-      List<UserParam> params, ProgressListener listener)
-      throws GalaxyFDSClientException {
-    Args.notNull(destinationFile, "Destination file");
-
-    int retriedTimes = 0;
-    boolean isGetThumbnail = isGetThumbnail(params);
-    while (true) {
-      try {
-        boolean isAppend = retriedTimes != 0 && !isGetThumbnail;
-        FDSObject object = getObject(uriString,
-            isAppend ? destinationFile.length() : 0, params, listener);
-        // If never retried before, downloads the file from beginning,
-        // otherwise downloads the file from the position where last download ends
-        Util.downloadObjectToFile(object, destinationFile, isAppend);
-        return object.getObjectMetadata();
-      } catch (GalaxyFDSClientException e) {
-        if (++retriedTimes >= config.getMaxRetryTimes()) {
-          throw e;
-        } else if (!TEST_MODE) {
-          Log.i(LOG_TAG, "Retry the download of object:" + uriString
-              + " to file: " + destinationFile.getAbsolutePath()
-              + " cause:" + Util.getStackTrace(e));
+  private static void cancelParts(List<ReleasableTask<UploadPartResult>> tasks,
+      List<Future<UploadPartResult>> futures) {
+    for (int i = 0; i < tasks.size(); i++) {
+      if (tasks.get(i).cancelIfNotStarted()) {
+        futures.get(i).cancel(false);
+      }
+    }
+    boolean isInterrupted = false;
+    for (Future<UploadPartResult> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          // The running parts are bounded by the retries and the timeouts
+          isInterrupted = true;
+        } catch (ExecutionException e) {
+          break;
+        } catch (CancellationException e) {
+          break;
         }
       }
     }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
   }
 
-  @Override
-  public PutObjectResult putObject(String bucketName, String objectName,
-      File file) throws GalaxyFDSClientException {
-    return putObject(bucketName, objectName, file, null);
+  /**
+   * Whether the failure is caused by the upload ID not found by the server,
+   * which is the only error that a retry or a resume can't recover from
+   */
+  private static boolean isUploadNotFound(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof GalaxyFDSServerException) {
+        return ((GalaxyFDSServerException) cause).isNotFound();
+      }
+    }
+    return false;
   }
 
-  @Override
-  public PutObjectResult putObject(String bucketName, String objectName,
-      File file, List<UserParam> params) throws GalaxyFDSClientException {
-    return putObject(bucketName, objectName, file, params, null);
+  private void abortMultipartUploadQuietly(String bucketName,
+      String objectName, String uploadId) {
+    try {
+      abortMultipartUpload(bucketName, objectName, uploadId);
+    } catch (GalaxyFDSClientException e) {
+      if (!TEST_MODE) {
+        Log.i(LOG_TAG, "Fail to abort the upload of object:" + objectName
+            + " bucket:" + bucketName + " upload id:" + uploadId + " cause:"
+            + Util.getStackTrace(e));
+      }
+    }
   }
 
-  @Override
-  public PutObjectResult putObject(String bucketName, String objectName,
-      File file, List<UserParam> params, ProgressListener listener)
+  private void saveUploadedPart(UploadCheckpoint journal, String uploadId,
+      UploadPartResult part) {
+    try {
+      journal.addUploadedPart(uploadId, part);
+    } catch (IOException e) {
+      // The part is uploaded again if the upload is resumed
+      if (!TEST_MODE) {
+        Log.w(LOG_TAG, "Fail to save the checkpoint of part:"
+            + part.getPartNumber() + " cause:" + Util.getStackTrace(e));
+      }
+    }
+  }
+
+  /**
+   * Uploads an object in a single request, which is much faster than
+   * multipart upload for small objects
+   */
+  private PutObjectResult directUploadObject(String bucketName,
+      String objectName, ObjectMetadata metadata, List<UserParam> params,
+      UploadPartSource partSource, ProgressNotifier progressNotifier)
       throws GalaxyFDSClientException {
-    Args.notNull(file, "file");
+    int contentLength = (int) metadata.getContentLength();
+    HttpEntity entity;
+    try {
+      entity = partSource.nextPart(0, contentLength);
+    } catch (IOException e) {
+      throw new GalaxyFDSClientException("Fail to read the content of object["
+          + bucketName + "/" + objectName + "]", e);
+    }
 
     try {
-      InputStream in = new BufferedInputStream(new FileInputStream(file));
-      ObjectMetadata metadata = new ObjectMetadata();
-      metadata.setContentLength(file.length());
-      metadata.setContentType(Util.getMimeType(file));
-      metadata.setLastModified(new Date(file.lastModified()));
-      return putObject(bucketName, objectName, in, metadata, params, listener);
-    } catch (FileNotFoundException e) {
-      throw new GalaxyFDSClientException("Unable to find the file to be uploaded"
-          + ":" + file.getAbsolutePath(), e);
+      PutObjectResult result = putObjectContent(bucketName, objectName,
+          metadata, entity, params);
+      if (progressNotifier != null) {
+        progressNotifier.onTransferred(contentLength);
+        progressNotifier.finish();
+      }
+      return result;
+    } finally {
+      partSource.release(entity);
     }
   }
 
@@ -404,68 +1509,54 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
   }
 
   @Override
-  public PutObjectResult putObject(final String bucketName, String objectName,
-      InputStream input, final ObjectMetadata metadata, List<UserParam> params,
+  public PutObjectResult putObject(String bucketName, String objectName,
+      InputStream input, ObjectMetadata metadata, List<UserParam> params,
       ProgressListener listener) throws GalaxyFDSClientException {
     Args.notNull(bucketName, "bucket name");
     Args.notEmpty(bucketName, "bucket name");
     Args.notNull(input, "input stream");
     Args.notNull(metadata, "metadata");
-    long contentLength = metadata.getContentLength();
-    Args.notNegative(contentLength, "content length");
+    Args.notNegative(metadata.getContentLength(), "content length");
 
-    if (metadata.getContentType() == null) {
-      metadata.setContentType(Consts.APPLICATION_OCTET_STREAM);
-    }
+    return putStream(bucketName, objectName, input, metadata, params,
+        listener, null, null);
+  }
 
-    String uploadId = null;
-    ObjectInputStream objectInputStream = new ObjectInputStream(input, metadata,
-        listener);
+  /**
+   * Uploads an object from a stream, the progress is reported either to the
+   * listener when the stream is read, or to the notifier when the parts are
+   * uploaded
+   */
+  private PutObjectResult putStream(String bucketName, String objectName,
+      InputStream input, ObjectMetadata metadata, List<UserParam> params,
+      ProgressListener listener, ProgressNotifier progressNotifier,
+      Semaphore inFlightParts) throws GalaxyFDSClientException {
+    final ObjectInputStream objectInputStream = new ObjectInputStream(input,
+        metadata, listener);
     try {
-      InitMultipartUploadResult initMultipartUploadResult =
-          initMultipartUpload(bucketName, objectName, metadata.getContentLength());
-      // Object name may be null
-      objectName = initMultipartUploadResult.getObjectName();
-      uploadId = initMultipartUploadResult.getUploadId();
-      int partSize = config.getUploadPartSize();
-      int numParts = (int) (contentLength + partSize - 1) / partSize;
-
-      final String finalUploadId = uploadId;
-      final String finalObjectName = objectName;
-      int remainingBytes = (int)contentLength;
-      List<Future<UploadPartResult>> futures
-          = new ArrayList<Future<UploadPartResult>>(numParts);
-      List<UploadPartResult> results = new ArrayList<UploadPartResult>(numParts);
-      for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-        final int uploadBytes = Math.min(partSize, remainingBytes);
-        final byte[] buffer = new byte[uploadBytes];
-        final int finalPartNumber = partNumber;
-        objectInputStream.read(buffer, 0, uploadBytes);
-        Future<UploadPartResult> future = threadPoolExecutor
-            .submit(new Callable<UploadPartResult>() {
-              @Override
-              public UploadPartResult call() throws Exception {
-                return uploadPart(finalUploadId, bucketName, finalObjectName,
-                    finalPartNumber, new ObjectInputStream(
-                        new ByteArrayInputStream(buffer), metadata, null),
-                    uploadBytes);
+      // The parts are read into buffers which are sent as is and recycled
+      // after the part is uploaded, there are never more buffers than
+      // in-flight parts
+      final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<byte[]>(
+          config.getMaxInFlightUploadParts());
+      return uploadObject(bucketName, objectName, metadata, params,
+          new UploadPartSource() {
+            @Override
+            public HttpEntity nextPart(long offset, int length)
+                throws IOException {
+              byte[] buffer = freeBuffers.poll();
+              if (buffer == null || buffer.length < length) {
+                buffer = new byte[length];
               }
-            });
-        futures.add(future);
-        remainingBytes -= uploadBytes;
-      }
-      for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-        results.add(futures.get(partNumber - 1).get());
-      }
-      UploadPartResultList uploadPartResultList = new UploadPartResultList();
-      uploadPartResultList.setUploadPartResultList(results);
-      return completeMultipartUpload(uploadId, bucketName, objectName, metadata,
-          uploadPartResultList, params);
-    } catch(Exception e) {
-      if (uploadId != null) {
-        abortMultipartUpload(bucketName, objectName, uploadId);
-      }
-      throw new GalaxyFDSClientException(e);
+              Util.readFully(objectInputStream, buffer, 0, length);
+              return new ByteArrayRegionEntity(buffer, 0, length);
+            }
+
+            @Override
+            public void release(HttpEntity part) {
+              freeBuffers.offer(((ByteArrayRegionEntity) part).getBuffer());
+            }
+          }, progressNotifier, inFlightParts, null);
     } finally {
       try {
         objectInputStream.close();
@@ -475,6 +1566,106 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     }
   }
 
+  @Override
+  public List<PutObjectResult> putObjects(final List<PutObjectRequest> requests,
+      ProgressListener listener) throws GalaxyFDSClientException {
+    Args.notNull(requests, "requests");
+    final long[] contentLengths = new long[requests.size()];
+    Integer[] order = new Integer[requests.size()];
+    long totalLength = 0;
+    for (int i = 0; i < requests.size(); i++) {
+      Args.notNull(requests.get(i), "request");
+      contentLengths[i] = requests.get(i).getContentLength();
+      totalLength += contentLengths[i];
+      order[i] = i;
+    }
+    // Smaller objects are uploaded first so that they finish early
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer lhs, Integer rhs) {
+        return contentLengths[lhs] < contentLengths[rhs] ? -1
+            : (contentLengths[lhs] == contentLengths[rhs] ? 0 : 1);
+      }
+    });
+
+    final List<Integer> pendingRequests = Arrays.asList(order);
+    final PutObjectResult[] results = new PutObjectResult[requests.size()];
+    final AtomicInteger nextRequest = new AtomicInteger(0);
+    final AtomicBoolean isAborted = new AtomicBoolean(false);
+    // All the parts of the batch share one budget, and the permits are
+    // granted in the order they are asked for
+    final Semaphore inFlightParts = new Semaphore(
+        config.getMaxInFlightUploadParts(), true);
+    final ProgressNotifier batchNotifier = new ProgressNotifier(listener,
+        totalLength);
+
+    int numDrivers = Math.min(requests.size(),
+        config.getMaxInFlightUploadParts());
+    if (numDrivers == 0) {
+      return Collections.emptyList();
+    }
+    // A driver waits for the parts uploaded by the thread pool of the client,
+    // so the drivers must not run on it
+    ExecutorService driverExecutor = Executors.newFixedThreadPool(numDrivers,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "FDS-batch-upload-thread");
+          }
+        });
+    CompletionService<Void> completionService =
+        new ExecutorCompletionService<Void>(driverExecutor);
+    try {
+      for (int i = 0; i < numDrivers; i++) {
+        completionService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            int next;
+            while (!isAborted.get()
+                && (next = nextRequest.getAndIncrement()) < results.length) {
+              int index = pendingRequests.get(next);
+              results[index] = putObject(requests.get(index), batchNotifier,
+                  inFlightParts);
+            }
+            return null;
+          }
+        });
+      }
+      for (int i = 0; i < numDrivers; i++) {
+        completionService.take().get();
+      }
+      batchNotifier.finish();
+      return Arrays.asList(results);
+    } catch (Exception e) {
+      isAborted.set(true);
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      if (cause instanceof GalaxyFDSClientException) {
+        throw (GalaxyFDSClientException) cause;
+      }
+      throw new GalaxyFDSClientException("Unable to upload " + results.length
+          + " objects", cause);
+    } finally {
+      // Interrupts the uploads in progress if the batch has failed
+      driverExecutor.shutdownNow();
+    }
+  }
+
+  private PutObjectResult putObject(PutObjectRequest request,
+      ProgressNotifier batchNotifier, Semaphore inFlightParts)
+      throws GalaxyFDSClientException {
+    ProgressNotifier progressNotifier = new ProgressNotifier(
+        request.getProgressListener(), request.getContentLength(),
+        batchNotifier);
+    if (request.getFile() != null) {
+      return putFile(request.getBucketName(), request.getObjectName(),
+          request.getFile(), request.getParams(), progressNotifier,
+          inFlightParts);
+    }
+    return putStream(request.getBucketName(), request.getObjectName(),
+        request.getInput(), request.getMetadata(), request.getParams(), null,
+        progressNotifier, inFlightParts);
+  }
+
   private InitMultipartUploadResult initMultipartUpload(String bucketName,
       String objectName, long estimatedSize) throws GalaxyFDSClientException {
     String uriString = config.getUploadBaseUri() + "/" + bucketName + "/"
@@ -491,7 +1682,7 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
       HttpUriRequest request = RequestFactory.createRequest(uriString,
           config.getCredential(), objectName == null ?
               HttpMethod.POST : HttpMethod.PUT, headers);
-      HttpResponse response = httpClient.execute(request);
+      HttpResponse response = transport.execute(request);
       responseContent = response.getEntity().getContent();
       if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
         throw new GalaxyFDSClientException("Unable to upload object["
@@ -499,9 +1690,8 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
             + ". Fail to initiate multipart upload: "
             + response.getStatusLine().toString());
       }
-      Reader reader = new InputStreamReader(responseContent);
-      InitMultipartUploadResult result = new Gson().fromJson(reader,
-          InitMultipartUploadResult.class);
+      InitMultipartUploadResult result =
+          JsonCodec.parseInitMultipartUploadResult(responseContent);
       if (result == null || result.getUploadId() == null
           || result.getObjectName() == null || result.getBucketName() == null) {
         throw new GalaxyFDSClientException("Fail to parse the result of init "
@@ -523,57 +1713,36 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     }
   }
 
+  /**
+   * Uploads a part with the given entity, the entity must be repeatable so
+   * that it can be sent again on retry
+   */
   private UploadPartResult uploadPart(String uploadId, String bucketName,
-      String objectName, int partNumber, ObjectInputStream in, long contentLength)
+      String objectName, int partNumber, HttpEntity entity)
       throws GalaxyFDSClientException {
     String uriString = config.getUploadBaseUri() + "/" + bucketName + "/"
         + objectName + "?uploadId=" + uploadId + "&partNumber=" + partNumber;
 
-    byte[] buffer = new byte[FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE];
-    ByteArrayOutputStream out = new ByteArrayOutputStream((int) contentLength);
-    try {
-      long remainingBytes = contentLength;
-      while (remainingBytes != 0) {
-        int toReadBytes = Math.min(buffer.length, (int) remainingBytes);
-        int readBytes = in.read(buffer, 0, toReadBytes);
-        if (readBytes == -1) {
-          break;
-        }
-        out.write(buffer, 0, readBytes);
-        remainingBytes -= readBytes;
-      }
-    } catch (IOException e) {
-      throw new GalaxyFDSClientException("Fail to read data from input stream,"
-          + " size:" + contentLength, e);
-    }
-
-    byte[] data = out.toByteArray();
-    try {
-      out.close();
-    } catch (IOException e) {
-      //Ignored
-    }
-
     int retriedTimes = 0;
     InputStream responseContent = null;
     while (true) {
       try {
         HttpUriRequest request = RequestFactory.createRequest(uriString,
             config.getCredential(), HttpMethod.PUT, null);
-        ((HttpPut) request).setEntity(new ByteArrayEntity(data));
+        ((HttpPut) request).setEntity(entity);
         HttpResponse response;
         try {
-          response = httpClient.execute(request);
+          response = transport.execute(request);
           responseContent = response.getEntity().getContent();
           if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            throw new GalaxyFDSClientException("Unable to upload object["
+            throw new GalaxyFDSServerException("Unable to upload object["
                 + bucketName + "/" + objectName + "] to URI :" + uriString
                 + ". Fail to upload part " + partNumber + ": "
-                + response.getStatusLine().toString());
+                + response.getStatusLine().toString(),
+                response.getStatusLine().getStatusCode());
           }
-          Reader reader = new InputStreamReader(responseContent);
-          UploadPartResult result = new Gson().fromJson(reader,
-              UploadPartResult.class);
+          UploadPartResult result = JsonCodec.parseUploadPartResult(
+              responseContent);
           if (result == null || result.getEtag() == null || result.getPartSize() == 0) {
             throw new GalaxyFDSClientException("Fail to parse the result of" +
                 " uploading part. bucket name:" + bucketName + ", object name:"
@@ -585,7 +1754,8 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
               + uriString, e);
         }
       } catch (GalaxyFDSClientException e) {
-        if (++retriedTimes >= config.getMaxRetryTimes()) {
+        if (++retriedTimes >= config.getMaxRetryTimes()
+            || isUploadNotFound(e)) {
           throw e;
         } else if (!TEST_MODE) {
           Log.i(LOG_TAG, "Retry the upload of object:" + objectName + " bucket"
@@ -632,17 +1802,17 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
       HttpUriRequest request = RequestFactory.createRequest(uriString,
           config.getCredential(), HttpMethod.PUT, headers);
       ((HttpPut) request).setEntity(
-          new StringEntity(new Gson().toJson(uploadPartResultList)));
-      HttpResponse response = httpClient.execute(request);
+          new StringEntity(JsonCodec.toJson(uploadPartResultList)));
+      HttpResponse response = transport.execute(request);
       responseContent = response.getEntity().getContent();
       if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-        throw new GalaxyFDSClientException("Unable to upload object[" + bucketName
-            + "/" + objectName + "] to URI :" + uriString
+        throw new GalaxyFDSServerException("Unable to upload object["
+            + bucketName + "/" + objectName + "] to URI :" + uriString
             + ". Fail to complete multipart upload: "
-            + response.getStatusLine().toString());
+            + response.getStatusLine().toString(),
+            response.getStatusLine().getStatusCode());
       }
-      Reader reader = new InputStreamReader(responseContent);
-      PutObjectResult result = new Gson().fromJson(reader, PutObjectResult.class);
+      PutObjectResult result = JsonCodec.parsePutObjectResult(responseContent);
       if (result == null || result.getAccessKeyId() == null
           || result.getSignature() == null || result.getExpires() == 0) {
         throw new GalaxyFDSClientException("Fail to parse the result of" +
@@ -656,6 +1826,8 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
       throw new GalaxyFDSClientException("Fail to complete multipart upload. "
           + "URI:" + uriString, e);
     } finally {
+      // The object may have changed even if the response is lost
+      invalidateCache(bucketName, objectName);
       if (responseContent != null) {
         try {
           responseContent.close();
@@ -666,6 +1838,85 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     }
   }
 
+  /**
+   * Puts the whole content of an object with the given entity, the entity
+   * must be repeatable so that it can be sent again on retry
+   */
+  private PutObjectResult putObjectContent(String bucketName,
+      String objectName, ObjectMetadata metadata, HttpEntity entity,
+      List<UserParam> params) throws GalaxyFDSClientException {
+    StringBuilder builder = new StringBuilder();
+    builder.append(config.getUploadBaseUri() + "/" + bucketName + "/"
+        + (objectName == null ? "" : objectName));
+    if (params != null) {
+      for (UserParam param : params) {
+        builder.append(builder.indexOf("?") == -1 ? '?' : '&');
+        builder.append(param.toString());
+      }
+    }
+    String uriString = builder.toString();
+
+    Map<String, String> headers = new HashMap<String, String>();
+    for (Map.Entry<String, String> e: metadata.getAllMetadata().entrySet()) {
+      headers.put(e.getKey().toLowerCase(), e.getValue());
+    }
+
+    int retriedTimes = 0;
+    InputStream responseContent = null;
+    while (true) {
+      try {
+        /*
+         * If the object's name is not provided, should use HTTP POST method to
+         * ask FDS service to generate one.
+         */
+        HttpUriRequest request = RequestFactory.createRequest(uriString,
+            config.getCredential(), objectName == null ?
+                HttpMethod.POST : HttpMethod.PUT, headers);
+        ((HttpEntityEnclosingRequest) request).setEntity(entity);
+        try {
+          HttpResponse response = transport.execute(request);
+          responseContent = response.getEntity().getContent();
+          if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            throw new GalaxyFDSClientException("Unable to upload object["
+                + bucketName + "/" + objectName + "] to URI :" + uriString
+                + ". Cause:" + response.getStatusLine().toString());
+          }
+          PutObjectResult result = JsonCodec.parsePutObjectResult(
+              responseContent);
+          if (result == null || result.getAccessKeyId() == null
+              || result.getSignature() == null || result.getExpires() == 0) {
+            throw new GalaxyFDSClientException("Fail to parse the result of"
+                + " putting object. bucket name:" + bucketName
+                + ", object name:" + objectName);
+          }
+          result.setFdsServiceBaseUri(config.getBaseUri());
+          result.setCdnServiceBaseUri(config.getCdnBaseUri());
+          return result;
+        } catch (IOException e) {
+          throw new GalaxyFDSClientException("Fail to put object. URI:"
+              + uriString, e);
+        }
+      } catch (GalaxyFDSClientException e) {
+        if (++retriedTimes >= config.getMaxRetryTimes()) {
+          throw e;
+        } else if (!TEST_MODE) {
+          Log.i(LOG_TAG, "Retry the upload of object:" + objectName + " bucket"
+              + ":" + bucketName + " cause:" + Util.getStackTrace(e));
+        }
+      } finally {
+        invalidateCache(bucketName, objectName);
+        if (responseContent != null) {
+          try {
+            responseContent.close();
+          } catch (IOException e) {
+            // Ignored
+          }
+          responseContent = null;
+        }
+      }
+    }
+  }
+
   private void abortMultipartUpload(String bucketName, String objectName,
       String uploadId) throws GalaxyFDSClientException {
     String uriString = config.getUploadBaseUri() + "/" + bucketName + "/"
@@ -675,7 +1926,7 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
     try {
       HttpUriRequest request = RequestFactory.createRequest(uriString,
           config.getCredential(), HttpMethod.DELETE, null);
-      HttpResponse response = httpClient.execute(request);
+      HttpResponse response = transport.execute(request);
       responseContent = response.getEntity().getContent();
       if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
         throw new GalaxyFDSClientException("Unable to upload object[" + bucketName
@@ -737,24 +1988,77 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
   }
 
   @Override
-  public boolean doesObjectExist(String bucketName, String objectName)
+  public String generatePresignedUri(String bucketName, String objectName,
+      HttpMethod httpMethod, long expiresInMs)
+      throws GalaxyFDSClientException {
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notEmpty(objectName, "object name");
+    Args.notNull(httpMethod, "http method");
+    Args.positive(expiresInMs, "expiration");
+    if (!(config.getCredential() instanceof SignatureCredential)) {
+      throw new GalaxyFDSClientException("Presigned URIs can only be generated"
+          + " with SignatureCredential");
+    }
+
+    String baseUri = httpMethod == HttpMethod.GET ? config.getDownloadBaseUri()
+        : config.getUploadBaseUri();
+    String uriString = baseUri + "/" + bucketName + "/" + objectName;
+    String key = httpMethod.name() + " " + uriString;
+    long now = System.currentTimeMillis();
+    if (presignedUriCache != null) {
+      String presignedUri = presignedUriCache.get(key,
+          now + expiresInMs - expiresInMs / 10);
+      if (presignedUri != null) {
+        return presignedUri;
+      }
+    }
+
+    long expires = now + expiresInMs;
+    String presignedUri = ((SignatureCredential) config.getCredential())
+        .presignUri(uriString, httpMethod, expires);
+    if (presignedUriCache != null) {
+      presignedUriCache.put(key, presignedUri, expires);
+    }
+    return presignedUri;
+  }
+
+  @Override
+  public ObjectMetadata getObjectMetadata(String bucketName, String objectName)
       throws GalaxyFDSClientException {
     Args.notNull(bucketName, "bucket name");
     Args.notEmpty(bucketName, "bucket name");
     Args.notNull(objectName, "object name");
     Args.notEmpty(objectName, "object name");
 
+    String key = bucketName + "/" + objectName;
+    if (metadataCache != null) {
+      ObjectMetadataCache.Entry entry = metadataCache.get(key);
+      if (entry != null) {
+        return entry.getMetadata();
+      }
+    }
+
     String uriString = config.getBaseUri() + "/" + bucketName + "/"
         + objectName;
+    HttpEntity entity = null;
     try {
       HttpUriRequest request = RequestFactory.createRequest(uriString,
           config.getCredential(), HttpMethod.HEAD, null);
-      HttpResponse response = httpClient.execute(request);
+      HttpResponse response = transport.execute(request);
+      entity = response.getEntity();
       int statusCode = response.getStatusLine().getStatusCode();
       if (statusCode == HttpStatus.SC_OK) {
-        return true;
+        ObjectMetadata metadata = ObjectMetadata.parseObjectMetadata(
+            response.getAllHeaders());
+        if (metadataCache != null) {
+          metadataCache.put(key, metadata);
+        }
+        return metadata;
       } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
-        return false;
+        if (metadataCache != null) {
+          metadataCache.putMissing(key);
+        }
+        return null;
       } else {
         throw new GalaxyFDSClientException("Unable to head object[" + bucketName
             + "/" + objectName + "] from URI :" + uriString + ". Cause:"
@@ -764,6 +2068,84 @@ public class GalaxyFDSClientImpl implements GalaxyFDSClient {
       throw new GalaxyFDSClientException("Unable to head object[" + bucketName +
           "/" + objectName + "] from URI :" + uriString + " Exception:"
           + e.getMessage(), e);
+    } finally {
+      if (entity != null) {
+        try {
+          entity.consumeContent();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean doesObjectExist(String bucketName, String objectName)
+      throws GalaxyFDSClientException {
+    return getObjectMetadata(bucketName, objectName) != null;
+  }
+
+  @Override
+  public Map<ObjectKey, Boolean> doesObjectsExist(
+      Collection<ObjectKey> objectKeys) throws GalaxyFDSClientException {
+    Args.notNull(objectKeys, "object keys");
+    for (ObjectKey objectKey : objectKeys) {
+      Args.notNull(objectKey, "object key");
+    }
+
+    final List<ObjectKey> keys = new ArrayList<ObjectKey>(
+        new LinkedHashSet<ObjectKey>(objectKeys));
+    final boolean[] results = new boolean[keys.size()];
+    final AtomicInteger nextIndex = new AtomicInteger(0);
+    final AtomicBoolean isAborted = new AtomicBoolean(false);
+    Callable<Void> worker = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        int index;
+        while (!isAborted.get()
+            && (index = nextIndex.getAndIncrement()) < results.length) {
+          ObjectKey key = keys.get(index);
+          results[index] = doesObjectExist(key.getBucketName(),
+              key.getObjectName());
+        }
+        return null;
+      }
+    };
+
+    // No HTTP pipelining, each worker keeps at most one HEAD request in
+    // flight on a pooled connection
+    int numWorkers = Math.min(results.length,
+        config.getMaxParallelObjectChecks());
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(numWorkers);
+    try {
+      // The calling thread is one of the workers
+      for (int i = 1; i < numWorkers; i++) {
+        futures.add(threadPoolExecutor.submit(worker));
+      }
+      if (numWorkers > 0) {
+        worker.call();
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      isAborted.set(true);
+      for (Future<Void> future : futures) {
+        future.cancel(false);
+      }
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      if (cause instanceof GalaxyFDSClientException) {
+        throw (GalaxyFDSClientException) cause;
+      }
+      throw new GalaxyFDSClientException("Unable to check the existence of "
+          + results.length + " objects", cause);
+    }
+
+    Map<ObjectKey, Boolean> existences =
+        new LinkedHashMap<ObjectKey, Boolean>();
+    for (int i = 0; i < results.length; i++) {
+      existences.put(keys.get(i), results[i]);
     }
+    return existences;
   }
 }
@@ -2,13 +2,15 @@ package com.xiaomi.infra.galaxy.fds.android.auth;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
-import com.google.gson.Gson;
+import android.util.Log;
+import com.google.gson.JsonParseException;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.DefaultHttpClient;
@@ -16,8 +18,18 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
 import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
 import com.xiaomi.infra.galaxy.fds.android.model.StorageAccessToken;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransport;
+import com.xiaomi.infra.galaxy.fds.android.util.JsonCodec;
 
+/**
+ * Authenticates with a storage access token exchanged from an OAuth access
+ * token. The storage access token is refreshed in the background shortly
+ * before it expires, and at most one refresh is in progress at a time. If
+ * it has already expired, the requests wait for the refresh, which is then
+ * started even if the last one was too recent. Failed refreshes are logged.
+ */
 public class OAuthCredential implements GalaxyFDSCredential {
+  private static final String LOG_TAG = "OAuthCredential";
   private static final String STORAGE_ACCESS_TOKEN = "storageAccessToken";
   private static final String APP_ID = "appId";
   private static final String OAUTH_APPID = "oauthAppId";
@@ -27,48 +39,215 @@ public class OAuthCredential implements GalaxyFDSCredential {
   private static final String OAUTH_MAC_ALGORITHM = "oauthMacAlgorithm";
   private final String HEADER_VALUE = "OAuth";
 
+  /**
+   * How long before its expiration the storage access token is refreshed
+   */
+  private static final long REFRESH_AHEAD_MS = 5 * 60 * 1000;
+
+  /**
+   * The min interval between two refreshes, so that tokens which expire too
+   * soon don't cause a refresh on every request
+   */
+  private static final long MIN_REFRESH_INTERVAL_MS = 10 * 1000;
+
+  private static final boolean TEST_MODE;
+  static {
+    String runtime = System.getProperty("java.runtime.name");
+    if (runtime != null && runtime.equals("android runtime")) {
+      TEST_MODE = false;
+    } else {
+      TEST_MODE = true;
+    }
+  }
+
   private final String appId;
-  private final StorageAccessToken storageAccessToken;
+  private final String storageAccessTokenUri;
+  private final StorageAccessTokenStore tokenStore;
+  private volatile HttpTransport transport;
+  private volatile StorageAccessToken storageAccessToken;
+
+  // Guarded by this
+  private FutureTask<StorageAccessToken> refreshTask;
+  private long lastRefreshTime = 0;
 
   public OAuthCredential(String fdsServiceBaseUri, String appId,
       String oauthAppId, String oauthAccessToken, String oauthProvider,
       String macKey, String macAlgorithm) throws GalaxyFDSClientException {
+    this(fdsServiceBaseUri, appId, oauthAppId, oauthAccessToken, oauthProvider,
+        macKey, macAlgorithm, null);
+  }
+
+  /**
+   * Creates the credential with a store of the storage access token. The
+   * saved token is used if it hasn't expired, otherwise a new token is
+   * obtained from the server. Every new token is saved to the store.
+   *
+   * @param tokenStore The store of the token, may be null
+   */
+  public OAuthCredential(String fdsServiceBaseUri, String appId,
+      String oauthAppId, String oauthAccessToken, String oauthProvider,
+      String macKey, String macAlgorithm, StorageAccessTokenStore tokenStore)
+      throws GalaxyFDSClientException {
     this.appId = appId;
-    this.storageAccessToken = getStorageAccessToken(fdsServiceBaseUri, appId,
-        oauthAppId, oauthAccessToken, oauthProvider, macKey, macAlgorithm);
+    this.storageAccessTokenUri = fdsServiceBaseUri + "/?"
+        + STORAGE_ACCESS_TOKEN
+        + "&" + APP_ID + "=" + appId
+        + "&" + OAUTH_APPID + "=" + oauthAppId
+        + "&" + OAUTH_ACCESS_TOKEN + "=" + oauthAccessToken
+        + "&" + OAUTH_PROVIDER + "=" + oauthProvider
+        + "&" + OAUTH_MAC_ALGORITHM + "=" + macAlgorithm
+        + "&" + OAUTH_MAC_KEY + "=" + macKey;
+    this.tokenStore = tokenStore;
+
+    StorageAccessToken token = tokenStore != null ? tokenStore.load() : null;
+    if (token == null || token.getToken() == null
+        || token.getExpireTime() <= System.currentTimeMillis()) {
+      synchronized (this) {
+        lastRefreshTime = System.currentTimeMillis();
+      }
+      token = getStorageAccessToken();
+    }
+    this.storageAccessToken = token;
   }
 
-  private StorageAccessToken getStorageAccessToken(String serviceBaseUri,
-      String appId, String oauthAppId, String oauthAccessToken,
-      String oauthProvider, String macKey, String macAlgorithm)
+  /**
+   * Sets the HTTP transport used to refresh the storage access token. The
+   * client of GalaxyFDSClientImpl sets its own, so that the refreshes reuse
+   * its pooled connections.
+   */
+  public void setHttpTransport(HttpTransport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Stops using the HTTP transport to refresh the token if it has been set,
+   * which is done by GalaxyFDSClientImpl once it is shut down
+   */
+  public void removeHttpTransport(HttpTransport transport) {
+    if (this.transport == transport) {
+      this.transport = null;
+    }
+  }
+
+  private StorageAccessToken getStorageAccessToken()
       throws GalaxyFDSClientException {
+    HttpTransport transport = this.transport;
+    HttpGet get = new HttpGet(storageAccessTokenUri);
+    get.setHeader(HttpHeaders.AUTHORIZATION, HEADER_VALUE);
+    HttpEntity entity = null;
     try {
-      HttpClient httpClient = new DefaultHttpClient();
-      HttpGet get = new HttpGet(serviceBaseUri + "/?" + STORAGE_ACCESS_TOKEN
-          + "&" + APP_ID + "=" + appId
-          + "&" + OAUTH_APPID + "=" + oauthAppId
-          + "&" + OAUTH_ACCESS_TOKEN + "=" + oauthAccessToken
-          + "&" + OAUTH_PROVIDER + "=" + oauthProvider
-          + "&" + OAUTH_MAC_ALGORITHM + "=" + macAlgorithm
-          + "&" + OAUTH_MAC_KEY + "=" + macKey);
-      get.setHeader(HttpHeaders.AUTHORIZATION, HEADER_VALUE);
-      HttpResponse response = httpClient.execute(get);
+      HttpResponse response = transport != null ? transport.execute(get)
+          : new DefaultHttpClient().execute(get);
+      entity = response.getEntity();
       if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
         throw new GalaxyFDSClientException("Failed to get the storage access "
             + "token from FDS server. URI:" + get.getURI().toString()
             + ".Reason:" + response.getStatusLine().toString());
       }
 
-      InputStream in = response.getEntity().getContent();
-      Reader reader = new InputStreamReader(in);
-      StorageAccessToken token = new Gson().fromJson(reader,
-          StorageAccessToken.class);
-      in.close();
+      InputStream in = entity.getContent();
+      StorageAccessToken token;
+      try {
+        token = JsonCodec.fromJson(JsonCodec.newReader(in),
+            StorageAccessToken.class);
+      } catch (JsonParseException e) {
+        throw new GalaxyFDSClientException("Failed to parse the storage "
+            + "access token from FDS server. URI:" + get.getURI().toString(), e);
+      } finally {
+        in.close();
+      }
+      entity = null;
+      if (token == null || token.getToken() == null) {
+        throw new GalaxyFDSClientException("Failed to parse the storage "
+            + "access token from FDS server. URI:" + get.getURI().toString());
+      }
+      if (tokenStore != null) {
+        tokenStore.save(token);
+      }
       return token;
     } catch (IOException e) {
       throw new GalaxyFDSClientException("Failed to get the storage access "
           + "token", e);
+    } finally {
+      if (entity != null) {
+        try {
+          entity.consumeContent();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the current storage access token, refreshing it if it expires soon
+   */
+  private StorageAccessToken getCurrentToken() {
+    StorageAccessToken token = storageAccessToken;
+    long now = System.currentTimeMillis();
+    if (now < token.getExpireTime() - REFRESH_AHEAD_MS) {
+      return token;
+    }
+
+    boolean expired = now >= token.getExpireTime();
+    FutureTask<StorageAccessToken> task = startRefresh(now, expired);
+    if (!expired) {
+      // The token is still valid while being refreshed
+      return token;
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Logged by the refresh, keeps the expired token and the request will
+      // be rejected
+    }
+    return token;
+  }
+
+  /**
+   * Starts refreshing the token in the background unless it is already being
+   * refreshed or, if it hasn't expired, has been refreshed too recently
+   *
+   * @param expired Whether the token has expired, so that the requests can't
+   *                wait for the min refresh interval
+   * @return The task of the refresh, or null if no refresh is started
+   */
+  private synchronized FutureTask<StorageAccessToken> startRefresh(long now,
+      boolean expired) {
+    if (refreshTask != null) {
+      return refreshTask;
+    }
+    if (!expired && now - lastRefreshTime < MIN_REFRESH_INTERVAL_MS) {
+      return null;
     }
+    lastRefreshTime = now;
+    refreshTask = new FutureTask<StorageAccessToken>(
+        new Callable<StorageAccessToken>() {
+          @Override
+          public StorageAccessToken call() throws Exception {
+            try {
+              StorageAccessToken token = getStorageAccessToken();
+              storageAccessToken = token;
+              return token;
+            } catch (GalaxyFDSClientException e) {
+              if (!TEST_MODE) {
+                Log.w(LOG_TAG, "Fail to refresh the storage access token"
+                    + " cause:" + e.getMessage());
+              }
+              throw e;
+            } finally {
+              synchronized (OAuthCredential.this) {
+                refreshTask = null;
+              }
+            }
+          }
+        });
+    Thread thread = new Thread(refreshTask, "FDS-token-refresh-thread");
+    thread.setDaemon(true);
+    thread.start();
+    return refreshTask;
   }
 
   @Override
@@ -90,7 +269,7 @@ public class OAuthCredential implements GalaxyFDSCredential {
     builder.append('&');
     builder.append(STORAGE_ACCESS_TOKEN);
     builder.append('=');
-    builder.append(this.storageAccessToken.getToken());
+    builder.append(getCurrentToken().getToken());
 
     return builder.toString();
   }
@@ -1,25 +1,40 @@
 package com.xiaomi.infra.galaxy.fds.android.auth;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
-import com.google.common.collect.LinkedListMultimap;
 import org.apache.http.Header;
 import org.apache.http.client.methods.HttpRequestBase;
 
 import com.xiaomi.infra.galaxy.fds.Common;
+import com.xiaomi.infra.galaxy.fds.SubResource;
 import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
 import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
+import com.xiaomi.infra.galaxy.fds.android.util.Consts;
+import com.xiaomi.infra.galaxy.fds.android.util.Util;
 import com.xiaomi.infra.galaxy.fds.auth.signature.SignAlgorithm;
-import com.xiaomi.infra.galaxy.fds.auth.signature.Signer;
 import com.xiaomi.infra.galaxy.fds.model.HttpMethod;
 
+/**
+ * Signs the requests with the access key and secret, in the same way as
+ * {@link com.xiaomi.infra.galaxy.fds.auth.signature.Signer}. The string to
+ * sign is built directly from the request, and each thread reuses its own
+ * Mac initialized with the secret.
+ */
 public class SignatureCredential implements GalaxyFDSCredential {
   private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
       new ThreadLocal<SimpleDateFormat>() {
@@ -32,39 +47,199 @@ public class SignatureCredential implements GalaxyFDSCredential {
         }
       };
 
+  private static final String AUTHORIZATION_PREFIX = "Galaxy-V2 ";
+  private static final String SIGN_ALGORITHM = SignAlgorithm.HmacSHA1.name();
+  private static final String XIAOMI_DATE = Consts.XIAOMI_HEADER_PREFIX
+      + "date";
+  private static final Set<String> SUB_RESOURCES = new HashSet<String>();
+  static {
+    for (SubResource subResource : SubResource.values()) {
+      SUB_RESOURCES.add(subResource.getName());
+    }
+  }
+
   private final String accessKeyId;
-  private final String secretAccessKeyId;
+  private final byte[] secretKey;
+  private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
 
   public SignatureCredential(String accessKeyId, String secretAccessKeyId) {
     this.accessKeyId = accessKeyId;
-    this.secretAccessKeyId = secretAccessKeyId;
+    this.secretKey = secretAccessKeyId == null ? null
+        : getBytes(secretAccessKeyId);
   }
 
   @Override
   public void addHeader(HttpRequestBase request) throws GalaxyFDSClientException {
     request.setHeader(Common.DATE, DATE_FORMAT.get().format(new Date()));
 
-    try {
-      URI uri = request.getURI();
-      LinkedListMultimap<String, String> httpHeaders = LinkedListMultimap.create();
-      for (Header httpHeader : request.getAllHeaders()) {
-        httpHeaders.put(httpHeader.getName(), httpHeader.getValue());
-      }
-      HttpMethod httpMethod = HttpMethod.valueOf(request.getMethod());
-      request.setHeader(HttpHeaders.AUTHORIZATION, Signer.getAuthorizationHeader(
-          httpMethod, uri, httpHeaders, accessKeyId, secretAccessKeyId,
-          SignAlgorithm.HmacSHA1));
-    } catch (NoSuchAlgorithmException e) {
-      throw new GalaxyFDSClientException("Fail to get signature for request:"
-          + request, e);
-    } catch (InvalidKeyException e) {
-      throw new GalaxyFDSClientException("Fail to get signature for request:"
-          + request, e);
-    }
+    HttpMethod httpMethod = HttpMethod.valueOf(request.getMethod());
+    String stringToSign = getStringToSign(httpMethod, request.getURI(),
+        request.getAllHeaders());
+    request.setHeader(HttpHeaders.AUTHORIZATION, AUTHORIZATION_PREFIX
+        + accessKeyId + ":" + sign(stringToSign));
   }
 
   @Override
   public String addParam(String uri) {
     return uri;
   }
+
+  public String getAccessKeyId() {
+    return accessKeyId;
+  }
+
+  /**
+   * Signs the URI of an object locally, so that the object can be accessed
+   * with the given method by anyone holding the returned URI until it
+   * expires
+   *
+   * @param uriString  The URI of the object without parameters
+   * @param httpMethod The HTTP method allowed by the signature
+   * @param expires    The expiration time in milliseconds since the epoch
+   * @return The presigned URI
+   * @throws GalaxyFDSClientException
+   */
+  public String presignUri(String uriString, HttpMethod httpMethod,
+      long expires) throws GalaxyFDSClientException {
+    String unsignedUri = uriString + "?" + Consts.GALAXY_ACCESS_KEY_ID + "="
+        + accessKeyId + "&" + Consts.EXPIRES + "=" + expires;
+    URI uri;
+    try {
+      uri = new URI(unsignedUri);
+    } catch (URISyntaxException e) {
+      throw new GalaxyFDSClientException("Invalid URI:" + uriString, e);
+    }
+    return unsignedUri + "&" + Consts.SIGNATURE + "="
+        + sign(getStringToSign(httpMethod, uri, null));
+  }
+
+  /**
+   * Builds the string to sign of a request, which consists of the method,
+   * the Content-MD5, the Content-Type, the expiration time of a presigned
+   * URI or else the date, the canonicalized Xiaomi headers and the path
+   * with the sub-resources. Like Signer, the Content-MD5, Content-Type and
+   * Date headers are looked up by their lowercase names, and the date is
+   * left empty when the Xiaomi date header is present.
+   *
+   * @param headers The headers of the request, may be null
+   */
+  static String getStringToSign(HttpMethod httpMethod, URI uri,
+      Header[] headers) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(httpMethod.name()).append('\n');
+    builder.append(getHeader(headers, Common.CONTENT_MD5)).append('\n');
+    builder.append(getHeader(headers, Common.CONTENT_TYPE)).append('\n');
+
+    // The parameters are sorted by name, only the sub-resources are signed
+    long expires = 0;
+    TreeMap<String, String> subResources = new TreeMap<String, String>();
+    String query = uri.getQuery();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        int index = param.indexOf('=');
+        String name = index == -1 ? param : param.substring(0, index);
+        String value = index == -1 ? "" : param.substring(index + 1);
+        if (Consts.EXPIRES.equals(name)) {
+          expires = parseExpires(value);
+        } else if (SUB_RESOURCES.contains(name)) {
+          subResources.put(name, value);
+        }
+      }
+    }
+    if (expires > 0) {
+      // The expiration time of a presigned URI replaces the date
+      builder.append(expires).append('\n');
+    } else {
+      // The Xiaomi date is signed with the Xiaomi headers instead
+      if (getHeader(headers, XIAOMI_DATE).length() == 0) {
+        builder.append(getHeader(headers, Common.DATE));
+      }
+      builder.append('\n');
+    }
+
+    // The Xiaomi headers are sorted by lowercase name, with the values of
+    // the same header joined by commas
+    if (headers != null) {
+      TreeMap<String, StringBuilder> xiaomiHeaders =
+          new TreeMap<String, StringBuilder>();
+      for (Header header : headers) {
+        String name = header.getName().toLowerCase();
+        if (!name.startsWith(Consts.XIAOMI_HEADER_PREFIX)) {
+          continue;
+        }
+        StringBuilder values = xiaomiHeaders.get(name);
+        if (values == null) {
+          xiaomiHeaders.put(name, new StringBuilder(header.getValue()));
+        } else {
+          values.append(',').append(header.getValue());
+        }
+      }
+      for (Map.Entry<String, StringBuilder> entry : xiaomiHeaders.entrySet()) {
+        builder.append(entry.getKey()).append(':').append(entry.getValue())
+            .append('\n');
+      }
+    }
+
+    builder.append(uri.getPath());
+    boolean isFirst = true;
+    for (Map.Entry<String, String> entry : subResources.entrySet()) {
+      builder.append(isFirst ? '?' : '&').append(entry.getKey());
+      if (entry.getValue().length() > 0) {
+        builder.append('=').append(entry.getValue());
+      }
+      isFirst = false;
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Gets the first value of the header whose name matches exactly
+   *
+   * @return The value, or an empty string if there is no such header
+   */
+  private static String getHeader(Header[] headers, String name) {
+    if (headers != null) {
+      for (Header header : headers) {
+        if (header.getName().equals(name)) {
+          return header.getValue();
+        }
+      }
+    }
+    return "";
+  }
+
+  private static long parseExpires(String expires) {
+    try {
+      return Long.parseLong(expires);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private String sign(String stringToSign) throws GalaxyFDSClientException {
+    Mac mac = macs.get();
+    if (mac == null) {
+      try {
+        mac = Mac.getInstance(SIGN_ALGORITHM);
+        mac.init(new SecretKeySpec(secretKey, SIGN_ALGORITHM));
+      } catch (IllegalArgumentException e) {
+        throw new GalaxyFDSClientException("Invalid secret access key", e);
+      } catch (NoSuchAlgorithmException e) {
+        throw new GalaxyFDSClientException("Fail to get signature", e);
+      } catch (InvalidKeyException e) {
+        throw new GalaxyFDSClientException("Fail to get signature", e);
+      }
+      macs.set(mac);
+    }
+    // doFinal resets the mac for the next signature
+    return Util.encodeBase64(mac.doFinal(getBytes(stringToSign)));
+  }
+
+  private static byte[] getBytes(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
 }
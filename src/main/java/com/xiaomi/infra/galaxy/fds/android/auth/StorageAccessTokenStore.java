@@ -0,0 +1,25 @@
+package com.xiaomi.infra.galaxy.fds.android.auth;
+
+import com.xiaomi.infra.galaxy.fds.android.model.StorageAccessToken;
+
+/**
+ * Persists the storage access token of an {@link OAuthCredential}, so that a
+ * new process can reuse the token instead of exchanging the OAuth access
+ * token again. The store must belong to a single app and OAuth account.
+ */
+public interface StorageAccessTokenStore {
+
+  /**
+   * Loads the saved token
+   *
+   * @return The token, or null if no token has been saved
+   */
+  StorageAccessToken load();
+
+  /**
+   * Saves a newly obtained token, replacing the saved one
+   *
+   * @param token
+   */
+  void save(StorageAccessToken token);
+}
@@ -0,0 +1,29 @@
+package com.xiaomi.infra.galaxy.fds.android.exception;
+
+/**
+ * Thrown when Galaxy FDS service responds to a request with an error status
+ */
+public class GalaxyFDSServerException extends GalaxyFDSClientException {
+  private final int statusCode;
+
+  public GalaxyFDSServerException(String message, int statusCode) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * @return The HTTP status code of the response
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Whether the target of the request doesn't exist, such as an expired or
+   * aborted upload ID, so that sending it again won't succeed. Other errors,
+   * such as 408, 429 or a 403 caused by an expiring token, may be transient.
+   */
+  public boolean isNotFound() {
+    return statusCode == 404;
+  }
+}
@@ -0,0 +1,89 @@
+package com.xiaomi.infra.galaxy.fds.android.model;
+
+/**
+ * A snapshot of the statistics of the connection pool of a client
+ */
+public class ConnectionPoolStats {
+  private final int leased;
+  private final int available;
+  private final int pending;
+  private final int max;
+  private final long requests;
+  private final long totalWaitMs;
+  private final long maxWaitMs;
+
+  public ConnectionPoolStats(int leased, int available, int pending, int max,
+      long requests, long totalWaitMs, long maxWaitMs) {
+    this.leased = leased;
+    this.available = available;
+    this.pending = pending;
+    this.max = max;
+    this.requests = requests;
+    this.totalWaitMs = totalWaitMs;
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  /**
+   * @return The number of connections in use
+   */
+  public int getLeased() {
+    return leased;
+  }
+
+  /**
+   * @return The number of idle connections kept alive in the pool
+   */
+  public int getAvailable() {
+    return available;
+  }
+
+  /**
+   * @return The number of requests waiting for a connection
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  /**
+   * @return The max number of connections in total
+   */
+  public int getMax() {
+    return max;
+  }
+
+  /**
+   * @return The number of connections requested from the pool so far
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * @return The total time spent waiting for connections in milliseconds
+   */
+  public long getTotalWaitMs() {
+    return totalWaitMs;
+  }
+
+  /**
+   * @return The average time spent waiting for a connection in milliseconds
+   */
+  public long getAverageWaitMs() {
+    return requests == 0 ? 0 : totalWaitMs / requests;
+  }
+
+  /**
+   * @return The longest time spent waiting for a connection in milliseconds
+   */
+  public long getMaxWaitMs() {
+    return maxWaitMs;
+  }
+
+  @Override
+  public String toString() {
+    return "[leased: " + leased + ", available: " + available + ", pending: "
+        + pending + ", max: " + max + ", requests: " + requests
+        + ", average wait ms: " + getAverageWaitMs() + ", max wait ms: "
+        + maxWaitMs + "]";
+  }
+}
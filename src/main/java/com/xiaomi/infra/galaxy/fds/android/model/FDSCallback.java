@@ -0,0 +1,24 @@
+package com.xiaomi.infra.galaxy.fds.android.model;
+
+/**
+ * Callback interface for asynchronous Galaxy FDS requests. Exactly one of the
+ * methods is called when a request completes, from the thread which ran the
+ * request, unless the request is cancelled before it completes.
+ */
+public interface FDSCallback<T> {
+
+  /**
+   * Called when the request succeeds
+   *
+   * @param result The result of the request
+   */
+  void onSuccess(T result);
+
+  /**
+   * Called when the request fails
+   *
+   * @param e The exception which caused the failure, usually a
+   *          {@link com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException}
+   */
+  void onFailure(Exception e);
+}
@@ -25,6 +25,24 @@ public final class HttpHeaders {
   /** RFC 1945 (HTTP/1.0) Section 10.6, RFC 2616 (HTTP/1.1) Section 14.18 */
   public static final String DATE = "Date";
 
+  /** RFC 2616 (HTTP/1.1) Section 14.19 */
+  public static final String ETAG = "ETag";
+
+  /** RFC 2616 (HTTP/1.1) Section 14.24 */
+  public static final String IF_MATCH = "If-Match";
+
+  /** RFC 1945 (HTTP/1.0) Section 10.9, RFC 2616 (HTTP/1.1) Section 14.25 */
+  public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  /** RFC 2616 (HTTP/1.1) Section 14.26 */
+  public static final String IF_NONE_MATCH = "If-None-Match";
+
+  /** RFC 2616 (HTTP/1.1) Section 14.27 */
+  public static final String IF_RANGE = "If-Range";
+
+  /** RFC 2616 (HTTP/1.1) Section 14.28 */
+  public static final String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
+
   /** RFC 1945 (HTTP/1.0) Section 10.10, RFC 2616 (HTTP/1.1) Section 14.29 */
   public static final String LAST_MODIFIED = "Last-Modified";
 
@@ -0,0 +1,49 @@
+package com.xiaomi.infra.galaxy.fds.android.model;
+
+import com.xiaomi.infra.galaxy.fds.android.util.Args;
+
+/**
+ * Identifies an object by the name of its bucket and its own name
+ */
+public class ObjectKey {
+  private final String bucketName;
+  private final String objectName;
+
+  public ObjectKey(String bucketName, String objectName) {
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notEmpty(objectName, "object name");
+    this.bucketName = bucketName;
+    this.objectName = objectName;
+  }
+
+  public String getBucketName() {
+    return bucketName;
+  }
+
+  public String getObjectName() {
+    return objectName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ObjectKey)) {
+      return false;
+    }
+    ObjectKey other = (ObjectKey) o;
+    return bucketName.equals(other.bucketName)
+        && objectName.equals(other.objectName);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * bucketName.hashCode() + objectName.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return bucketName + "/" + objectName;
+  }
+}
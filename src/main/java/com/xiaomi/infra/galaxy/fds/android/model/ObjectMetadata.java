@@ -44,6 +44,22 @@ public class ObjectMetadata {
     return metadata;
   }
 
+  /**
+   * Creates the object metadata from the entries returned by
+   * {@link #getAllMetadata()}
+   */
+  public static ObjectMetadata parseObjectMetadata(Map<String, String> entries) {
+    ObjectMetadata metadata = new ObjectMetadata();
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      if (entry.getKey().startsWith(Consts.XIAOMI_META_HEADER_PREFIX)) {
+        metadata.addUserMetadata(entry.getKey(), entry.getValue());
+      } else {
+        metadata.addPredefinedMetadata(entry.getKey(), entry.getValue());
+      }
+    }
+    return metadata;
+  }
+
   /**
    * Custom user metadata, represented in responses with the x-xiaomi-meta-
    * header prefix
@@ -0,0 +1,127 @@
+package com.xiaomi.infra.galaxy.fds.android.model;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+import com.xiaomi.infra.galaxy.fds.android.util.Args;
+
+/**
+ * Describes an object to be uploaded in a batch, whose content is either a
+ * file or an input stream
+ */
+public class PutObjectRequest {
+  private final String bucketName;
+
+  /**
+   * The name of the object, null if it should be generated by FDS service
+   */
+  private final String objectName;
+
+  private final File file;
+  private final InputStream input;
+  private final ObjectMetadata metadata;
+
+  private List<UserParam> params;
+  private ProgressListener progressListener;
+
+  /**
+   * @param bucketName The name of the bucket to upload to
+   * @param objectName The name of the object, or null to let FDS service
+   *                   generate one
+   * @param file       The file to be uploaded
+   */
+  public PutObjectRequest(String bucketName, String objectName, File file) {
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notNull(file, "file");
+    this.bucketName = bucketName;
+    this.objectName = objectName;
+    this.file = file;
+    this.input = null;
+    this.metadata = null;
+  }
+
+  /**
+   * @param bucketName The name of the bucket to upload to
+   * @param objectName The name of the object, or null to let FDS service
+   *                   generate one
+   * @param input      The stream of the object content
+   * @param metadata   The metadata of the object, the content length is
+   *                   required
+   */
+  public PutObjectRequest(String bucketName, String objectName,
+      InputStream input, ObjectMetadata metadata) {
+    Args.notEmpty(bucketName, "bucket name");
+    Args.notNull(input, "input stream");
+    Args.notNull(metadata, "metadata");
+    Args.notNegative(metadata.getContentLength(), "content length");
+    this.bucketName = bucketName;
+    this.objectName = objectName;
+    this.file = null;
+    this.input = input;
+    this.metadata = metadata;
+  }
+
+  public String getBucketName() {
+    return bucketName;
+  }
+
+  public String getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * @return The file to be uploaded, null if the content is a stream
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return The stream of the object content, null if the content is a file
+   */
+  public InputStream getInput() {
+    return input;
+  }
+
+  public ObjectMetadata getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * @return The size of the object content
+   */
+  public long getContentLength() {
+    return file != null ? file.length() : metadata.getContentLength();
+  }
+
+  public List<UserParam> getParams() {
+    return params;
+  }
+
+  public void setParams(List<UserParam> params) {
+    this.params = params;
+  }
+
+  public PutObjectRequest withParams(List<UserParam> params) {
+    setParams(params);
+    return this;
+  }
+
+  public ProgressListener getProgressListener() {
+    return progressListener;
+  }
+
+  /**
+   * Sets the listener for the progress of this object in the batch
+   */
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  public PutObjectRequest withProgressListener(
+      ProgressListener progressListener) {
+    setProgressListener(progressListener);
+    return this;
+  }
+}
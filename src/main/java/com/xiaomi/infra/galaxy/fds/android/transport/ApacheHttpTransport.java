@@ -0,0 +1,84 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import com.xiaomi.infra.galaxy.fds.android.FDSClientConfiguration;
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
+import com.xiaomi.infra.galaxy.fds.android.util.ConnectionManagerFactory;
+import com.xiaomi.infra.galaxy.fds.android.util.IdleConnectionReaper;
+import com.xiaomi.infra.galaxy.fds.android.util.InstrumentedConnectionManager;
+
+/**
+ * Sends the requests with the Apache HttpClient bundled with Android, over a
+ * connection pool of its own
+ */
+public class ApacheHttpTransport implements HttpTransport {
+  private static final String HTTP_SCHEME = "http";
+  private static final String HTTPS_SCHEME = "https";
+
+  private final InstrumentedConnectionManager connectionManager;
+  private final HttpClient httpClient;
+
+  public ApacheHttpTransport(FDSClientConfiguration config) {
+    /* Set HTTP client parameters */
+    HttpParams httpClientParams = new BasicHttpParams();
+    HttpConnectionParams.setConnectionTimeout(httpClientParams,
+        config.getConnectionTimeoutMs());
+    HttpConnectionParams.setSoTimeout(httpClientParams,
+        config.getSocketTimeoutMs());
+    HttpConnectionParams.setStaleCheckingEnabled(httpClientParams, true);
+    HttpConnectionParams.setTcpNoDelay(httpClientParams, true);
+
+    int socketSendBufferSizeHint = config.getSocketBufferSizeHints()[0];
+    int socketReceiveBufferSizeHint = config.getSocketBufferSizeHints()[1];
+    if (socketSendBufferSizeHint > 0 || socketReceiveBufferSizeHint > 0) {
+      HttpConnectionParams.setSocketBufferSize(httpClientParams,
+          Math.max(socketSendBufferSizeHint, socketReceiveBufferSizeHint));
+    }
+
+    SchemeRegistry registry = new SchemeRegistry();
+    SocketFactory socketFactory = PlainSocketFactory.getSocketFactory();
+    registry.register(new Scheme(HTTP_SCHEME, socketFactory, 80));
+
+    if (config.isHttpsEnabled()) {
+      registry.register(new Scheme(HTTPS_SCHEME,
+          TlsSocketFactory.getInstance(), 443));
+    }
+
+    this.connectionManager = ConnectionManagerFactory.create(httpClientParams,
+        registry, config.getMaxConnectionsPerRoute(),
+        config.getMaxConnections(), config.getConnectionTtlMs(),
+        config.getIdleConnectionTimeoutMs(),
+        config.isIdleConnectionReaperEnabled());
+    this.httpClient = new DefaultHttpClient(connectionManager,
+        httpClientParams);
+  }
+
+  @Override
+  public HttpResponse execute(HttpUriRequest request) throws IOException {
+    return httpClient.execute(request);
+  }
+
+  @Override
+  public ConnectionPoolStats getConnectionPoolStats() {
+    return connectionManager.getStats();
+  }
+
+  @Override
+  public void shutdown() {
+    IdleConnectionReaper.removeConnectionManager(connectionManager);
+    connectionManager.shutdown();
+  }
+}
@@ -0,0 +1,39 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
+
+/**
+ * Sends the HTTP requests of a client. The requests and responses are
+ * described by the HttpCore interfaces, so that they are built and read the
+ * same way whichever HTTP stack actually sends them.
+ * <p/>
+ * The content of the response entity must be closed or consumed after use,
+ * and the request can be aborted to close the connection instead.
+ */
+public interface HttpTransport {
+
+  /**
+   * Sends the request and returns the response once its headers are
+   * received, the entity of the request is streamed to the server
+   *
+   * @param request The request, whose entity is sent if it has one
+   * @return The response, whose entity may be null if it has no content
+   */
+  HttpResponse execute(HttpUriRequest request) throws IOException;
+
+  /**
+   * @return A snapshot of the statistics of the connection pool, or null if
+   * the pool is not managed by the transport
+   */
+  ConnectionPoolStats getConnectionPoolStats();
+
+  /**
+   * Closes the pooled connections, the transport can't be used afterwards
+   */
+  void shutdown();
+}
@@ -0,0 +1,46 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import com.xiaomi.infra.galaxy.fds.android.FDSClientConfiguration;
+
+public class HttpTransportFactory {
+  private static final boolean IS_OKHTTP_AVAILABLE =
+      isClassAvailable("okhttp3.OkHttpClient");
+
+  private static boolean isClassAvailable(String className) {
+    try {
+      Class.forName(className, false,
+          HttpTransportFactory.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Whether the HTTP stack of the type is present at runtime
+   */
+  public static boolean isAvailable(HttpTransportType transportType) {
+    return transportType != HttpTransportType.OKHTTP || IS_OKHTTP_AVAILABLE;
+  }
+
+  /**
+   * Creates the transport of the type set in the configuration, OKHTTP
+   * falls back to URL_CONNECTION if OkHttp is not available
+   */
+  public static HttpTransport create(FDSClientConfiguration config) {
+    switch (config.getHttpTransportType()) {
+      case OKHTTP:
+        if (isAvailable(HttpTransportType.OKHTTP)) {
+          return new OkHttpTransport(config);
+        }
+        return new UrlConnectionHttpTransport(config);
+      case URL_CONNECTION:
+        return new UrlConnectionHttpTransport(config);
+      case APACHE:
+      default:
+        return new ApacheHttpTransport(config);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+/**
+ * The HTTP stacks the client can send its requests with
+ */
+public enum HttpTransportType {
+  /**
+   * The Apache HttpClient bundled with Android, with a connection pool of
+   * the client's own
+   */
+  APACHE,
+
+  /**
+   * HttpURLConnection, which shares the connection pool of the process. The
+   * pool size and the idle connection settings of the client don't apply.
+   */
+  URL_CONNECTION,
+
+  /**
+   * OkHttp, which multiplexes the concurrent requests to a host over one
+   * HTTP/2 connection if the server supports it. OkHttp is not a dependency
+   * of the SDK and must be added by the application, otherwise
+   * URL_CONNECTION is used instead and a warning is logged.
+   */
+  OKHTTP
+}
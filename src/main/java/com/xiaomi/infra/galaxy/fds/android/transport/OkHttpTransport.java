@@ -0,0 +1,207 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import com.xiaomi.infra.galaxy.fds.android.FDSClientConfiguration;
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
+import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
+
+/**
+ * Sends the requests with OkHttp, which must be in the classpath. HTTP/2 is
+ * negotiated with the HTTPS servers which support it, then the concurrent
+ * requests to a host, such as the parts of an upload or the ranges of a
+ * download, are multiplexed as streams over one connection. A stream waits
+ * for the flow control window of the server before sending more of its
+ * content, so the streams share the bandwidth instead of overrunning the
+ * server. HTTP/1.1 is used otherwise, with a pool of connections.
+ */
+public class OkHttpTransport implements HttpTransport {
+  private static final ProtocolVersion HTTP_2 =
+      new ProtocolVersion("HTTP", 2, 0);
+  private static final byte[] EMPTY_CONTENT = new byte[0];
+
+  private final OkHttpClient client;
+  private final boolean isHttpsEnabled;
+  private volatile boolean isShutdown = false;
+
+  public OkHttpTransport(FDSClientConfiguration config) {
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .connectTimeout(config.getConnectionTimeoutMs(), TimeUnit.MILLISECONDS)
+        .readTimeout(config.getSocketTimeoutMs(), TimeUnit.MILLISECONDS)
+        .writeTimeout(config.getSocketTimeoutMs(), TimeUnit.MILLISECONDS)
+        // The client retries the requests itself, and the entities may not
+        // be repeatable
+        .retryOnConnectionFailure(false)
+        .connectionPool(new ConnectionPool(config.getMaxConnectionsPerRoute(),
+            config.getIdleConnectionTimeoutMs(), TimeUnit.MILLISECONDS))
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    if (config.isHttpsEnabled()) {
+      // Each OkHttpClient has its own session cache otherwise
+      TlsSocketFactory tlsSocketFactory = TlsSocketFactory.getInstance();
+      builder.sslSocketFactory(tlsSocketFactory.getSslSocketFactory(),
+          tlsSocketFactory.getTrustManager());
+    }
+    this.client = builder.build();
+    this.isHttpsEnabled = config.isHttpsEnabled();
+  }
+
+  @Override
+  public HttpResponse execute(HttpUriRequest request) throws IOException {
+    if (isShutdown) {
+      throw new IllegalStateException("Transport is shut down");
+    }
+    if (UrlConnectionHttpTransport.HTTPS_SCHEME.equalsIgnoreCase(
+        request.getURI().getScheme()) && !isHttpsEnabled) {
+      throw new IOException("HTTPS is not enabled, URI:" + request.getURI());
+    }
+
+    Request.Builder builder = new Request.Builder()
+        .url(request.getURI().toString());
+    for (Header header : request.getAllHeaders()) {
+      builder.addHeader(header.getName(), header.getValue());
+    }
+    // Keeps the content and its length as they are, OkHttp decompresses the
+    // content transparently otherwise
+    if (!request.containsHeader(UrlConnectionHttpTransport.ACCEPT_ENCODING)) {
+      builder.header(UrlConnectionHttpTransport.ACCEPT_ENCODING,
+          UrlConnectionHttpTransport.IDENTITY_ENCODING);
+    }
+
+    HttpEntity entity = request instanceof HttpEntityEnclosingRequest ?
+        ((HttpEntityEnclosingRequest) request).getEntity() : null;
+    RequestBody body = null;
+    if (entity != null) {
+      if (entity.getContentEncoding() != null
+          && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+        builder.header(HttpHeaders.CONTENT_ENCODING,
+            entity.getContentEncoding().getValue());
+      }
+      // The content type of the request is kept if it has one
+      MediaType contentType = null;
+      if (entity.getContentType() != null
+          && !request.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+        contentType = MediaType.parse(entity.getContentType().getValue());
+      }
+      body = new EntityRequestBody(entity, contentType);
+    } else if (request instanceof HttpEntityEnclosingRequest) {
+      body = RequestBody.create(null, EMPTY_CONTENT);
+    }
+    builder.method(request.getMethod(), body);
+
+    final Call call = client.newCall(builder.build());
+    if (request instanceof AbortableHttpRequest) {
+      ((AbortableHttpRequest) request).setReleaseTrigger(
+          new ConnectionReleaseTrigger() {
+            @Override
+            public void releaseConnection() {
+              // Released once the content is closed
+            }
+
+            @Override
+            public void abortConnection() {
+              call.cancel();
+            }
+          });
+    }
+    return toHttpResponse(call.execute());
+  }
+
+  private static HttpResponse toHttpResponse(Response response) {
+    ProtocolVersion version;
+    if (response.protocol() == Protocol.HTTP_2) {
+      version = HTTP_2;
+    } else if (response.protocol() == Protocol.HTTP_1_0) {
+      version = HttpVersion.HTTP_1_0;
+    } else {
+      version = HttpVersion.HTTP_1_1;
+    }
+    HttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(
+        version, response.code(), response.message()));
+    Headers headers = response.headers();
+    for (int i = 0; i < headers.size(); i++) {
+      httpResponse.addHeader(headers.name(i), headers.value(i));
+    }
+
+    ResponseBody body = response.body();
+    InputStream content = body != null ? body.byteStream()
+        : new ByteArrayInputStream(EMPTY_CONTENT);
+    BasicHttpEntity entity = new BasicHttpEntity();
+    entity.setContent(content);
+    entity.setContentLength(body != null ? body.contentLength() : 0);
+    entity.setContentType(httpResponse.getFirstHeader(
+        HttpHeaders.CONTENT_TYPE));
+    entity.setContentEncoding(httpResponse.getFirstHeader(
+        HttpHeaders.CONTENT_ENCODING));
+    httpResponse.setEntity(entity);
+    return httpResponse;
+  }
+
+  @Override
+  public ConnectionPoolStats getConnectionPoolStats() {
+    return null;
+  }
+
+  @Override
+  public void shutdown() {
+    isShutdown = true;
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  /**
+   * Streams the entity of a request, in fixed length if its length is known.
+   * OkHttp takes the length as a long, so bodies over 2 GB are not chunked.
+   */
+  private static class EntityRequestBody extends RequestBody {
+    private final HttpEntity entity;
+    private final MediaType contentType;
+
+    EntityRequestBody(HttpEntity entity, MediaType contentType) {
+      this.entity = entity;
+      this.contentType = contentType;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+      return entity.getContentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      entity.writeTo(sink.outputStream());
+    }
+  }
+}
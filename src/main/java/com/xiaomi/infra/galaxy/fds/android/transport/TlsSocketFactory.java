@@ -0,0 +1,143 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.ssl.BrowserCompatHostnameVerifier;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Creates the TLS connections of all the clients from one SSL context, so
+ * that a session negotiated by one connection is cached and resumed by the
+ * later connections to the same host, with an abbreviated handshake.
+ * <p/>
+ * A session is resumed only if the socket is created with the host and port
+ * of the server. The SSLSocketFactory of HttpClient creates its sockets
+ * before they are connected and without the host, so its sessions are never
+ * resumed. This factory connects a plain socket first and then layers TLS
+ * over it, and verifies the host name against the certificate of the server.
+ */
+public class TlsSocketFactory implements LayeredSocketFactory {
+  /**
+   * The max number of cached sessions, about one per host
+   */
+  private static final int SESSION_CACHE_SIZE = 64;
+
+  private static final X509HostnameVerifier HOSTNAME_VERIFIER =
+      new BrowserCompatHostnameVerifier();
+
+  private static class InstanceHolder {
+    static final TlsSocketFactory INSTANCE = new TlsSocketFactory();
+  }
+
+  private final X509TrustManager trustManager;
+  private final SSLSocketFactory sslSocketFactory;
+
+  private TlsSocketFactory() {
+    try {
+      TrustManagerFactory trustManagerFactory = TrustManagerFactory
+          .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init((KeyStore) null);
+      X509TrustManager x509TrustManager = null;
+      for (TrustManager manager : trustManagerFactory.getTrustManagers()) {
+        if (manager instanceof X509TrustManager) {
+          x509TrustManager = (X509TrustManager) manager;
+          break;
+        }
+      }
+      if (x509TrustManager == null) {
+        throw new IllegalStateException("No X509 trust manager");
+      }
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, new TrustManager[] { x509TrustManager }, null);
+      sslContext.getClientSessionContext().setSessionCacheSize(
+          SESSION_CACHE_SIZE);
+      this.trustManager = x509TrustManager;
+      this.sslSocketFactory = sslContext.getSocketFactory();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Fail to initialize the SSL context", e);
+    }
+  }
+
+  /**
+   * @return The factory shared by all the clients, created on first use
+   */
+  public static TlsSocketFactory getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  /**
+   * @return The factory of the SSL sockets for HttpURLConnection and OkHttp,
+   * which shares the session cache
+   */
+  public SSLSocketFactory getSslSocketFactory() {
+    return sslSocketFactory;
+  }
+
+  public X509TrustManager getTrustManager() {
+    return trustManager;
+  }
+
+  @Override
+  public Socket createSocket() throws IOException {
+    // Connected as a plain socket first, TLS is layered once the host is known
+    return new Socket();
+  }
+
+  @Override
+  public Socket connectSocket(Socket socket, String host, int port,
+      InetAddress localAddress, int localPort, HttpParams params)
+      throws IOException {
+    Socket plainSocket = socket != null ? socket : createSocket();
+    if (localAddress != null || localPort > 0) {
+      plainSocket.bind(new InetSocketAddress(localAddress,
+          localPort < 0 ? 0 : localPort));
+    }
+    try {
+      plainSocket.connect(new InetSocketAddress(host, port),
+          HttpConnectionParams.getConnectionTimeout(params));
+    } catch (SocketTimeoutException e) {
+      plainSocket.close();
+      throw new ConnectTimeoutException("Connect to " + host + ":" + port
+          + " timed out");
+    }
+    plainSocket.setSoTimeout(HttpConnectionParams.getSoTimeout(params));
+    return createSocket(plainSocket, host, port, true);
+  }
+
+  @Override
+  public Socket createSocket(Socket socket, String host, int port,
+      boolean autoClose) throws IOException {
+    SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket,
+        host, port, autoClose);
+    try {
+      sslSocket.startHandshake();
+      HOSTNAME_VERIFIER.verify(host, sslSocket);
+    } catch (IOException e) {
+      sslSocket.close();
+      throw e;
+    }
+    return sslSocket;
+  }
+
+  @Override
+  public boolean isSecure(Socket socket) {
+    return socket instanceof SSLSocket;
+  }
+}
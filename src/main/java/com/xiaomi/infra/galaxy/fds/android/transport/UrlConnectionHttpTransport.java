@@ -0,0 +1,207 @@
+package com.xiaomi.infra.galaxy.fds.android.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import com.xiaomi.infra.galaxy.fds.android.FDSClientConfiguration;
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
+import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
+
+/**
+ * Sends the requests with HttpURLConnection. The request entities are
+ * streamed in fixed length mode if their lengths are known, otherwise in
+ * chunks, and the connections are kept alive by the pool of the process
+ * once the response contents are read to the end and closed.
+ */
+public class UrlConnectionHttpTransport implements HttpTransport {
+  static final String HTTPS_SCHEME = "https";
+  static final String ACCEPT_ENCODING = "Accept-Encoding";
+  static final String IDENTITY_ENCODING = "identity";
+
+  private final int connectionTimeoutMs;
+  private final int socketTimeoutMs;
+  private final boolean isHttpsEnabled;
+  private volatile boolean isShutdown = false;
+
+  public UrlConnectionHttpTransport(FDSClientConfiguration config) {
+    this.connectionTimeoutMs = config.getConnectionTimeoutMs();
+    this.socketTimeoutMs = config.getSocketTimeoutMs();
+    this.isHttpsEnabled = config.isHttpsEnabled();
+  }
+
+  @Override
+  public HttpResponse execute(HttpUriRequest request) throws IOException {
+    if (isShutdown) {
+      throw new IllegalStateException("Transport is shut down");
+    }
+    URL url = request.getURI().toURL();
+    if (HTTPS_SCHEME.equalsIgnoreCase(url.getProtocol()) && !isHttpsEnabled) {
+      throw new IOException("HTTPS is not enabled, URI:" + url);
+    }
+
+    final HttpURLConnection connection =
+        (HttpURLConnection) url.openConnection();
+    if (connection instanceof HttpsURLConnection) {
+      HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+      httpsConnection.setSSLSocketFactory(
+          TlsSocketFactory.getInstance().getSslSocketFactory());
+    }
+    if (request instanceof AbortableHttpRequest) {
+      ((AbortableHttpRequest) request).setReleaseTrigger(
+          new ConnectionReleaseTrigger() {
+            @Override
+            public void releaseConnection() {
+              // Released once the content is closed
+            }
+
+            @Override
+            public void abortConnection() {
+              connection.disconnect();
+            }
+          });
+    }
+
+    try {
+      connection.setConnectTimeout(connectionTimeoutMs);
+      connection.setReadTimeout(socketTimeoutMs);
+      connection.setUseCaches(false);
+      connection.setRequestMethod(request.getMethod());
+      for (Header header : request.getAllHeaders()) {
+        connection.addRequestProperty(header.getName(), header.getValue());
+      }
+      // Keeps the content and its length as they are, HttpURLConnection may
+      // decompress the content transparently otherwise
+      if (!request.containsHeader(ACCEPT_ENCODING)) {
+        connection.setRequestProperty(ACCEPT_ENCODING, IDENTITY_ENCODING);
+      }
+
+      HttpEntity entity = request instanceof HttpEntityEnclosingRequest ?
+          ((HttpEntityEnclosingRequest) request).getEntity() : null;
+      if (entity != null) {
+        writeEntity(connection, request, entity);
+      }
+      return readResponse(connection);
+    } catch (IOException e) {
+      connection.disconnect();
+      throw e;
+    } catch (RuntimeException e) {
+      connection.disconnect();
+      throw e;
+    }
+  }
+
+  private static void writeEntity(HttpURLConnection connection,
+      HttpUriRequest request, HttpEntity entity) throws IOException {
+    // Added from the entity like the Apache client does
+    if (entity.getContentType() != null
+        && !request.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+      connection.setRequestProperty(HttpHeaders.CONTENT_TYPE,
+          entity.getContentType().getValue());
+    }
+    if (entity.getContentEncoding() != null
+        && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+      connection.setRequestProperty(HttpHeaders.CONTENT_ENCODING,
+          entity.getContentEncoding().getValue());
+    }
+
+    long contentLength = entity.getContentLength();
+    if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+      connection.setFixedLengthStreamingMode((int) contentLength);
+    } else if (contentLength > Integer.MAX_VALUE) {
+      try {
+        connection.setFixedLengthStreamingMode(contentLength);
+      } catch (NoSuchMethodError e) {
+        // The long overload is added in API 19, the server must then accept
+        // a chunked body
+        connection.setChunkedStreamingMode(0);
+      }
+    } else {
+      connection.setChunkedStreamingMode(0);
+    }
+    connection.setDoOutput(true);
+    OutputStream out = connection.getOutputStream();
+    try {
+      entity.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static HttpResponse readResponse(HttpURLConnection connection)
+      throws IOException {
+    int statusCode = connection.getResponseCode();
+    if (statusCode == -1) {
+      throw new IOException("Invalid HTTP response from "
+          + connection.getURL());
+    }
+    HttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+        HttpVersion.HTTP_1_1, statusCode, connection.getResponseMessage()));
+    // The first field of HttpURLConnection is the status line without a key
+    for (int i = 0; ; i++) {
+      String value = connection.getHeaderField(i);
+      if (value == null) {
+        break;
+      }
+      String name = connection.getHeaderFieldKey(i);
+      if (name != null) {
+        response.addHeader(name, value);
+      }
+    }
+
+    InputStream content;
+    if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+      content = connection.getErrorStream();
+    } else {
+      content = connection.getInputStream();
+    }
+    BasicHttpEntity entity = new BasicHttpEntity();
+    entity.setContent(content != null ? content
+        : new ByteArrayInputStream(new byte[0]));
+    entity.setContentLength(parseContentLength(
+        response.getFirstHeader(HttpHeaders.CONTENT_LENGTH)));
+    entity.setContentType(response.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+    entity.setContentEncoding(response.getFirstHeader(
+        HttpHeaders.CONTENT_ENCODING));
+    response.setEntity(entity);
+    return response;
+  }
+
+  private static long parseContentLength(Header contentLength) {
+    if (contentLength == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentLength.getValue().trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public ConnectionPoolStats getConnectionPoolStats() {
+    return null;
+  }
+
+  @Override
+  public void shutdown() {
+    isShutdown = true;
+  }
+}
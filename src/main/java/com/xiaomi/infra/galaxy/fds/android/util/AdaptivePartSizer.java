@@ -0,0 +1,63 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+/**
+ * Chooses the size of upload parts from the measured throughput, so that each
+ * part takes about the same time to upload. Large parts save the per-request
+ * overhead on fast links, while small parts keep the cost of a retry low on
+ * slow or flaky ones.
+ */
+public class AdaptivePartSizer {
+  /**
+   * The time each part is expected to take to upload
+   */
+  private static final long TARGET_PART_TIME_MS = 2000;
+
+  /**
+   * The weight of the latest sample in the throughput estimate
+   */
+  private static final double SMOOTHING_FACTOR = 0.5;
+
+  private final int minPartSize;
+  private final int maxPartSize;
+  private int partSize;
+  private double bytesPerMs = -1;
+
+  public AdaptivePartSizer(int initialPartSize, int minPartSize,
+      int maxPartSize) {
+    Args.positive(minPartSize, "min part size");
+    Args.check(minPartSize <= maxPartSize, "Min part size %d is larger than "
+        + "max part size %d", minPartSize, maxPartSize);
+    this.minPartSize = minPartSize;
+    this.maxPartSize = maxPartSize;
+    this.partSize = clamp(initialPartSize);
+  }
+
+  /**
+   * Gets the size of the next part to upload
+   */
+  public synchronized int getPartSize() {
+    return partSize;
+  }
+
+  /**
+   * Records the time taken by a successfully uploaded part, including the
+   * retries, and adjusts the size of the following parts
+   */
+  public synchronized void onPartUploaded(int bytes, long elapsedMs) {
+    double sample = (double) bytes / Math.max(elapsedMs, 1);
+    if (bytesPerMs < 0) {
+      bytesPerMs = sample;
+    } else {
+      bytesPerMs = SMOOTHING_FACTOR * sample
+          + (1 - SMOOTHING_FACTOR) * bytesPerMs;
+    }
+    // Grows at most twice at a time since the request overhead makes small
+    // parts underestimate the bandwidth, but shrinks at once on a slow link
+    long targetPartSize = (long) (bytesPerMs * TARGET_PART_TIME_MS);
+    partSize = clamp(Math.min(targetPartSize, (long) partSize * 2));
+  }
+
+  private int clamp(long size) {
+    return (int) Math.max(minPartSize, Math.min(maxPartSize, size));
+  }
+}
@@ -0,0 +1,60 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A repeatable HTTP entity whose content is a region of a byte array. The
+ * array is sent as is without being copied, so the caller must not modify
+ * the region until the request is finished.
+ */
+public class ByteArrayRegionEntity extends AbstractHttpEntity {
+  private final byte[] buffer;
+  private final int offset;
+  private final int length;
+
+  public ByteArrayRegionEntity(byte[] buffer, int offset, int length) {
+    Args.notNull(buffer, "buffer");
+    Args.check(offset >= 0 && length >= 0 && offset + length <= buffer.length,
+        "Invalid region, offset:%d, length:%d, buffer size:%d", offset, length,
+        buffer.length);
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return length;
+  }
+
+  @Override
+  public InputStream getContent() {
+    return new ByteArrayInputStream(buffer, offset, length);
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    Args.notNull(out, "output stream");
+    out.write(buffer, offset, length);
+    out.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
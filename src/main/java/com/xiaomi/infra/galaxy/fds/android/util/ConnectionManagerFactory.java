@@ -1,20 +1,40 @@
 package com.xiaomi.infra.galaxy.fds.android.util;
 
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.HttpParams;
 
 public class ConnectionManagerFactory {
-  public static ClientConnectionManager create(HttpParams httpParams) {
-    SchemeRegistry schemeRegistry = new SchemeRegistry();
-    schemeRegistry.register(new Scheme("http",
-        PlainSocketFactory.getSocketFactory(), 80));
-    ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(
-        httpParams, schemeRegistry);
-    new IdleConnectionReaper(connectionManager).start();
+
+  /**
+   * Creates a pool of connections, which is registered to the shared
+   * {@link IdleConnectionReaper} if enabled, and must be removed from it
+   * before being shut down
+   *
+   * @param maxConnectionsPerRoute  The max number of connections to a host
+   * @param maxConnections          The max number of connections in total
+   * @param connectionTtlMs         The max time a connection is kept alive
+   *                                after it is released, 0 means no limit
+   * @param idleConnectionTimeoutMs The time after which an idle connection
+   *                                is closed
+   * @param enableReaper            Whether the idle connections are also
+   *                                closed by the shared reaper thread
+   */
+  public static InstrumentedConnectionManager create(HttpParams httpParams,
+      SchemeRegistry schemeRegistry, int maxConnectionsPerRoute,
+      int maxConnections, long connectionTtlMs, long idleConnectionTimeoutMs,
+      boolean enableReaper) {
+    ConnManagerParams.setMaxConnectionsPerRoute(httpParams,
+        new ConnPerRouteBean(maxConnectionsPerRoute));
+    ConnManagerParams.setMaxTotalConnections(httpParams, maxConnections);
+    InstrumentedConnectionManager connectionManager =
+        new InstrumentedConnectionManager(httpParams, schemeRegistry,
+            maxConnections, connectionTtlMs, idleConnectionTimeoutMs);
+    if (enableReaper) {
+      IdleConnectionReaper.registerConnectionManager(connectionManager,
+          idleConnectionTimeoutMs);
+    }
     return connectionManager;
   }
 }
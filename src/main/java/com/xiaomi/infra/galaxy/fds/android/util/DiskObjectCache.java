@@ -0,0 +1,380 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonParseException;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+
+/**
+ * A cache of object contents on disk, evicted in least recently used order
+ * once their total size exceeds the limit. Each entry is stored in a file
+ * named by the MD5 of its key, next to a sidecar file holding the object
+ * metadata and the ETag used to revalidate the entry.
+ */
+public class DiskObjectCache {
+  private static final String METADATA_SUFFIX = ".meta";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String CHARSET = "UTF-8";
+
+  /**
+   * A cached object, whose content must be closed after use
+   */
+  public static class Entry {
+    private final InputStream content;
+    private final ObjectMetadata metadata;
+    private final String etag;
+
+    private Entry(InputStream content, ObjectMetadata metadata, String etag) {
+      this.content = content;
+      this.metadata = metadata;
+      this.etag = etag;
+    }
+
+    public InputStream getContent() {
+      return content;
+    }
+
+    public ObjectMetadata getMetadata() {
+      return metadata;
+    }
+
+    /**
+     * @return The ETag of the cached object, or null if the server didn't
+     * send one
+     */
+    public String getEtag() {
+      return etag;
+    }
+  }
+
+  /**
+   * The content of the sidecar file of an entry
+   */
+  private static class EntryMetadata {
+    private Map<String, String> metadata;
+    private String etag;
+  }
+
+  private final File directory;
+  private final long maxSize;
+  private final AtomicLong nextTempId = new AtomicLong(0);
+
+  // The sizes of the entries in access order, guarded by this
+  private final LinkedHashMap<String, Long> entrySizes =
+      new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long size = 0;
+
+  /**
+   * Opens the cache in the directory, the entries left by the last process
+   * are kept in the order of their modification times
+   *
+   * @param directory The directory of the cache, created if it doesn't exist
+   * @param maxSize   The max total size of the cached objects in bytes
+   */
+  public DiskObjectCache(File directory, long maxSize) {
+    Args.notNull(directory, "cache directory");
+    Args.positive(maxSize, "cache size");
+    this.directory = directory;
+    this.maxSize = maxSize;
+
+    directory.mkdirs();
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File lhs, File rhs) {
+        long lhsTime = lhs.lastModified();
+        long rhsTime = rhs.lastModified();
+        return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+      }
+    });
+    synchronized (this) {
+      for (File file : files) {
+        String name = file.getName();
+        if (name.endsWith(TEMP_SUFFIX)) {
+          file.delete();
+        } else if (!name.endsWith(METADATA_SUFFIX)) {
+          if (getMetadataFile(name).exists()) {
+            entrySizes.put(name, file.length());
+            size += file.length();
+          } else {
+            file.delete();
+          }
+        }
+      }
+      trim();
+    }
+  }
+
+  /**
+   * Gets the cached object of the key, and marks it as recently used
+   *
+   * @return The entry, or null if the object is not cached
+   */
+  public synchronized Entry get(String key) {
+    String name = Util.md5Hex(key);
+    // Moves the entry to the end of the access order
+    if (entrySizes.get(name) == null) {
+      return null;
+    }
+
+    EntryMetadata entryMetadata = readMetadata(name);
+    if (entryMetadata == null || entryMetadata.metadata == null) {
+      removeEntry(name);
+      return null;
+    }
+    File file = getDataFile(name);
+    InputStream content;
+    try {
+      content = new FileInputStream(file);
+    } catch (FileNotFoundException e) {
+      removeEntry(name);
+      return null;
+    }
+    // Keeps the access order across processes
+    file.setLastModified(System.currentTimeMillis());
+
+    return new Entry(content,
+        ObjectMetadata.parseObjectMetadata(entryMetadata.metadata),
+        entryMetadata.etag);
+  }
+
+  /**
+   * Wraps the content of an object, so that the content is put into the
+   * cache under the key once it has been read to the end. The object is not
+   * cached if the stream is closed before that.
+   *
+   * @param content  The content of the object
+   * @param metadata The metadata of the object
+   * @param etag     The ETag of the object, may be null
+   */
+  public InputStream cache(InputStream content, String key,
+      ObjectMetadata metadata, String etag) {
+    File tempFile = new File(directory, Util.md5Hex(key) + "-"
+        + nextTempId.getAndIncrement() + TEMP_SUFFIX);
+    try {
+      return new CachingInputStream(content, key, metadata, etag, tempFile);
+    } catch (IOException e) {
+      // Not cached
+      return content;
+    }
+  }
+
+  /**
+   * Removes the cached object of the key if there is one
+   */
+  public synchronized void remove(String key) {
+    removeEntry(Util.md5Hex(key));
+  }
+
+  private void removeEntry(String name) {
+    Long entrySize = entrySizes.remove(name);
+    if (entrySize != null) {
+      size -= entrySize;
+    }
+    getDataFile(name).delete();
+    getMetadataFile(name).delete();
+  }
+
+  private synchronized void put(String key, File tempFile,
+      ObjectMetadata metadata, String etag) throws IOException {
+    String name = Util.md5Hex(key);
+    removeEntry(name);
+
+    EntryMetadata entryMetadata = new EntryMetadata();
+    entryMetadata.metadata = metadata.getAllMetadata();
+    entryMetadata.etag = etag;
+    File metadataFile = getMetadataFile(name);
+    File tempMetadataFile = new File(metadataFile.getPath() + TEMP_SUFFIX);
+    Writer writer = new OutputStreamWriter(new FileOutputStream(
+        tempMetadataFile), CHARSET);
+    try {
+      writer.write(JsonCodec.toJson(entryMetadata));
+    } finally {
+      writer.close();
+    }
+    if (!tempMetadataFile.renameTo(metadataFile)
+        || !tempFile.renameTo(getDataFile(name))) {
+      tempMetadataFile.delete();
+      removeEntry(name);
+      throw new IOException("Fail to put object into cache directory:"
+          + directory.getAbsolutePath());
+    }
+
+    long entrySize = getDataFile(name).length();
+    entrySizes.put(name, entrySize);
+    size += entrySize;
+    trim();
+  }
+
+  private void trim() {
+    Iterator<Map.Entry<String, Long>> iterator =
+        entrySizes.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      Map.Entry<String, Long> eldest = iterator.next();
+      size -= eldest.getValue();
+      iterator.remove();
+      getDataFile(eldest.getKey()).delete();
+      getMetadataFile(eldest.getKey()).delete();
+    }
+  }
+
+  private EntryMetadata readMetadata(String name) {
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(
+          getMetadataFile(name)), CHARSET);
+      return JsonCodec.fromJson(reader, EntryMetadata.class);
+    } catch (IOException e) {
+      return null;
+    } catch (JsonParseException e) {
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  private File getDataFile(String name) {
+    return new File(directory, name);
+  }
+
+  private File getMetadataFile(String name) {
+    return new File(directory, name + METADATA_SUFFIX);
+  }
+
+  /**
+   * Copies the content read from the stream to a temp file, which is put
+   * into the cache once the stream is read to the end
+   */
+  private class CachingInputStream extends FilterInputStream {
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final String etag;
+    private final File tempFile;
+    private OutputStream out;
+    private long bytesRead = 0;
+
+    CachingInputStream(InputStream in, String key, ObjectMetadata metadata,
+        String etag, File tempFile) throws IOException {
+      super(in);
+      this.key = key;
+      this.metadata = metadata;
+      this.etag = etag;
+      this.tempFile = tempFile;
+      this.out = new FileOutputStream(tempFile);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int data = super.read();
+      if (data == -1) {
+        finish();
+      } else if (out != null) {
+        try {
+          out.write(data);
+          bytesRead++;
+        } catch (IOException e) {
+          discard();
+        }
+      }
+      return data;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count == -1) {
+        finish();
+      } else if (out != null) {
+        try {
+          out.write(buffer, offset, count);
+          bytesRead += count;
+        } catch (IOException e) {
+          discard();
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // The skipped content can't be cached
+      discard();
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // The whole content may have been read without reaching the end
+      if (out != null && bytesRead == metadata.getContentLength()) {
+        finish();
+      }
+      try {
+        super.close();
+      } finally {
+        discard();
+      }
+    }
+
+    private void finish() {
+      if (out == null) {
+        return;
+      }
+      long contentLength = metadata.getContentLength();
+      try {
+        out.close();
+        out = null;
+        if (contentLength < 0 || contentLength == bytesRead) {
+          put(key, tempFile, metadata, etag);
+        }
+      } catch (IOException e) {
+        // Not cached
+      } finally {
+        discard();
+      }
+    }
+
+    private void discard() {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+        out = null;
+      }
+      tempFile.delete();
+    }
+  }
+}
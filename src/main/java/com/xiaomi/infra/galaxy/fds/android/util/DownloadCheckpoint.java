@@ -0,0 +1,83 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * The resume record of a file download, which is kept in a sidecar file next
+ * to the destination file. It records the URI and the validator (ETag or
+ * Last-Modified) of the object being downloaded, so that a later download of
+ * the same object to the same file can resume with If-Range.
+ */
+public class DownloadCheckpoint {
+  private static final String SUFFIX = ".fdsresume";
+  private static final String CHARSET = "UTF-8";
+
+  private String uri;
+  private String validator;
+
+  private static File getCheckpointFile(File destinationFile) {
+    return new File(destinationFile.getPath() + SUFFIX);
+  }
+
+  /**
+   * Gets the validator of the partially downloaded object, or null if the
+   * file has no resume record of the URI
+   */
+  public static String load(File destinationFile, String uri) {
+    File checkpointFile = getCheckpointFile(destinationFile);
+    if (!checkpointFile.exists()) {
+      return null;
+    }
+
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(checkpointFile),
+          CHARSET);
+      DownloadCheckpoint checkpoint = JsonCodec.fromJson(reader,
+          DownloadCheckpoint.class);
+      if (checkpoint != null && uri.equals(checkpoint.uri)) {
+        return checkpoint.validator;
+      }
+      return null;
+    } catch (IOException e) {
+      return null;
+    } catch (JsonParseException e) {
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  public static void save(File destinationFile, String uri, String validator)
+      throws IOException {
+    DownloadCheckpoint checkpoint = new DownloadCheckpoint();
+    checkpoint.uri = uri;
+    checkpoint.validator = validator;
+    Writer writer = new OutputStreamWriter(new FileOutputStream(
+        getCheckpointFile(destinationFile)), CHARSET);
+    try {
+      writer.write(JsonCodec.toJson(checkpoint));
+    } finally {
+      writer.close();
+    }
+  }
+
+  public static void delete(File destinationFile) {
+    getCheckpointFile(destinationFile).delete();
+  }
+}
@@ -0,0 +1,107 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A repeatable HTTP entity whose content is a region of a file. The region is
+ * read with positional reads, so that several entities may share the same
+ * {@link FileChannel} and be sent concurrently, and a failed request can be
+ * retried by simply writing the entity again.
+ */
+public class FileRegionEntity extends AbstractHttpEntity {
+  private final FileChannel channel;
+  private final long position;
+  private final long length;
+
+  public FileRegionEntity(FileChannel channel, long position, long length) {
+    Args.notNull(channel, "file channel");
+    Args.notNegative(position, "position");
+    Args.notNegative(length, "length");
+    this.channel = channel;
+    this.position = position;
+    this.length = length;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return length;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    return new RegionInputStream();
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    Args.notNull(out, "output stream");
+    WritableByteChannel target = Channels.newChannel(out);
+    long transferred = 0;
+    while (transferred < length) {
+      long bytes = channel.transferTo(position + transferred,
+          length - transferred, target);
+      if (bytes <= 0) {
+        throw new IOException("Unexpected end of file at position "
+            + (position + transferred) + ", region length:" + length);
+      }
+      transferred += bytes;
+    }
+    out.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * Reads the region with positional reads, never touches the position of
+   * the shared channel
+   */
+  private class RegionInputStream extends InputStream {
+    private long offset = 0;
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int byteOffset, int byteCount)
+        throws IOException {
+      if (offset >= length) {
+        return -1;
+      }
+      int toRead = (int) Math.min(byteCount, length - offset);
+      int bytesRead = channel.read(ByteBuffer.wrap(buffer, byteOffset, toRead),
+          position + offset);
+      if (bytesRead > 0) {
+        offset += bytesRead;
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, length - offset);
+    }
+  }
+}
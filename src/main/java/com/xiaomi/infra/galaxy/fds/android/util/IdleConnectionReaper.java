@@ -1,34 +1,104 @@
 package com.xiaomi.infra.galaxy.fds.android.util;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.conn.ClientConnectionManager;
 
 /**
  * Daemon thread to periodically check connection pools for idle connections.
+ * A single thread is shared by all the registered pools, it is started when
+ * the first pool is registered and stopped when the last one is removed.
+ * <p/>
+ * The pools are weakly referenced, so that a pool whose client is dropped
+ * without being shut down can still be garbage collected.
  */
 public final class IdleConnectionReaper extends Thread {
 
   private static final int PERIOD_MILLISECONDS = 1000 * 60 * 1;
 
-  private final ClientConnectionManager connectionManager;
+  // Guarded by IdleConnectionReaper.class
+  private static final Map<ClientConnectionManager, Long> connectionManagers =
+      new WeakHashMap<ClientConnectionManager, Long>();
+  private static IdleConnectionReaper instance;
 
-  public IdleConnectionReaper(ClientConnectionManager connectionManager) {
+  private IdleConnectionReaper() {
     super("java-sdk-http-connection-reaper");
-    this.connectionManager = connectionManager;
     setDaemon(true);
   }
 
+  /**
+   * Registers a connection pool, whose connections idle for longer than the
+   * timeout are closed periodically until it is removed
+   */
+  public static synchronized void registerConnectionManager(
+      ClientConnectionManager connectionManager, long idleTimeoutMs) {
+    connectionManagers.put(connectionManager, idleTimeoutMs);
+    if (instance == null) {
+      instance = new IdleConnectionReaper();
+      instance.start();
+    }
+  }
+
+  /**
+   * Removes a connection pool, which must be done before it is shut down
+   */
+  public static synchronized void removeConnectionManager(
+      ClientConnectionManager connectionManager) {
+    connectionManagers.remove(connectionManager);
+    if (connectionManagers.isEmpty() && instance != null) {
+      instance.interrupt();
+      instance = null;
+    }
+  }
+
+  private static synchronized Map<ClientConnectionManager, Long>
+      getConnectionManagers() {
+    if (instance != Thread.currentThread()) {
+      // This thread has been stopped
+      return null;
+    }
+    if (connectionManagers.isEmpty()) {
+      // All the pools have been garbage collected
+      instance = null;
+      return null;
+    }
+    return new HashMap<ClientConnectionManager, Long>(connectionManagers);
+  }
+
   @Override
   public void run() {
     while (true) {
       try {
         Thread.sleep(PERIOD_MILLISECONDS);
-        connectionManager.closeIdleConnections(60, TimeUnit.SECONDS);
       } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
         return;
       }
+      if (!closeIdleConnections()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Closes the idle connections of the registered pools, which are only
+   * strongly referenced during the call
+   *
+   * @return Whether this thread is still running
+   */
+  private static boolean closeIdleConnections() {
+    Map<ClientConnectionManager, Long> managers = getConnectionManagers();
+    if (managers == null) {
+      return false;
+    }
+    for (Map.Entry<ClientConnectionManager, Long> entry
+        : managers.entrySet()) {
+      entry.getKey().closeExpiredConnections();
+      entry.getKey().closeIdleConnections(entry.getValue(),
+          TimeUnit.MILLISECONDS);
     }
+    return true;
   }
 }
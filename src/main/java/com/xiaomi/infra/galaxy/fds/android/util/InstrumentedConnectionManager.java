@@ -0,0 +1,132 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
+
+/**
+ * A thread safe connection manager which keeps the statistics of its pool,
+ * caps how long the released connections are kept alive, and evicts the
+ * idle and expired connections when connections are requested instead of
+ * from a background thread.
+ */
+public class InstrumentedConnectionManager extends ThreadSafeClientConnManager {
+  /**
+   * The min interval between two evictions
+   */
+  private static final long EVICTION_INTERVAL_MS = 5 * 1000;
+
+  private final int maxConnections;
+  private final long connectionTtlMs;
+  private final long idleConnectionTimeoutMs;
+  private volatile long lastEvictionTime = System.currentTimeMillis();
+
+  private final Map<ManagedClientConnection, Boolean> leasedConnections =
+      Collections.synchronizedMap(
+          new IdentityHashMap<ManagedClientConnection, Boolean>());
+  private final AtomicInteger pendingRequests = new AtomicInteger(0);
+  private final AtomicLong requests = new AtomicLong(0);
+  private final AtomicLong totalWaitMs = new AtomicLong(0);
+  private final AtomicLong maxWaitMs = new AtomicLong(0);
+
+  /**
+   * @param params                  The parameters of the pool, including the
+   *                                max connections per route and in total
+   * @param schemeRegistry          The registry of the schemes
+   * @param maxConnections          The max number of connections in total
+   * @param connectionTtlMs         The max time a connection is kept alive
+   *                                after it is released, 0 means no limit
+   * @param idleConnectionTimeoutMs The time after which an idle connection
+   *                                is closed
+   */
+  public InstrumentedConnectionManager(HttpParams params,
+      SchemeRegistry schemeRegistry, int maxConnections, long connectionTtlMs,
+      long idleConnectionTimeoutMs) {
+    super(params, schemeRegistry);
+    this.maxConnections = maxConnections;
+    this.connectionTtlMs = connectionTtlMs;
+    this.idleConnectionTimeoutMs = idleConnectionTimeoutMs;
+  }
+
+  @Override
+  public ClientConnectionRequest requestConnection(HttpRoute route,
+      Object state) {
+    evictIfNecessary();
+    final ClientConnectionRequest request = super.requestConnection(route,
+        state);
+    return new ClientConnectionRequest() {
+      @Override
+      public ManagedClientConnection getConnection(long timeout, TimeUnit unit)
+          throws InterruptedException, ConnectionPoolTimeoutException {
+        long startTime = System.currentTimeMillis();
+        pendingRequests.incrementAndGet();
+        try {
+          ManagedClientConnection connection = request.getConnection(timeout,
+              unit);
+          leasedConnections.put(connection, Boolean.TRUE);
+          return connection;
+        } finally {
+          pendingRequests.decrementAndGet();
+          long waitMs = System.currentTimeMillis() - startTime;
+          requests.incrementAndGet();
+          totalWaitMs.addAndGet(waitMs);
+          long currentMaxWaitMs;
+          while (waitMs > (currentMaxWaitMs = maxWaitMs.get())
+              && !maxWaitMs.compareAndSet(currentMaxWaitMs, waitMs)) {
+            // Retries until the max is updated by this or another thread
+          }
+        }
+      }
+
+      @Override
+      public void abortRequest() {
+        request.abortRequest();
+      }
+    };
+  }
+
+  @Override
+  public void releaseConnection(ManagedClientConnection connection,
+      long validDuration, TimeUnit timeUnit) {
+    leasedConnections.remove(connection);
+    if (connectionTtlMs > 0 && (validDuration <= 0
+        || timeUnit.toMillis(validDuration) > connectionTtlMs)) {
+      validDuration = connectionTtlMs;
+      timeUnit = TimeUnit.MILLISECONDS;
+    }
+    super.releaseConnection(connection, validDuration, timeUnit);
+  }
+
+  private void evictIfNecessary() {
+    long now = System.currentTimeMillis();
+    if (now - lastEvictionTime < EVICTION_INTERVAL_MS) {
+      return;
+    }
+    lastEvictionTime = now;
+    closeExpiredConnections();
+    closeIdleConnections(idleConnectionTimeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Gets a snapshot of the statistics of the pool
+   */
+  public ConnectionPoolStats getStats() {
+    int leased = leasedConnections.size();
+    return new ConnectionPoolStats(leased,
+        Math.max(getConnectionsInPool() - leased, 0), pendingRequests.get(),
+        maxConnections, requests.get(), totalWaitMs.get(), maxWaitMs.get());
+  }
+}
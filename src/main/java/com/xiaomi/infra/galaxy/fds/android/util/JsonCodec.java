@@ -0,0 +1,164 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import com.xiaomi.infra.galaxy.fds.android.model.InitMultipartUploadResult;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
+import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResult;
+
+/**
+ * Encodes and decodes JSON with a shared Gson, so that its type adapters
+ * are built only once. The results of the upload requests, which are parsed
+ * once per part, are read with hand-written streaming parsers instead of
+ * reflection.
+ */
+public final class JsonCodec {
+  private static final String CHARSET = "UTF-8";
+  private static final Gson GSON = new Gson();
+
+  private JsonCodec() {
+  }
+
+  public static String toJson(Object object) {
+    return GSON.toJson(object);
+  }
+
+  /**
+   * @throws JsonParseException If the json is malformed
+   */
+  public static <T> T fromJson(String json, Class<T> type) {
+    return GSON.fromJson(json, type);
+  }
+
+  /**
+   * @throws JsonParseException If the json is malformed
+   */
+  public static <T> T fromJson(Reader reader, Class<T> type) {
+    return GSON.fromJson(reader, type);
+  }
+
+  /**
+   * Creates a buffered UTF-8 reader of the stream
+   */
+  public static Reader newReader(InputStream in) throws IOException {
+    return new BufferedReader(new InputStreamReader(in, CHARSET));
+  }
+
+  /**
+   * @throws IOException If the content can't be read or is malformed
+   */
+  public static InitMultipartUploadResult parseInitMultipartUploadResult(
+      InputStream in) throws IOException {
+    JsonReader reader = new JsonReader(newReader(in));
+    try {
+      InitMultipartUploadResult result = new InitMultipartUploadResult();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("bucketName")) {
+          result.setBucketName(nextString(reader));
+        } else if (name.equals("objectName")) {
+          result.setObjectName(nextString(reader));
+        } else if (name.equals("uploadId")) {
+          result.setUploadId(nextString(reader));
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return result;
+    } catch (IllegalStateException e) {
+      throw malformed(e);
+    } catch (NumberFormatException e) {
+      throw malformed(e);
+    }
+  }
+
+  /**
+   * @throws IOException If the content can't be read or is malformed
+   */
+  public static UploadPartResult parseUploadPartResult(InputStream in)
+      throws IOException {
+    JsonReader reader = new JsonReader(newReader(in));
+    try {
+      UploadPartResult result = new UploadPartResult();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("partNumber")) {
+          result.setPartNumber(reader.nextInt());
+        } else if (name.equals("etag")) {
+          result.setEtag(nextString(reader));
+        } else if (name.equals("partSize")) {
+          result.setPartSize(reader.nextLong());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return result;
+    } catch (IllegalStateException e) {
+      throw malformed(e);
+    } catch (NumberFormatException e) {
+      throw malformed(e);
+    }
+  }
+
+  /**
+   * @throws IOException If the content can't be read or is malformed
+   */
+  public static PutObjectResult parsePutObjectResult(InputStream in)
+      throws IOException {
+    JsonReader reader = new JsonReader(newReader(in));
+    try {
+      PutObjectResult result = new PutObjectResult();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("bucketName")) {
+          result.setBucketName(nextString(reader));
+        } else if (name.equals("objectName")) {
+          result.setObjectName(nextString(reader));
+        } else if (name.equals("accessKeyId")) {
+          result.setAccessKeyId(nextString(reader));
+        } else if (name.equals("signature")) {
+          result.setSignature(nextString(reader));
+        } else if (name.equals("expires")) {
+          result.setExpires(reader.nextLong());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return result;
+    } catch (IllegalStateException e) {
+      throw malformed(e);
+    } catch (NumberFormatException e) {
+      throw malformed(e);
+    }
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static IOException malformed(RuntimeException e) {
+    IOException exception = new IOException("Malformed json: "
+        + e.getMessage());
+    exception.initCause(e);
+    return exception;
+  }
+}
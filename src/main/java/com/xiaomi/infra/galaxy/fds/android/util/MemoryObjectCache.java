@@ -0,0 +1,262 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+
+/**
+ * A cache of small objects in memory, bounded by the total size of the
+ * cached contents. The entries are split into segments by the hash of their
+ * keys, each with its own lock and an equal share of the size, and evicted
+ * in least recently used order within the segment. An entry expires after
+ * the time to live since it is cached.
+ * <p/>
+ * Each entry also records the object it is a copy of, so that all the
+ * entries of an object, e.g. with different parameters, are removed once
+ * the object is known to have changed.
+ */
+public class MemoryObjectCache {
+  private static final int NUM_SEGMENTS = 16;
+
+  /**
+   * A cached object, the content must not be modified
+   */
+  public static class Entry {
+    private final String objectKey;
+    private final byte[] content;
+    private final Map<String, String> metadata;
+    private final long expireTime;
+
+    private Entry(String objectKey, byte[] content,
+        Map<String, String> metadata, long expireTime) {
+      this.objectKey = objectKey;
+      this.content = content;
+      this.metadata = metadata;
+      this.expireTime = expireTime;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    /**
+     * @return A new copy of the metadata of the object
+     */
+    public ObjectMetadata getMetadata() {
+      return ObjectMetadata.parseObjectMetadata(metadata);
+    }
+  }
+
+  private static class Segment {
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final long maxSize;
+    private long size = 0;
+
+    Segment(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    synchronized Entry get(String key) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+        remove(key);
+        return null;
+      }
+      return entry;
+    }
+
+    synchronized void put(String key, Entry entry) {
+      remove(key);
+      entries.put(key, entry);
+      size += entry.content.length;
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (size > maxSize && iterator.hasNext()) {
+        size -= iterator.next().content.length;
+        iterator.remove();
+      }
+    }
+
+    synchronized void remove(String key) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        size -= entry.content.length;
+      }
+    }
+
+    synchronized void removeObject(String objectKey) {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        Entry entry = iterator.next();
+        if (entry.objectKey.equals(objectKey)) {
+          size -= entry.content.length;
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private final Segment[] segments = new Segment[NUM_SEGMENTS];
+  private final int maxObjectSize;
+  private final long ttlMs;
+  // Increased on each removal of an object, so that the content read before
+  // is not cached afterwards
+  private final AtomicLong removedObjects = new AtomicLong(0);
+
+  /**
+   * @param maxSize       The max total size of the cached contents in bytes
+   * @param maxObjectSize The max size of a cached object
+   * @param ttlMs         The time to live of an entry in milliseconds
+   */
+  public MemoryObjectCache(long maxSize, int maxObjectSize, long ttlMs) {
+    Args.positive(maxSize, "cache size");
+    Args.positive(maxObjectSize, "max object size");
+    Args.positive(ttlMs, "time to live");
+    long segmentSize = Math.max(maxSize / NUM_SEGMENTS, 1);
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+    this.maxObjectSize = (int) Math.min(maxObjectSize, segmentSize);
+    this.ttlMs = ttlMs;
+  }
+
+  private Segment getSegment(String key) {
+    int hash = key.hashCode();
+    // Spreads the high bits of the hash to the low bits
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return segments[hash & (NUM_SEGMENTS - 1)];
+  }
+
+  /**
+   * Gets the cached object of the key, and marks it as recently used
+   *
+   * @return The entry, or null if the object is not cached or has expired
+   */
+  public Entry get(String key) {
+    return getSegment(key).get(key);
+  }
+
+  /**
+   * Removes the cached object of the key if there is one
+   */
+  public void remove(String key) {
+    getSegment(key).remove(key);
+  }
+
+  /**
+   * Removes all the cached entries of the object, whatever their keys, and
+   * the content of the object being read won't be cached
+   *
+   * @param objectKey The object key given when the entries are cached
+   */
+  public void removeObject(String objectKey) {
+    removedObjects.incrementAndGet();
+    for (Segment segment : segments) {
+      segment.removeObject(objectKey);
+    }
+  }
+
+  /**
+   * Wraps the content of an object, so that the content is put into the
+   * cache under the key once it has been read to the end. Objects larger than
+   * the max object size or of unknown size are not cached.
+   *
+   * @param content   The content of the object
+   * @param key       The key of the entry, e.g. the URI with the parameters
+   * @param objectKey The key of the object, which is shared by its entries
+   * @param metadata  The metadata of the object
+   */
+  public InputStream cache(InputStream content, String key, String objectKey,
+      ObjectMetadata metadata) {
+    long contentLength = metadata.getContentLength();
+    if (contentLength < 0 || contentLength > maxObjectSize) {
+      return content;
+    }
+    return new CachingInputStream(content, key, objectKey,
+        metadata.getAllMetadata(), (int) contentLength);
+  }
+
+  /**
+   * Copies the content read from the stream to a buffer, which is put into
+   * the cache once the stream is read to the end
+   */
+  private class CachingInputStream extends FilterInputStream {
+    private final String key;
+    private final String objectKey;
+    private final Map<String, String> metadata;
+    private final int contentLength;
+    private final long removedObjectsAtStart = removedObjects.get();
+    private ByteArrayOutputStream out;
+
+    CachingInputStream(InputStream in, String key, String objectKey,
+        Map<String, String> metadata, int contentLength) {
+      super(in);
+      this.key = key;
+      this.objectKey = objectKey;
+      this.metadata = metadata;
+      this.contentLength = contentLength;
+      this.out = new ByteArrayOutputStream(contentLength);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int data = super.read();
+      if (data == -1) {
+        finish();
+      } else if (out != null) {
+        out.write(data);
+      }
+      return data;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count == -1) {
+        finish();
+      } else if (out != null) {
+        out.write(buffer, offset, count);
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // The skipped content can't be cached
+      out = null;
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // The whole content may have been read without reaching the end
+      if (out != null && out.size() == contentLength) {
+        finish();
+      }
+      out = null;
+      super.close();
+    }
+
+    private void finish() {
+      if (out != null && out.size() == contentLength
+          && removedObjects.get() == removedObjectsAtStart) {
+        getSegment(key).put(key, new Entry(objectKey, out.toByteArray(),
+            metadata, System.currentTimeMillis() + ttlMs));
+      }
+      out = null;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+
+/**
+ * A cache of the metadata of objects, including the objects known not to
+ * exist. An entry expires after the time to live since it is cached, and the
+ * least recently used entries are evicted once there are too many of them.
+ */
+public class ObjectMetadataCache {
+
+  /**
+   * A cached result of heading an object
+   */
+  public static class Entry {
+    private final Map<String, String> metadata;
+    private final long expireTime;
+
+    private Entry(Map<String, String> metadata, long expireTime) {
+      this.metadata = metadata;
+      this.expireTime = expireTime;
+    }
+
+    public boolean exists() {
+      return metadata != null;
+    }
+
+    /**
+     * @return A new copy of the metadata of the object, or null if the
+     * object doesn't exist
+     */
+    public ObjectMetadata getMetadata() {
+      return metadata == null ? null
+          : ObjectMetadata.parseObjectMetadata(metadata);
+    }
+  }
+
+  private final long ttlMs;
+  // Guarded by this
+  private final LinkedHashMap<String, Entry> entries;
+
+  /**
+   * @param maxEntries The max number of cached entries
+   * @param ttlMs      The time to live of an entry in milliseconds
+   */
+  public ObjectMetadataCache(final int maxEntries, long ttlMs) {
+    Args.positive(maxEntries, "max entries");
+    Args.positive(ttlMs, "time to live");
+    this.ttlMs = ttlMs;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Gets the cached entry of the key, and marks it as recently used
+   *
+   * @return The entry, or null if the key is not cached or has expired
+   */
+  public synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+      entries.remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Caches the metadata of an existing object
+   */
+  public synchronized void put(String key, ObjectMetadata metadata) {
+    Args.notNull(metadata, "metadata");
+    entries.put(key, new Entry(metadata.getAllMetadata(),
+        System.currentTimeMillis() + ttlMs));
+  }
+
+  /**
+   * Caches that the object doesn't exist
+   */
+  public synchronized void putMissing(String key) {
+    entries.put(key, new Entry(null, System.currentTimeMillis() + ttlMs));
+  }
+
+  /**
+   * Removes the cached entry of the key if there is one
+   */
+  public synchronized void remove(String key) {
+    entries.remove(key);
+  }
+}
@@ -0,0 +1,67 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of recently presigned URIs, evicted in least recently used order.
+ * A cached URI is only returned while it stays valid long enough, so that
+ * the URIs are signed again before they expire.
+ */
+public class PresignedUriCache {
+
+  private static class Entry {
+    private final String uri;
+    private final long expires;
+
+    Entry(String uri, long expires) {
+      this.uri = uri;
+      this.expires = expires;
+    }
+  }
+
+  // Guarded by this
+  private final LinkedHashMap<String, Entry> entries;
+
+  /**
+   * @param maxEntries The max number of cached URIs
+   */
+  public PresignedUriCache(final int maxEntries) {
+    Args.positive(maxEntries, "max entries");
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Gets the cached URI of the key, and marks it as recently used
+   *
+   * @param minExpires The earliest acceptable expiration time of the URI in
+   *                   milliseconds since the epoch
+   * @return The URI, or null if no URI is cached or it expires too soon
+   */
+  public synchronized String get(String key, long minExpires) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expires < minExpires) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.uri;
+  }
+
+  /**
+   * Caches a presigned URI under the key
+   *
+   * @param expires The expiration time of the URI in milliseconds since the
+   *                epoch
+   */
+  public synchronized void put(String key, String uri, long expires) {
+    entries.put(key, new Entry(uri, expires));
+  }
+}
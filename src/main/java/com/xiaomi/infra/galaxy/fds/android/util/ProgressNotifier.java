@@ -0,0 +1,55 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+
+/**
+ * Accumulates the bytes transferred by concurrent workers and notifies the
+ * progress listener no more often than its progress interval. The bytes are
+ * also accumulated to the parent notifier if there is one, which tracks the
+ * progress of a batch of transfers.
+ */
+public class ProgressNotifier {
+  private final ProgressListener listener;
+  private final long total;
+  private final ProgressNotifier parent;
+  private long transferred;
+  private long lastNotifyTime;
+
+  public ProgressNotifier(ProgressListener listener, long total) {
+    this(listener, total, null);
+  }
+
+  public ProgressNotifier(ProgressListener listener, long total,
+      ProgressNotifier parent) {
+    this.listener = listener;
+    this.total = total;
+    this.parent = parent;
+  }
+
+  public void onTransferred(long bytes) {
+    synchronized (this) {
+      transferred += bytes;
+      notifyListener(true);
+    }
+    if (parent != null) {
+      parent.onTransferred(bytes);
+    }
+  }
+
+  /**
+   * Notifies the listener regardless of the progress interval
+   */
+  public synchronized void finish() {
+    notifyListener(false);
+  }
+
+  private void notifyListener(boolean needsCheckTime) {
+    if (listener != null) {
+      long now = System.currentTimeMillis();
+      if (!needsCheckTime || now - lastNotifyTime >= listener.progressInterval()) {
+        lastNotifyTime = now;
+        listener.onProgress(transferred, total);
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task holding resources, such as a permit of the in-flight upload parts and
+ * the buffer of a part, which are released exactly once: when the task has
+ * run, or when it is cancelled before it starts. Cancelling a queued Future
+ * alone never runs the task, so whatever it holds would be leaked.
+ */
+public class ReleasableTask<V> implements Callable<V> {
+  private final Callable<V> callable;
+  private final Runnable releaser;
+  private final AtomicBoolean isClaimed = new AtomicBoolean(false);
+
+  /**
+   * @param callable The work of the task
+   * @param releaser Releases the resources held by the task
+   */
+  public ReleasableTask(Callable<V> callable, Runnable releaser) {
+    Args.notNull(callable, "callable");
+    Args.notNull(releaser, "releaser");
+    this.callable = callable;
+    this.releaser = releaser;
+  }
+
+  @Override
+  public V call() throws Exception {
+    if (!isClaimed.compareAndSet(false, true)) {
+      throw new CancellationException("The task is cancelled");
+    }
+    try {
+      return callable.call();
+    } finally {
+      releaser.run();
+    }
+  }
+
+  /**
+   * Releases the resources and keeps the task from running if it hasn't
+   * started yet
+   *
+   * @return Whether the task is cancelled, false if it is running or has run
+   */
+  public boolean cancelIfNotStarted() {
+    if (!isClaimed.compareAndSet(false, true)) {
+      return false;
+    }
+    releaser.run();
+    return true;
+  }
+}
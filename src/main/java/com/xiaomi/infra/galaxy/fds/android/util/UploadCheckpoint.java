@@ -0,0 +1,258 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+
+import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResult;
+
+/**
+ * The journal of a resumable multipart upload of a file. The first line of
+ * the journal records the upload ID and the part plan, and a line is appended
+ * for every uploaded part, so that a later upload of the same file can skip
+ * the parts already uploaded.
+ */
+public class UploadCheckpoint {
+  private static final String CHARSET = "UTF-8";
+
+  private static class Header {
+    private String bucketName;
+    private String objectName;
+    private String filePath;
+    private long fileLength;
+    private long fileLastModified;
+    private int partSize;
+    private int maxPartNumber;
+    private String uploadId;
+    private String uploadObjectName;
+  }
+
+  private final File journalFile;
+  private final Header header;
+  private final Map<Integer, UploadPartResult> uploadedParts =
+      new HashMap<Integer, UploadPartResult>();
+
+  private UploadCheckpoint(File journalFile, Header header) {
+    this.journalFile = journalFile;
+    this.header = header;
+  }
+
+  /**
+   * Opens the checkpoint of uploading the file to the object. The existing
+   * journal is resumed if it is of the same file which has not been modified
+   * since, otherwise a new checkpoint is returned, which is not saved until
+   * the upload starts.
+   *
+   * @param checkpointDir The directory where journals are stored
+   * @param objectName    The object name, may be null if it is generated by
+   *                      FDS service
+   * @param partSize      The part size of a new upload
+   * @param maxPartNumber The max part number of a new upload
+   */
+  public static UploadCheckpoint open(File checkpointDir, String bucketName,
+      String objectName, File file, int partSize, int maxPartNumber) {
+    Header header = new Header();
+    header.bucketName = bucketName;
+    header.objectName = objectName;
+    header.filePath = file.getAbsolutePath();
+    header.fileLength = file.length();
+    header.fileLastModified = file.lastModified();
+    header.partSize = partSize;
+    header.maxPartNumber = maxPartNumber;
+    File journalFile = new File(checkpointDir, Util.md5Hex(bucketName + "/"
+        + (objectName == null ? "" : objectName) + ":" + header.filePath));
+
+    UploadCheckpoint checkpoint = load(journalFile);
+    if (checkpoint != null && checkpoint.isOf(header)) {
+      return checkpoint;
+    }
+    journalFile.delete();
+    return new UploadCheckpoint(journalFile, header);
+  }
+
+  private static UploadCheckpoint load(File journalFile) {
+    if (!journalFile.exists()) {
+      return null;
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(journalFile), CHARSET));
+      Header header = JsonCodec.fromJson(reader.readLine(), Header.class);
+      if (header == null || header.uploadId == null) {
+        return null;
+      }
+      UploadCheckpoint checkpoint = new UploadCheckpoint(journalFile, header);
+      boolean isCorrupted = false;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          UploadPartResult part = JsonCodec.fromJson(line,
+              UploadPartResult.class);
+          if (part != null && part.getEtag() != null) {
+            checkpoint.uploadedParts.put(part.getPartNumber(), part);
+          }
+        } catch (JsonParseException e) {
+          // The line may be partially written if the process was killed,
+          // the part is simply uploaded again
+          isCorrupted = true;
+        }
+      }
+      reader.close();
+      reader = null;
+      if (isCorrupted) {
+        // Otherwise the next part would be appended to the partial line
+        checkpoint.save();
+      }
+      return checkpoint;
+    } catch (IOException e) {
+      return null;
+    } catch (JsonParseException e) {
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // Ignored
+        }
+      }
+    }
+  }
+
+  private boolean isOf(Header other) {
+    return equals(header.bucketName, other.bucketName)
+        && equals(header.objectName, other.objectName)
+        && equals(header.filePath, other.filePath)
+        && header.fileLength == other.fileLength
+        && header.fileLastModified == other.fileLastModified
+        && header.partSize > 0 && header.maxPartNumber > 0;
+  }
+
+  private static boolean equals(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /**
+   * Gets the upload ID, or null if the upload has not started yet
+   */
+  public String getUploadId() {
+    return header.uploadId;
+  }
+
+  /**
+   * Gets the name of the object being uploaded, which is generated by FDS
+   * service if not specified
+   */
+  public String getUploadObjectName() {
+    return header.uploadObjectName;
+  }
+
+  public int getPartSize() {
+    return header.partSize;
+  }
+
+  public int getMaxPartNumber() {
+    return header.maxPartNumber;
+  }
+
+  /**
+   * Saves the journal of a newly initiated multipart upload
+   */
+  public synchronized void start(String uploadId, String uploadObjectName)
+      throws IOException {
+    header.uploadId = uploadId;
+    header.uploadObjectName = uploadObjectName;
+    uploadedParts.clear();
+    save();
+  }
+
+  /**
+   * Rewrites the whole journal. Writes to a temporary file first so that a
+   * journal is never left with a partial header.
+   */
+  private void save() throws IOException {
+    File parent = journalFile.getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    StringBuilder builder = new StringBuilder(JsonCodec.toJson(header));
+    for (UploadPartResult part : uploadedParts.values()) {
+      builder.append('\n').append(JsonCodec.toJson(part));
+    }
+    File tmpFile = new File(journalFile.getPath() + ".tmp");
+    writeLine(tmpFile, builder.toString(), false);
+    if (!tmpFile.renameTo(journalFile)) {
+      journalFile.delete();
+      if (!tmpFile.renameTo(journalFile)) {
+        throw new IOException("Fail to rename " + tmpFile.getAbsolutePath()
+            + " to " + journalFile.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * Gets the result of the part if it has been uploaded
+   */
+  public synchronized UploadPartResult getUploadedPart(int partNumber) {
+    return uploadedParts.get(partNumber);
+  }
+
+  public synchronized List<UploadPartResult> getUploadedParts() {
+    return new ArrayList<UploadPartResult>(uploadedParts.values());
+  }
+
+  /**
+   * Records an uploaded part and appends it to the journal, unless the
+   * journal has been reset since the part was started
+   *
+   * @param uploadId The ID of the upload the part belongs to
+   */
+  public synchronized void addUploadedPart(String uploadId,
+      UploadPartResult part) throws IOException {
+    if (header.uploadId == null || !header.uploadId.equals(uploadId)) {
+      return;
+    }
+    uploadedParts.put(part.getPartNumber(), part);
+    writeLine(journalFile, JsonCodec.toJson(part), true);
+  }
+
+  /**
+   * Discards the upload ID and the uploaded parts, so that the upload is
+   * started again with the same part plan
+   */
+  public synchronized void reset() {
+    header.uploadId = null;
+    header.uploadObjectName = null;
+    uploadedParts.clear();
+    journalFile.delete();
+  }
+
+  /**
+   * Deletes the journal once the upload is completed
+   */
+  public synchronized void delete() {
+    journalFile.delete();
+  }
+
+  private static void writeLine(File file, String line, boolean append)
+      throws IOException {
+    OutputStream out = new FileOutputStream(file, append);
+    try {
+      out.write((line + "\n").getBytes(CHARSET));
+    } finally {
+      out.close();
+    }
+  }
+}
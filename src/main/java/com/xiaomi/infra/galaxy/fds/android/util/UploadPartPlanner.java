@@ -0,0 +1,103 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+/**
+ * Splits an object into upload parts one after another, so that the size of
+ * each part may be chosen as the upload goes. All offsets are computed with
+ * long arithmetic, and parts are enlarged when necessary so that the number
+ * of parts never exceeds the limit of the server.
+ */
+public class UploadPartPlanner {
+
+  /**
+   * Describes a part of an object to be uploaded
+   */
+  public static class Part {
+    private final int partNumber;
+    private final long offset;
+    private final int length;
+
+    public Part(int partNumber, long offset, int length) {
+      this.partNumber = partNumber;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * The part number, starting from 1
+     */
+    public int getPartNumber() {
+      return partNumber;
+    }
+
+    /**
+     * The offset of the part in the object
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * The size of the part in bytes
+     */
+    public int getLength() {
+      return length;
+    }
+  }
+
+  private final long contentLength;
+  private final int maxPartNumber;
+  private long nextOffset = 0;
+  private int nextPartNumber = 1;
+
+  /**
+   * @param contentLength The size of the object
+   * @param maxPartNumber The max number of parts the server accepts
+   */
+  public UploadPartPlanner(long contentLength, int maxPartNumber) {
+    Args.notNegative(contentLength, "content length");
+    Args.positive(maxPartNumber, "max part number");
+
+    long minPartSize = divideRoundingUp(contentLength, maxPartNumber);
+    Args.check(minPartSize <= Integer.MAX_VALUE, "Object is too large to be "
+        + "uploaded in %d parts, content length:%d", maxPartNumber,
+        contentLength);
+    this.contentLength = contentLength;
+    this.maxPartNumber = maxPartNumber;
+  }
+
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  public boolean hasNextPart() {
+    return nextOffset < contentLength;
+  }
+
+  /**
+   * Plans the part following the ones planned so far. The part is enlarged
+   * when the rest of the object could not fit in the remaining part numbers
+   * with parts of the preferred size, and the last part may be smaller.
+   *
+   * @param preferredSize The preferred size of the part
+   */
+  public Part nextPart(int preferredSize) {
+    Args.positive(preferredSize, "part size");
+    Args.check(hasNextPart(), "All the %d bytes have been planned",
+        contentLength);
+    long remainingBytes = contentLength - nextOffset;
+    int remainingParts = maxPartNumber - nextPartNumber + 1;
+    long minPartSize = divideRoundingUp(remainingBytes, remainingParts);
+    int length = (int) Math.min(remainingBytes,
+        Math.max(preferredSize, minPartSize));
+    Part part = new Part(nextPartNumber++, nextOffset, length);
+    nextOffset += length;
+    return part;
+  }
+
+  /**
+   * Divides without overflowing when the dividend is close to Long.MAX_VALUE
+   */
+  private static long divideRoundingUp(long dividend, int divisor) {
+    return dividend / divisor + (dividend % divisor == 0 ? 0 : 1);
+  }
+}
@@ -8,6 +8,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -76,6 +79,71 @@ public class Util {
     }
   }
 
+  /**
+   * Reads exactly len bytes from the input stream into the buffer
+   *
+   * @throws IOException If the stream ends before len bytes are read
+   */
+  public static void readFully(InputStream in, byte[] buffer, int offset,
+      int len) throws IOException {
+    int totalBytesRead = 0;
+    while (totalBytesRead < len) {
+      int bytesRead = in.read(buffer, offset + totalBytesRead,
+          len - totalBytesRead);
+      if (bytesRead == -1) {
+        throw new IOException("Unexpected end of stream, expected " + len
+            + " bytes but only read " + totalBytesRead);
+      }
+      totalBytesRead += bytesRead;
+    }
+  }
+
+  /**
+   * Gets the hex string of the MD5 digest of the UTF-8 encoded string
+   */
+  public static String md5Hex(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(
+          s.getBytes("UTF-8"));
+      StringBuilder builder = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+        builder.append(Character.forDigit(b & 0xf, 16));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final char[] BASE64_CHARS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+          .toCharArray();
+
+  /**
+   * Encodes the bytes to a padded base64 string without line breaks
+   */
+  public static String encodeBase64(byte[] data) {
+    StringBuilder builder = new StringBuilder((data.length + 2) / 3 * 4);
+    for (int i = 0; i < data.length; i += 3) {
+      int remaining = data.length - i;
+      int bits = (data[i] & 0xff) << 16;
+      if (remaining > 1) {
+        bits |= (data[i + 1] & 0xff) << 8;
+      }
+      if (remaining > 2) {
+        bits |= data[i + 2] & 0xff;
+      }
+      builder.append(BASE64_CHARS[(bits >> 18) & 0x3f]);
+      builder.append(BASE64_CHARS[(bits >> 12) & 0x3f]);
+      builder.append(remaining > 1 ? BASE64_CHARS[(bits >> 6) & 0x3f] : '=');
+      builder.append(remaining > 2 ? BASE64_CHARS[bits & 0x3f] : '=');
+    }
+    return builder.toString();
+  }
+
   public static String getStackTrace(Exception e) {
     StringWriter stringWriter = new StringWriter();
     PrintWriter printWriter = new PrintWriter(stringWriter);
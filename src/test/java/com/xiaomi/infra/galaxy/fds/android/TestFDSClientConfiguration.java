@@ -3,6 +3,8 @@ package com.xiaomi.infra.galaxy.fds.android;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportType;
+
 /**
  * Created by zhangjunbin on 12/29/14.
  */
@@ -18,6 +20,12 @@ public class TestFDSClientConfiguration {
     Assert.assertEquals(false, conf.isCdnEnabledForUpload());
     Assert.assertEquals(true, conf.isCdnEnabledForDownload());
     Assert.assertEquals(false, conf.isEnabledUnitTestMode());
+    Assert.assertEquals(FDSClientConfiguration.DEFAULT_MAX_IN_FLIGHT_UPLOAD_PARTS,
+        conf.getMaxInFlightUploadParts());
+    Assert.assertEquals(false, conf.isAdaptiveUploadPartSizeEnabled());
+    Assert.assertEquals(FDSClientConfiguration.DEFAULT_INITIAL_UPLOAD_PART_SIZE,
+        conf.getInitialUploadPartSize());
+    Assert.assertEquals(HttpTransportType.APACHE, conf.getHttpTransportType());
   }
 
   @Test
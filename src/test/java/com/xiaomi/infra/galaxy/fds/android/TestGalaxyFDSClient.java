@@ -3,15 +3,31 @@ package com.xiaomi.infra.galaxy.fds.android;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
 import com.google.gson.Gson;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
@@ -22,12 +38,18 @@ import org.junit.Test;
 
 import com.xiaomi.infra.galaxy.fds.android.auth.OAuthCredential;
 import com.xiaomi.infra.galaxy.fds.android.auth.SSOCredential;
+import com.xiaomi.infra.galaxy.fds.android.auth.SignatureCredential;
+import com.xiaomi.infra.galaxy.fds.android.auth.StorageAccessTokenStore;
 import com.xiaomi.infra.galaxy.fds.android.exception.GalaxyFDSClientException;
+import com.xiaomi.infra.galaxy.fds.android.model.ConnectionPoolStats;
 import com.xiaomi.infra.galaxy.fds.android.model.ExpiresParam;
+import com.xiaomi.infra.galaxy.fds.android.model.FDSCallback;
 import com.xiaomi.infra.galaxy.fds.android.model.FDSObject;
 import com.xiaomi.infra.galaxy.fds.android.model.InitMultipartUploadResult;
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectKey;
 import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
 import com.xiaomi.infra.galaxy.fds.android.model.ProgressListener;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectRequest;
 import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
 import com.xiaomi.infra.galaxy.fds.android.model.ResponseContentTypeParam;
 import com.xiaomi.infra.galaxy.fds.android.model.ResponseExpiresParam;
@@ -36,8 +58,12 @@ import com.xiaomi.infra.galaxy.fds.android.model.ThumbParam;
 import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResult;
 import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResultList;
 import com.xiaomi.infra.galaxy.fds.android.model.UserParam;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportFactory;
+import com.xiaomi.infra.galaxy.fds.android.transport.HttpTransportType;
 import com.xiaomi.infra.galaxy.fds.android.util.Consts;
+import com.xiaomi.infra.galaxy.fds.android.util.DownloadCheckpoint;
 import com.xiaomi.infra.galaxy.fds.android.util.Util;
+import com.xiaomi.infra.galaxy.fds.model.HttpMethod;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.delete;
@@ -47,6 +73,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
 import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
@@ -56,6 +83,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertArrayEquals;
@@ -386,17 +414,16 @@ public class TestGalaxyFDSClient {
   }
 
   @Test(timeout = 120*1000)
-  public void testPutRetryFail() {
+  public void testPutFile() throws IOException {
     int numParts = 3;
-    String bucketName = "testPutRetryFail_bucket";
-    String objectName = "testPutRetryFail_object";
+    String bucketName = "testPutFile_bucket";
+    String objectName = "testPutFile_object";
     String uploadId = "8964";
+    String signature = "abcdefg";
     String initMultipartUrl = "/" + bucketName + "/" + objectName
         + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
-    String abortMultipartUrl = "/" + bucketName + "/" + objectName
+    String completeMultipartUrl = "/" + bucketName + "/" + objectName
         + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
-    String checkObjectUrl = "/" + bucketName + "/" + objectName
-        + "?serviceToken=" + SSO_SERVICE_TOKEN;;
 
     InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
     initMultipartUploadResult.setBucketName(bucketName);
@@ -407,75 +434,143 @@ public class TestGalaxyFDSClient {
         .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
         .withBody(new Gson().toJson(initMultipartUploadResult))));
     for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      if (partNumber != numParts) {
-        UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
-            Integer.toString(partNumber));
-        baseUriMockRule.stubFor(put(urlEqualTo(
-            getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
-            .withStatus(HttpStatus.SC_OK)
-            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
-            .withBody(new Gson().toJson(uploadPartResult))));
-      } else {
-        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
-            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
-      }
+      UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
+          Integer.toString(partNumber));
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(uploadPartResult))));
     }
-    baseUriMockRule.stubFor(delete(urlEqualTo(abortMultipartUrl)).willReturn(aResponse()
-        .withStatus(HttpStatus.SC_OK)));
-    baseUriMockRule.stubFor(head(urlEqualTo(checkObjectUrl)).willReturn(aResponse()
-        .withStatus(HttpStatus.SC_NOT_FOUND)));
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature(signature);
+    baseUriMockRule.stubFor(put(urlEqualTo(completeMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
 
-    byte[] data = new byte[(int)
-        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
-    Arrays.fill(data, (byte) 1);
-    ObjectMetadata metadata = new ObjectMetadata();
-    metadata.setContentLength(data.length);
-    InputStream in = new ByteArrayInputStream(data);
+    byte[] data = new byte[(int) (partSize * 2.5)];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i / partSize);
+    }
+    File file = File.createTempFile("testPutFile", "");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
     try {
-      client.putObject(bucketName, objectName, in, metadata);
-      fail("should fail in uploading the third part");
-    } catch (GalaxyFDSClientException e) {
-      System.out.print(Util.getStackTrace(e));
+      out.write(data);
     } finally {
-      try {
-        in.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      out.close();
     }
+
     try {
-      assertFalse(client.doesObjectExist(bucketName, objectName));
+      MyProgressListener listener = new MyProgressListener();
+      PutObjectResult result = client.putObject(bucketName, objectName, file,
+          null, listener);
+      assertNotNull(result);
+      assertEquals(signature, result.getSignature());
+      assertEquals(1.0, listener.getTransferredPercentage());
     } catch (GalaxyFDSClientException e) {
-      fail("should not throw exception");
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not raise exception");
     }
 
-    baseUriMockRule.verify(putRequestedFor(urlEqualTo(initMultipartUrl)));
+    String dataString = new String(data);
     for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      if (partNumber != numParts) {
-        baseUriMockRule.verify(putRequestedFor(
-            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
-      } else {
-        baseUriMockRule.verify(3, putRequestedFor(
-            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+      int begin = (partNumber - 1) * partSize;
+      int end = Math.min(partNumber * partSize, data.length);
+      baseUriMockRule.verify(putRequestedFor(
+          urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
+          .withHeader(HttpHeaders.CONTENT_LENGTH, equalTo(Integer.toString(end - begin)))
+          .withRequestBody(equalTo(dataString.substring(begin, end))));
+    }
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutObjects() {
+    String bucketName = "testPutObjects_bucket";
+    String[] objectNames = {"big_object", "small_object"};
+    int[] numParts = {3, 1};
+    List<PutObjectRequest> requests = new ArrayList<PutObjectRequest>();
+    List<MyProgressListener> listeners = new ArrayList<MyProgressListener>();
+    for (int i = 0; i < objectNames.length; i++) {
+      String objectName = objectNames[i];
+      String uploadId = "upload" + i;
+      InitMultipartUploadResult initMultipartUploadResult =
+          new InitMultipartUploadResult();
+      initMultipartUploadResult.setBucketName(bucketName);
+      initMultipartUploadResult.setObjectName(objectName);
+      initMultipartUploadResult.setUploadId(uploadId);
+      baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN))
+          .willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(initMultipartUploadResult))));
+      for (int partNumber = 1; partNumber <= numParts[i]; partNumber++) {
+        UploadPartResult uploadPartResult = new UploadPartResult(partNumber,
+            partSize, Integer.toString(partNumber));
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName,
+            objectName, uploadId, partNumber))).willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(uploadPartResult))));
       }
-      baseUriMockRule.verify(deleteRequestedFor(urlEqualTo(abortMultipartUrl)));
+      PutObjectResult putObjectResult = new PutObjectResult();
+      putObjectResult.setBucketName(bucketName);
+      putObjectResult.setObjectName(objectName);
+      putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+      putObjectResult.setExpires(Long.MAX_VALUE);
+      putObjectResult.setSignature("signature" + i);
+      baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?uploadId=" + uploadId + "&serviceToken="
+          + SSO_SERVICE_TOKEN)).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(putObjectResult))));
+
+      byte[] data = new byte[numParts[i] * partSize];
+      Arrays.fill(data, (byte) i);
+      ObjectMetadata metadata = new ObjectMetadata();
+      metadata.setContentLength(data.length);
+      MyProgressListener listener = new MyProgressListener();
+      listeners.add(listener);
+      requests.add(new PutObjectRequest(bucketName, objectName,
+          new ByteArrayInputStream(data), metadata)
+          .withProgressListener(listener));
+    }
+
+    try {
+      MyProgressListener batchListener = new MyProgressListener();
+      List<PutObjectResult> results = client.putObjects(requests,
+          batchListener);
+      assertEquals(objectNames.length, results.size());
+      for (int i = 0; i < objectNames.length; i++) {
+        assertEquals(objectNames[i], results.get(i).getObjectName());
+        assertEquals(1.0, listeners.get(i).getTransferredPercentage());
+      }
+      assertEquals(1.0, batchListener.getTransferredPercentage());
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not raise exception");
     }
-    baseUriMockRule.verify(headRequestedFor(urlEqualTo(checkObjectUrl)));
   }
 
   @Test(timeout = 120*1000)
-  public void testPutRetrySuccess() {
+  public void testPutFileResume() throws IOException {
     int numParts = 3;
-    String bucketName = "testPutRetrySuccess_bucket";
-    String objectName = "testPutRetrySuccess_object";
+    String bucketName = "testPutFileResume_bucket";
+    String objectName = "testPutFileResume_object";
     String uploadId = "8964";
     String signature = "abcdefg";
-    long expire = 123456;
     String initMultipartUrl = "/" + bucketName + "/" + objectName
         + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
     String completeMultipartUrl = "/" + bucketName + "/" + objectName
-        + "?uploadId=" + uploadId + "&expires=" + expire + "&serviceToken="
-        + SSO_SERVICE_TOKEN;
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
 
     InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
     initMultipartUploadResult.setBucketName(bucketName);
@@ -483,43 +578,17 @@ public class TestGalaxyFDSClient {
     initMultipartUploadResult.setUploadId(uploadId);
     baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
         .withStatus(HttpStatus.SC_OK)
-        .withHeader(HttpHeaders.CONTENT_TYPE,
-            ContentType.APPLICATION_JSON.toString())
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
         .withBody(new Gson().toJson(initMultipartUploadResult))));
-    List<UploadPartResult> uploadPartResults = new ArrayList<UploadPartResult>(numParts);
     for (int partNumber = 1; partNumber <= numParts; partNumber++) {
       UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
           Integer.toString(partNumber));
-      if (partNumber != 2) {
-        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId,
-            partNumber))).willReturn(aResponse()
-            .withStatus(HttpStatus.SC_OK)
-            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
-            .withBody(new Gson().toJson(uploadPartResult))));
-      } else {
-        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
-            .inScenario("Retry")
-            .whenScenarioStateIs(Scenario.STARTED)
-            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR))
-            .willSetStateTo("second"));
-        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
-            .inScenario("Retry")
-            .whenScenarioStateIs("second")
-            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR))
-            .willSetStateTo("last"));
-        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
-            .inScenario("Retry")
-            .whenScenarioStateIs("last")
-            .willReturn(aResponse()
-                .withStatus(HttpStatus.SC_OK)
-                .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
-                .withBody(new Gson().toJson(uploadPartResult))));
-      }
-      uploadPartResults.add(uploadPartResult);
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(partNumber == 2 ? HttpStatus.SC_INTERNAL_SERVER_ERROR : HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(uploadPartResult))));
     }
-    UploadPartResultList uploadPartResultList = new UploadPartResultList();
-    uploadPartResultList.setUploadPartResultList(uploadPartResults);
-
     PutObjectResult putObjectResult = new PutObjectResult();
     putObjectResult.setBucketName(bucketName);
     putObjectResult.setObjectName(objectName);
@@ -531,237 +600,1548 @@ public class TestGalaxyFDSClient {
         .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
         .withBody(new Gson().toJson(putObjectResult))));
 
-    byte[] data = new byte[(int)
-        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
-    Arrays.fill(data, (byte) 1);
-    ObjectMetadata metadata = new ObjectMetadata();
-    metadata.setContentLength(data.length);
-    InputStream in = new ByteArrayInputStream(data);
+    byte[] data = new byte[(int) (partSize * 2.5)];
+    Arrays.fill(data, (byte) 'a');
+    File file = File.createTempFile("testPutFileResume", "");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
     try {
-      List<UserParam> params = new ArrayList<UserParam>(1);
-      params.add(new ExpiresParam(expire));
-      MyProgressListener listener = new MyProgressListener();
-      PutObjectResult result = client.putObject(bucketName, objectName, in,
-          metadata, params, listener);
-      assertNotNull(result);
-      assertEquals(SSO_SERVICE_TOKEN, result.getAccessKeyId());
-      assertEquals(bucketName, result.getBucketName());
-      assertEquals(objectName, result.getObjectName());
-      assertEquals(Long.MAX_VALUE, result.getExpires());
-      assertEquals(signature, result.getSignature());
-      assertEquals(1.0, listener.getTransferredPercentage());
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    File checkpointDir = File.createTempFile("testPutFileResume", "");
+    checkpointDir.delete();
+    checkpointDir.mkdirs();
+    checkpointDir.deleteOnExit();
+    GalaxyFDSClient resumableClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withUploadCheckpointDir(checkpointDir));
+
+    try {
+      resumableClient.putObject(bucketName, objectName, file);
+      fail("Upload part 2 fails, should fail");
     } catch (GalaxyFDSClientException e) {
-      System.out.println(Util.getStackTrace(e));
-      fail("should not throw any exceptions");
+      System.out.print(Util.getStackTrace(e));
     }
+    assertEquals(1, checkpointDir.listFiles().length);
 
-    baseUriMockRule.verify(putRequestedFor(urlEqualTo(initMultipartUrl)));
-    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      if (partNumber != 2) {
-        baseUriMockRule.verify(putRequestedFor(
-            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
-      } else {
-        baseUriMockRule.verify(3, putRequestedFor(
-            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
-      }
+    // The resumed upload should neither initiate a new upload nor upload
+    // part 1 again
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+    baseUriMockRule.stubFor(put(urlEqualTo(
+        getUploadPartUrl(bucketName, objectName, uploadId, 1))).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+    baseUriMockRule.stubFor(put(urlEqualTo(
+        getUploadPartUrl(bucketName, objectName, uploadId, 2))).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(new UploadPartResult(2, partSize, "2")))));
+    try {
+      PutObjectResult result = resumableClient.putObject(bucketName,
+          objectName, file);
+      assertEquals(signature, result.getSignature());
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not raise exception");
     }
-    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl))
-        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
-        .withRequestBody(equalToJson(new Gson().toJson(uploadPartResultList))));
+    assertEquals(0, checkpointDir.listFiles().length);
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl)));
   }
 
   @Test(timeout = 120*1000)
-  public void testPost() {
+  public void testPutFileResumeRejected() throws Exception {
     int numParts = 3;
-    String bucketName = "testPost_bucket";
-    String objectName = "testPost_object";
+    String bucketName = "testPutFileResumeRejected_bucket";
+    String objectName = "testPutFileResumeRejected_object";
     String uploadId = "8964";
-    String signature = "signature";
-    String initMultipartUrl = "/" + bucketName + "/"  + "?uploads&serviceToken="
-        + SSO_SERVICE_TOKEN;
-    String completeMultipartUrl = "/" + bucketName + "/" + objectName
+    String newUploadId = "8965";
+    String signature = "abcdefg";
+    String initMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
+    String uploadUrl = "/" + bucketName + "/" + objectName
         + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+    String newUploadUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + newUploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
 
     InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
     initMultipartUploadResult.setBucketName(bucketName);
     initMultipartUploadResult.setObjectName(objectName);
     initMultipartUploadResult.setUploadId(uploadId);
-    baseUriMockRule.stubFor(post(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
         .withStatus(HttpStatus.SC_OK)
         .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
         .withBody(new Gson().toJson(initMultipartUploadResult))));
-    List<UploadPartResult> uploadPartResults = new ArrayList<UploadPartResult>(numParts);
     for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
-          Integer.toString(partNumber));
       baseUriMockRule.stubFor(put(urlEqualTo(
           getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(partNumber == 1 ? HttpStatus.SC_OK : HttpStatus.SC_INTERNAL_SERVER_ERROR)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+              Integer.toString(partNumber))))));
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, newUploadId, partNumber))).willReturn(aResponse()
           .withStatus(HttpStatus.SC_OK)
           .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
-          .withBody(new Gson().toJson(uploadPartResult))));
-      uploadPartResults.add(uploadPartResult);
+          .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+              Integer.toString(partNumber))))));
     }
-    UploadPartResultList uploadPartResultList = new UploadPartResultList();
-    uploadPartResultList.setUploadPartResultList(uploadPartResults);
-
     PutObjectResult putObjectResult = new PutObjectResult();
     putObjectResult.setBucketName(bucketName);
     putObjectResult.setObjectName(objectName);
     putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
     putObjectResult.setExpires(Long.MAX_VALUE);
     putObjectResult.setSignature(signature);
-    baseUriMockRule.stubFor(put(urlEqualTo(completeMultipartUrl)).willReturn(aResponse()
+    baseUriMockRule.stubFor(put(urlEqualTo(newUploadUrl)).willReturn(aResponse()
         .withStatus(HttpStatus.SC_OK)
         .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
         .withBody(new Gson().toJson(putObjectResult))));
+    baseUriMockRule.stubFor(delete(urlEqualTo(uploadUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)));
 
-    byte[] data = new byte[(int)
-        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
-    Arrays.fill(data, (byte) 1);
-    ObjectMetadata metadata = new ObjectMetadata();
-    metadata.setContentLength(data.length);
-    InputStream in = new ByteArrayInputStream(data);
+    byte[] data = new byte[(int) (partSize * 2.5)];
+    Arrays.fill(data, (byte) 'a');
+    File file = File.createTempFile("testPutFileResumeRejected", "");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
     try {
-      PutObjectResult result = client.putObject(bucketName, in, metadata);
-      assertNotNull(result);
-      assertEquals(SSO_SERVICE_TOKEN, result.getAccessKeyId());
-      assertEquals(bucketName, result.getBucketName());
-      assertEquals(objectName, result.getObjectName());
-      assertEquals(Long.MAX_VALUE, result.getExpires());
-      assertEquals(signature, result.getSignature());
-      assertEquals(config.getBaseUriForUnitTest() + "/" + bucketName + "/"
-          + objectName + "?" + Consts.GALAXY_ACCESS_KEY_ID + "="
-          + SSO_SERVICE_TOKEN + "&" + Consts.EXPIRES + "=" + Long.MAX_VALUE
-          + "&" + Consts.SIGNATURE + "=" + signature,
-          result.getAbsolutePresignedUri());
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    File checkpointDir = File.createTempFile("testPutFileResumeRejected", "");
+    checkpointDir.delete();
+    checkpointDir.mkdirs();
+    checkpointDir.deleteOnExit();
+    GalaxyFDSClient resumableClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withUploadCheckpointDir(checkpointDir));
+
+    try {
+      resumableClient.putObject(bucketName, objectName, file);
+      fail("Upload parts 2 and 3 fail, should fail");
     } catch (GalaxyFDSClientException e) {
       System.out.print(Util.getStackTrace(e));
-      fail("should not throw any exceptions");
     }
+    assertEquals(1, checkpointDir.listFiles().length);
 
-    baseUriMockRule.verify(postRequestedFor(urlEqualTo(initMultipartUrl)));
-    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      baseUriMockRule.verify(putRequestedFor(
-          urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+    // The saved upload has expired, the resumed upload is rejected and
+    // started over with a new upload
+    for (int partNumber = 2; partNumber <= numParts; partNumber++) {
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_NOT_FOUND)));
     }
-    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl))
-        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
-        .withRequestBody(equalToJson(new Gson().toJson(uploadPartResultList))));
+    initMultipartUploadResult.setUploadId(newUploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    PutObjectResult result = resumableClient.putObject(bucketName, objectName,
+        file);
+    assertEquals(signature, result.getSignature());
+    assertEquals(0, checkpointDir.listFiles().length);
+    baseUriMockRule.verify(deleteRequestedFor(urlEqualTo(uploadUrl)));
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(
+        getUploadPartUrl(bucketName, objectName, newUploadId, 1))));
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(newUploadUrl)));
   }
 
   @Test(timeout = 120*1000)
-  public void testGetInvalidParam() {
-    String bucketName = "testGetInvalidParam_bucket";
-    String objectName = "testGetInvalidParam_object";
-    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
-        + SSO_SERVICE_TOKEN;
+  public void testPutFileResumeKeptOnTransientError() throws Exception {
+    int numParts = 3;
+    String bucketName = "testPutFileResumeKeptOnTransientError_bucket";
+    String objectName = "testPutFileResumeKeptOnTransientError_object";
+    String uploadId = "8964";
+    String signature = "abcdefg";
+    String initMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
+    String uploadUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    // An expiring token and throttling, neither invalidates the upload
+    int[] statusCodes = {HttpStatus.SC_OK, HttpStatus.SC_FORBIDDEN, 429};
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(statusCodes[partNumber - 1])
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+              Integer.toString(partNumber))))));
+    }
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature(signature);
+    baseUriMockRule.stubFor(put(urlEqualTo(uploadUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    byte[] data = new byte[(int) (partSize * 2.5)];
+    Arrays.fill(data, (byte) 'a');
+    File file = File.createTempFile("testPutFileResumeKeptOnTransientError", "");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    File checkpointDir = File.createTempFile(
+        "testPutFileResumeKeptOnTransientError", "");
+    checkpointDir.delete();
+    checkpointDir.mkdirs();
+    checkpointDir.deleteOnExit();
+    FDSClientConfiguration resumableConfig = new FDSClientConfiguration()
+        .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+        .withUnitTestMode(true)
+        .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+        .withUploadCheckpointDir(checkpointDir);
+    GalaxyFDSClient resumableClient = new GalaxyFDSClientImpl(resumableConfig);
+
+    try {
+      resumableClient.putObject(bucketName, objectName, file);
+      fail("Upload parts 2 and 3 fail, should fail");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+    // Both failed parts are retried, and the upload is kept
+    for (int partNumber = 2; partNumber <= numParts; partNumber++) {
+      baseUriMockRule.verify(resumableConfig.getMaxRetryTimes(),
+          putRequestedFor(urlEqualTo(getUploadPartUrl(bucketName, objectName,
+              uploadId, partNumber))));
+    }
+    assertEquals(1, checkpointDir.listFiles().length);
+    baseUriMockRule.verify(0, deleteRequestedFor(urlEqualTo(uploadUrl)));
+
+    for (int partNumber = 2; partNumber <= numParts; partNumber++) {
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+              Integer.toString(partNumber))))));
+    }
+    PutObjectResult result = resumableClient.putObject(bucketName, objectName,
+        file);
+    assertEquals(signature, result.getSignature());
+    assertEquals(0, checkpointDir.listFiles().length);
+    baseUriMockRule.verify(1, putRequestedFor(urlEqualTo(initMultipartUrl)));
+    baseUriMockRule.verify(1, putRequestedFor(urlEqualTo(
+        getUploadPartUrl(bucketName, objectName, uploadId, 1))));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testInFlightUploadPartsLimit() throws Exception {
+    int numParts = 6;
+    int maxInFlightParts = 2;
+    int partDelayMs = 500;
+    String bucketName = "testInFlightUploadPartsLimit_bucket";
+    String objectName = "testInFlightUploadPartsLimit_object";
+    String failedObjectName = "testInFlightUploadPartsLimit_failed";
+    String uploadId = "8964";
+
+    for (String name : Arrays.asList(objectName, failedObjectName)) {
+      InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+      initMultipartUploadResult.setBucketName(bucketName);
+      initMultipartUploadResult.setObjectName(name);
+      initMultipartUploadResult.setUploadId(uploadId);
+      baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/" + name
+          + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN)).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(initMultipartUploadResult))));
+      for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+        baseUriMockRule.stubFor(put(urlEqualTo(
+            getUploadPartUrl(bucketName, name, uploadId, partNumber))).willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withFixedDelay(partDelayMs)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+                Integer.toString(partNumber))))));
+      }
+    }
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature("signature");
+    baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(putObjectResult))));
+    // Part 1 of the failed object fails at once
+    String abortMultipartUrl = "/" + bucketName + "/" + failedObjectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+    baseUriMockRule.stubFor(put(urlEqualTo(
+        getUploadPartUrl(bucketName, failedObjectName, uploadId, 1))).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_NOT_FOUND)));
+    baseUriMockRule.stubFor(delete(urlEqualTo(abortMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)));
+
+    // More upload threads than in-flight parts
+    GalaxyFDSClient limitedClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize)
+            .withThreadPoolCoreSize(numParts)
+            .withMaxInFlightUploadParts(maxInFlightParts));
+    byte[] data = new byte[partSize * numParts];
+    Arrays.fill(data, (byte) 'a');
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    limitedClient.putObject(bucketName, objectName,
+        new ByteArrayInputStream(data), metadata);
+
+    // A part is sent only after an earlier one has been responded, so the
+    // parts sent within one delay are all in flight at once
+    List<Long> startTimes = getPartStartTimes(bucketName, objectName,
+        uploadId, numParts);
+    assertEquals(numParts, startTimes.size());
+    int maxConcurrentParts = 0;
+    for (int i = 0; i < startTimes.size(); i++) {
+      int concurrentParts = 0;
+      for (int j = i; j < startTimes.size()
+          && startTimes.get(j) - startTimes.get(i) < partDelayMs - 100; j++) {
+        concurrentParts++;
+      }
+      maxConcurrentParts = Math.max(maxConcurrentParts, concurrentParts);
+    }
+    assertEquals(maxInFlightParts, maxConcurrentParts);
+
+    try {
+      limitedClient.putObject(bucketName, failedObjectName,
+          new ByteArrayInputStream(data), metadata);
+      fail("Upload part 1 fails, should fail");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+    // The upload is aborted only after the part in flight is done
+    startTimes = getPartStartTimes(bucketName, failedObjectName, uploadId,
+        numParts);
+    assertTrue(startTimes.size() <= maxInFlightParts + 1);
+    List<LoggedRequest> aborts = WireMock.findAll(
+        deleteRequestedFor(urlEqualTo(abortMultipartUrl)));
+    assertEquals(1, aborts.size());
+    assertTrue(aborts.get(0).getLoggedDate().getTime()
+        >= startTimes.get(startTimes.size() - 1) + partDelayMs);
+    limitedClient.shutdown();
+  }
+
+  /**
+   * Gets the times the parts were received by the server, sorted
+   */
+  private List<Long> getPartStartTimes(String bucketName, String objectName,
+      String uploadId, int numParts) {
+    List<Long> startTimes = new ArrayList<Long>();
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      for (LoggedRequest request : WireMock.findAll(putRequestedFor(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))))) {
+        startTimes.add(request.getLoggedDate().getTime());
+      }
+    }
+    Collections.sort(startTimes);
+    return startTimes;
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutRetryFail() {
+    int numParts = 3;
+    String bucketName = "testPutRetryFail_bucket";
+    String objectName = "testPutRetryFail_object";
+    String uploadId = "8964";
+    String initMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
+    String abortMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+    String checkObjectUrl = "/" + bucketName + "/" + objectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN;;
+
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      if (partNumber != numParts) {
+        UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
+            Integer.toString(partNumber));
+        baseUriMockRule.stubFor(put(urlEqualTo(
+            getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(uploadPartResult))));
+      } else {
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
+            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+      }
+    }
+    baseUriMockRule.stubFor(delete(urlEqualTo(abortMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)));
+    baseUriMockRule.stubFor(head(urlEqualTo(checkObjectUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_NOT_FOUND)));
+
+    byte[] data = new byte[(int)
+        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
+    Arrays.fill(data, (byte) 1);
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    InputStream in = new ByteArrayInputStream(data);
+    try {
+      client.putObject(bucketName, objectName, in, metadata);
+      fail("should fail in uploading the third part");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    try {
+      assertFalse(client.doesObjectExist(bucketName, objectName));
+    } catch (GalaxyFDSClientException e) {
+      fail("should not throw exception");
+    }
+
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(initMultipartUrl)));
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      if (partNumber != numParts) {
+        baseUriMockRule.verify(putRequestedFor(
+            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+      } else {
+        baseUriMockRule.verify(3, putRequestedFor(
+            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+      }
+      baseUriMockRule.verify(deleteRequestedFor(urlEqualTo(abortMultipartUrl)));
+    }
+    baseUriMockRule.verify(headRequestedFor(urlEqualTo(checkObjectUrl)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutRetrySuccess() {
+    int numParts = 3;
+    String bucketName = "testPutRetrySuccess_bucket";
+    String objectName = "testPutRetrySuccess_object";
+    String uploadId = "8964";
+    String signature = "abcdefg";
+    long expire = 123456;
+    String initMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
+    String completeMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&expires=" + expire + "&serviceToken="
+        + SSO_SERVICE_TOKEN;
+
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE,
+            ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    List<UploadPartResult> uploadPartResults = new ArrayList<UploadPartResult>(numParts);
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
+          Integer.toString(partNumber));
+      if (partNumber != 2) {
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId,
+            partNumber))).willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(uploadPartResult))));
+      } else {
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
+            .inScenario("Retry")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR))
+            .willSetStateTo("second"));
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
+            .inScenario("Retry")
+            .whenScenarioStateIs("second")
+            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR))
+            .willSetStateTo("last"));
+        baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber)))
+            .inScenario("Retry")
+            .whenScenarioStateIs("last")
+            .willReturn(aResponse()
+                .withStatus(HttpStatus.SC_OK)
+                .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+                .withBody(new Gson().toJson(uploadPartResult))));
+      }
+      uploadPartResults.add(uploadPartResult);
+    }
+    UploadPartResultList uploadPartResultList = new UploadPartResultList();
+    uploadPartResultList.setUploadPartResultList(uploadPartResults);
+
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature(signature);
+    baseUriMockRule.stubFor(put(urlEqualTo(completeMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    byte[] data = new byte[(int)
+        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
+    Arrays.fill(data, (byte) 1);
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    InputStream in = new ByteArrayInputStream(data);
+    try {
+      List<UserParam> params = new ArrayList<UserParam>(1);
+      params.add(new ExpiresParam(expire));
+      MyProgressListener listener = new MyProgressListener();
+      PutObjectResult result = client.putObject(bucketName, objectName, in,
+          metadata, params, listener);
+      assertNotNull(result);
+      assertEquals(SSO_SERVICE_TOKEN, result.getAccessKeyId());
+      assertEquals(bucketName, result.getBucketName());
+      assertEquals(objectName, result.getObjectName());
+      assertEquals(Long.MAX_VALUE, result.getExpires());
+      assertEquals(signature, result.getSignature());
+      assertEquals(1.0, listener.getTransferredPercentage());
+    } catch (GalaxyFDSClientException e) {
+      System.out.println(Util.getStackTrace(e));
+      fail("should not throw any exceptions");
+    }
+
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(initMultipartUrl)));
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      if (partNumber != 2) {
+        baseUriMockRule.verify(putRequestedFor(
+            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+      } else {
+        baseUriMockRule.verify(3, putRequestedFor(
+            urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+      }
+    }
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl))
+        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
+        .withRequestBody(equalToJson(new Gson().toJson(uploadPartResultList))));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutStreamReusedPartBuffers() {
+    int numParts = 6;
+    int retriedPartNumber = 3;
+    String bucketName = "testPutStreamReusedPartBuffers_bucket";
+    String objectName = "testPutStreamReusedPartBuffers_object";
+    String uploadId = "8964";
+    String initMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN;
+    String completeMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      String uploadPartUrl = getUploadPartUrl(bucketName, objectName, uploadId,
+          partNumber);
+      String uploadPartResult = new Gson().toJson(new UploadPartResult(
+          partNumber, partSize, Integer.toString(partNumber)));
+      if (partNumber != retriedPartNumber) {
+        baseUriMockRule.stubFor(put(urlEqualTo(uploadPartUrl)).willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(uploadPartResult)));
+      } else {
+        baseUriMockRule.stubFor(put(urlEqualTo(uploadPartUrl))
+            .inScenario("RetryReusedPartBuffer")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR))
+            .willSetStateTo("last"));
+        baseUriMockRule.stubFor(put(urlEqualTo(uploadPartUrl))
+            .inScenario("RetryReusedPartBuffer")
+            .whenScenarioStateIs("last")
+            .willReturn(aResponse()
+                .withStatus(HttpStatus.SC_OK)
+                .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+                .withBody(uploadPartResult)));
+      }
+    }
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature("signature");
+    baseUriMockRule.stubFor(put(urlEqualTo(completeMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    // Fewer in-flight parts than parts, so the part buffers are reused
+    GalaxyFDSClient limitedClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize)
+            .withMaxInFlightUploadParts(2));
+    byte[] data = new byte[partSize * (numParts - 1) + partSize / 2];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i / partSize);
+    }
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    try {
+      PutObjectResult result = limitedClient.putObject(bucketName, objectName,
+          new ByteArrayInputStream(data), metadata);
+      assertNotNull(result);
+    } catch (GalaxyFDSClientException e) {
+      System.out.println(Util.getStackTrace(e));
+      fail("should not throw any exceptions");
+    } finally {
+      limitedClient.shutdown();
+    }
+
+    // Each part, including the resent one, carries its own region of data
+    String dataString = new String(data);
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      String subString = dataString.substring((partNumber - 1) * partSize,
+          Math.min(partNumber * partSize, data.length));
+      baseUriMockRule.verify(partNumber == retriedPartNumber ? 2 : 1,
+          putRequestedFor(urlEqualTo(getUploadPartUrl(bucketName, objectName,
+              uploadId, partNumber)))
+          .withHeader(HttpHeaders.CONTENT_LENGTH,
+              equalTo(Integer.toString(subString.length())))
+          .withRequestBody(equalTo(subString)));
+    }
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutAdaptivePartSize() {
+    String bucketName = "testPutAdaptivePartSize_bucket";
+    String objectName = "testPutAdaptivePartSize_object";
+    String uploadId = "8964";
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    for (int partNumber = 1; partNumber <= 2; partNumber++) {
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(new UploadPartResult(partNumber, partSize,
+              Integer.toString(partNumber))))));
+    }
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature("signature");
+    baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse()
+            .withStatus(HttpStatus.SC_OK)
+            .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+            .withBody(new Gson().toJson(putObjectResult))));
+
+    // The first part starts from the initial size, not the small part size
+    GalaxyFDSClient adaptiveClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize)
+            .withAdaptiveUploadPartSize(true));
+    int initialPartSize = FDSClientConfiguration.DEFAULT_INITIAL_UPLOAD_PART_SIZE;
+    byte[] data = new byte[initialPartSize + partSize];
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    try {
+      adaptiveClient.putObject(bucketName, objectName,
+          new ByteArrayInputStream(data), metadata);
+    } catch (GalaxyFDSClientException e) {
+      System.out.println(Util.getStackTrace(e));
+      fail("should not throw any exceptions");
+    } finally {
+      adaptiveClient.shutdown();
+    }
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(
+        getUploadPartUrl(bucketName, objectName, uploadId, 1)))
+        .withHeader(HttpHeaders.CONTENT_LENGTH,
+            equalTo(Integer.toString(initialPartSize))));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPost() {
+    int numParts = 3;
+    String bucketName = "testPost_bucket";
+    String objectName = "testPost_object";
+    String uploadId = "8964";
+    String signature = "signature";
+    String initMultipartUrl = "/" + bucketName + "/"  + "?uploads&serviceToken="
+        + SSO_SERVICE_TOKEN;
+    String completeMultipartUrl = "/" + bucketName + "/" + objectName
+        + "?uploadId=" + uploadId + "&serviceToken=" + SSO_SERVICE_TOKEN;
+
+    InitMultipartUploadResult initMultipartUploadResult = new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(post(urlEqualTo(initMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    List<UploadPartResult> uploadPartResults = new ArrayList<UploadPartResult>(numParts);
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      UploadPartResult uploadPartResult = new UploadPartResult(partNumber, partSize,
+          Integer.toString(partNumber));
+      baseUriMockRule.stubFor(put(urlEqualTo(
+          getUploadPartUrl(bucketName, objectName, uploadId, partNumber))).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(uploadPartResult))));
+      uploadPartResults.add(uploadPartResult);
+    }
+    UploadPartResultList uploadPartResultList = new UploadPartResultList();
+    uploadPartResultList.setUploadPartResultList(uploadPartResults);
+
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature(signature);
+    baseUriMockRule.stubFor(put(urlEqualTo(completeMultipartUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    byte[] data = new byte[(int)
+        (FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 2.5)];
+    Arrays.fill(data, (byte) 1);
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    InputStream in = new ByteArrayInputStream(data);
+    try {
+      PutObjectResult result = client.putObject(bucketName, in, metadata);
+      assertNotNull(result);
+      assertEquals(SSO_SERVICE_TOKEN, result.getAccessKeyId());
+      assertEquals(bucketName, result.getBucketName());
+      assertEquals(objectName, result.getObjectName());
+      assertEquals(Long.MAX_VALUE, result.getExpires());
+      assertEquals(signature, result.getSignature());
+      assertEquals(config.getBaseUriForUnitTest() + "/" + bucketName + "/"
+          + objectName + "?" + Consts.GALAXY_ACCESS_KEY_ID + "="
+          + SSO_SERVICE_TOKEN + "&" + Consts.EXPIRES + "=" + Long.MAX_VALUE
+          + "&" + Consts.SIGNATURE + "=" + signature,
+          result.getAbsolutePresignedUri());
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("should not throw any exceptions");
+    }
+
+    baseUriMockRule.verify(postRequestedFor(urlEqualTo(initMultipartUrl)));
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      baseUriMockRule.verify(putRequestedFor(
+          urlEqualTo(getUploadPartUrl(bucketName, objectName, uploadId, partNumber))));
+    }
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(completeMultipartUrl))
+        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
+        .withRequestBody(equalToJson(new Gson().toJson(uploadPartResultList))));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPutDirect() {
+    String bucketName = "testPutDirect_bucket";
+    String objectName = "testPutDirect_object";
+    String signature = "signature";
+    String putObjectUrl = "/" + bucketName + "/" + objectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN;
+    String postObjectUrl = "/" + bucketName + "/?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    GalaxyFDSClient directClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize));
+
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature(signature);
+    baseUriMockRule.stubFor(put(urlEqualTo(putObjectUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+    baseUriMockRule.stubFor(post(urlEqualTo(postObjectUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    byte[] data = new byte[partSize / 2];
+    Arrays.fill(data, (byte) 'a');
+    try {
+      ObjectMetadata metadata = new ObjectMetadata();
+      metadata.setContentLength(data.length);
+      PutObjectResult result = directClient.putObject(bucketName, objectName,
+          new ByteArrayInputStream(data), metadata);
+      assertEquals(signature, result.getSignature());
+      assertEquals(config.getBaseUriForUnitTest() + "/" + bucketName + "/"
+          + objectName + "?" + Consts.GALAXY_ACCESS_KEY_ID + "="
+          + SSO_SERVICE_TOKEN + "&" + Consts.EXPIRES + "=" + Long.MAX_VALUE
+          + "&" + Consts.SIGNATURE + "=" + signature,
+          result.getAbsolutePresignedUri());
+
+      metadata = new ObjectMetadata();
+      metadata.setContentLength(data.length);
+      result = directClient.putObject(bucketName,
+          new ByteArrayInputStream(data), metadata);
+      assertEquals(objectName, result.getObjectName());
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("should not throw any exceptions");
+    }
+
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(putObjectUrl))
+        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
+        .withHeader(HttpHeaders.CONTENT_LENGTH,
+            equalTo(Integer.toString(data.length)))
+        .withHeader(HttpHeaders.CONTENT_TYPE,
+            equalTo(Consts.APPLICATION_OCTET_STREAM))
+        .withRequestBody(equalTo(new String(data))));
+    baseUriMockRule.verify(postRequestedFor(urlEqualTo(postObjectUrl))
+        .withRequestBody(equalTo(new String(data))));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetInvalidParam() {
+    String bucketName = "testGetInvalidParam_bucket";
+    String objectName = "testGetInvalidParam_object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
     byte[] data = new byte[FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE];
 
     baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
         .withStatus(HttpStatus.SC_OK)
         .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
-        .withBody(data)));
-    try {
-      client.getObject(bucketName, objectName, new File("/root/no_permission"));
-      fail("Have no rights to access file, should fail");
-    } catch (GalaxyFDSClientException e) {
-      System.out.print(Util.getStackTrace(e));
-    }
+        .withBody(data)));
+    try {
+      client.getObject(bucketName, objectName, new File("/root/no_permission"));
+      fail("Have no rights to access file, should fail");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+
+    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(HttpStatus.SC_FORBIDDEN)));
+    try {
+      client.getObject(bucketName, objectName);
+      fail("Have no rights to access file, should fail");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+    try {
+      client.getObject(bucketName, objectName);
+      fail("Have no rights to access file, should fail");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetNormal() {
+    String bucketName = "testGetNormal_bucket";
+    String objectName = "testGetNormal_object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    int size = FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 10;
+    byte[] data = new byte[size];
+    Arrays.fill(data, (byte) 2);
+
+    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(size))
+        .withBody(data)));
+    try {
+      FDSObject object = client.getObject(bucketName, objectName);
+      assertNotNull(object);
+      assertEquals(data.length, object.getObjectMetadata().getContentLength());
+      assertEquals(ContentType.APPLICATION_OCTET_STREAM.toString(),
+          object.getObjectMetadata().getContentType());
+      InputStream in = object.getObjectContent();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+      byte[] buffer = new byte[partSize];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        out.write(buffer, 0, bytesRead);
+      }
+      assertArrayEquals(data, out.toByteArray());
+    } catch (Exception e) {
+      fail("Should not throw any exception here");
+    }
+    baseUriMockRule.verify(getRequestedFor(urlEqualTo(url)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetRange() {
+    String bucketName = "testGetRange_bucket";
+    String objectName = "testGetRange_object";
+    long expire = 123456;
+    String url = "/" + bucketName + "/" + objectName + "?expires=" + expire
+        + "&serviceToken=" + SSO_SERVICE_TOKEN;
+    int numParts = 10;
+    int size = partSize * numParts;
+    int off = (int) (2.5 * partSize);
+    byte[] data = new byte[size];
+    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
+      Arrays.fill(data, (partNumber - 1) * partSize, partNumber * partSize,
+          (byte) partNumber);
+    }
+
+    byte[] rangeData = Arrays.copyOfRange(data, off, size);
+    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(size - off))
+        .withHeader(HttpHeaders.CONTENT_RANGE, "bytes=" + Integer.toString(off) + "-")
+        .withBody(rangeData)));
+
+    try {
+      List<UserParam> params = new ArrayList<UserParam>(1);
+      params.add(new ExpiresParam(expire));
+      FDSObject object = client.getObject(bucketName, objectName, off, params, null);
+      assertNotNull(object);
+      assertEquals(rangeData.length, object.getObjectMetadata().getContentLength());
+      assertEquals(ContentType.APPLICATION_OCTET_STREAM.toString(),
+          object.getObjectMetadata().getContentType());
+      InputStream in = object.getObjectContent();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+      byte[] buffer = new byte[FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        out.write(buffer, 0, bytesRead);
+      }
+      assertArrayEquals(rangeData, out.toByteArray());
+    } catch (Exception e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not throw any exception here");
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetFileInParallel() throws IOException {
+    String bucketName = "testGetFileInParallel_bucket";
+    String objectName = "testGetFileInParallel_object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    int rangeSize = 4096;
+    byte[] data = new byte[(int) (rangeSize * 2.5)];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i / rangeSize);
+    }
+    String etag = "\"etag\"";
+    for (int offset = 0; offset < data.length; offset += rangeSize) {
+      int end = Math.min(offset + rangeSize, data.length);
+      MappingBuilder mappingBuilder = get(urlEqualTo(url))
+          .withHeader(HttpHeaders.RANGE,
+              equalTo("bytes=" + offset + "-" + (end - 1)));
+      if (offset > 0) {
+        // The later ranges must be of the same version as the first one
+        mappingBuilder.withHeader(HttpHeaders.IF_MATCH, equalTo(etag));
+      }
+      baseUriMockRule.stubFor(mappingBuilder.willReturn(aResponse()
+          .withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+          .withHeader(HttpHeaders.CONTENT_RANGE,
+              "bytes " + offset + "-" + (end - 1) + "/" + data.length)
+          .withHeader(HttpHeaders.ETAG, etag)
+          .withBody(Arrays.copyOfRange(data, offset, end))));
+    }
+    // The server doesn't support range for this object
+    String noRangeUrl = "/" + bucketName + "/" + objectName + "_norange"
+        + "?serviceToken=" + SSO_SERVICE_TOKEN;
+    baseUriMockRule.stubFor(get(urlEqualTo(noRangeUrl)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+        .withBody(data)));
+
+    GalaxyFDSClient parallelClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withParallelDownload(true)
+            .withDownloadRangeSize(rangeSize));
+    File file = File.createTempFile("testGetFileInParallel", "");
+    file.deleteOnExit();
+    try {
+      MyProgressListener listener = new MyProgressListener();
+      ObjectMetadata metadata = parallelClient.getObject(bucketName,
+          objectName, file, null, listener);
+      assertEquals(data.length, metadata.getContentLength());
+      assertEquals(1.0, listener.getTransferredPercentage());
+      assertArrayEquals(data, readFile(file));
+
+      parallelClient.getObject(bucketName, objectName + "_norange", file);
+      assertArrayEquals(data, readFile(file));
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not raise exception");
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetFileInParallelObjectChanged() throws IOException {
+    String bucketName = "testGetFileInParallelObjectChanged_bucket";
+    int rangeSize = 4096;
+    byte[] data = new byte[rangeSize * 3];
+    Arrays.fill(data, (byte) 'a');
+    String etag = "\"etag\"";
+    // The object is overwritten after the first range, the server either
+    // checks If-Match or ignores it and sends the new version
+    String[] objectNames = {"precondition_failed", "etag_changed"};
+    for (String objectName : objectNames) {
+      String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+          + SSO_SERVICE_TOKEN;
+      baseUriMockRule.stubFor(get(urlEqualTo(url))
+          .withHeader(HttpHeaders.RANGE, equalTo("bytes=0-" + (rangeSize - 1)))
+          .willReturn(aResponse()
+          .withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+          .withHeader(HttpHeaders.CONTENT_RANGE,
+              "bytes 0-" + (rangeSize - 1) + "/" + data.length)
+          .withHeader(HttpHeaders.ETAG, etag)
+          .withBody(Arrays.copyOfRange(data, 0, rangeSize))));
+      for (int offset = rangeSize; offset < data.length; offset += rangeSize) {
+        ResponseDefinitionBuilder response = objectName.equals(objectNames[0])
+            ? aResponse().withStatus(HttpStatus.SC_PRECONDITION_FAILED)
+            : aResponse()
+                .withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+                .withHeader(HttpHeaders.CONTENT_RANGE, "bytes " + offset + "-"
+                    + (offset + rangeSize - 1) + "/" + data.length)
+                .withHeader(HttpHeaders.ETAG, "\"new_etag\"")
+                .withBody(Arrays.copyOfRange(data, offset, offset + rangeSize));
+        baseUriMockRule.stubFor(get(urlEqualTo(url))
+            .withHeader(HttpHeaders.RANGE, equalTo("bytes=" + offset + "-"
+                + (offset + rangeSize - 1)))
+            .withHeader(HttpHeaders.IF_MATCH, equalTo(etag))
+            .willReturn(response));
+      }
+    }
+
+    GalaxyFDSClient parallelClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withParallelDownload(true)
+            .withDownloadRangeSize(rangeSize));
+    File file = File.createTempFile("testGetFileInParallelObjectChanged", "");
+    file.deleteOnExit();
+    for (String objectName : objectNames) {
+      try {
+        parallelClient.getObject(bucketName, objectName, file);
+        fail("The object has changed, should fail");
+      } catch (GalaxyFDSClientException e) {
+        System.out.print(Util.getStackTrace(e));
+      }
+      // A changed object is not retried
+      List<LoggedRequest> requests = WireMock.findAll(getRequestedFor(
+          urlEqualTo("/" + bucketName + "/" + objectName + "?serviceToken="
+              + SSO_SERVICE_TOKEN)).withHeader(HttpHeaders.IF_MATCH,
+          equalTo(etag)));
+      assertTrue(requests.size() >= 1);
+      assertTrue(requests.size() <= data.length / rangeSize - 1);
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetFileResume() throws IOException {
+    String bucketName = "testGetFileResume_bucket";
+    String objectName = "testGetFileResume_object";
+    String uri = config.getBaseUriForUnitTest() + "/" + bucketName + "/"
+        + objectName;
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    byte[] data = new byte[partSize * 2];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i / partSize);
+    }
+    baseUriMockRule.stubFor(get(urlEqualTo(url))
+        .withHeader(HttpHeaders.RANGE, equalTo("bytes=" + partSize + "-"))
+        .withHeader(HttpHeaders.IF_RANGE, equalTo("v1"))
+        .willReturn(aResponse()
+        .withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+        .withHeader(HttpHeaders.ETAG, "v1")
+        .withHeader(HttpHeaders.CONTENT_RANGE, "bytes " + partSize + "-"
+            + (data.length - 1) + "/" + data.length)
+        .withBody(Arrays.copyOfRange(data, partSize, data.length))));
+    // The object has changed since the last download
+    baseUriMockRule.stubFor(get(urlEqualTo(url))
+        .withHeader(HttpHeaders.IF_RANGE, equalTo("v0"))
+        .willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.ETAG, "v1")
+        .withBody(data)));
+
+    GalaxyFDSClient resumableClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withResumableDownload(true));
+    File file = File.createTempFile("testGetFileResume", "");
+    file.deleteOnExit();
+    File checkpointFile = new File(file.getPath() + ".fdsresume");
+    checkpointFile.deleteOnExit();
+    for (String validator : new String[] {"v1", "v0"}) {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(data, 0, partSize);
+      } finally {
+        out.close();
+      }
+      DownloadCheckpoint.save(file, uri, validator);
+
+      try {
+        MyProgressListener listener = new MyProgressListener();
+        ObjectMetadata metadata = resumableClient.getObject(bucketName,
+            objectName, file, null, listener);
+        assertEquals(data.length, metadata.getContentLength());
+        assertEquals(1.0, listener.getTransferredPercentage());
+        assertArrayEquals(data, readFile(file));
+        assertFalse(checkpointFile.exists());
+      } catch (GalaxyFDSClientException e) {
+        System.out.print(Util.getStackTrace(e));
+        fail("Should not raise exception");
+      }
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGetFileResumeNotParallel() throws IOException {
+    String bucketName = "testGetFileResumeNotParallel_bucket";
+    String objectName = "testGetFileResumeNotParallel_object";
+    String uri = config.getBaseUriForUnitTest() + "/" + bucketName + "/"
+        + objectName;
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    byte[] data = new byte[partSize * 2];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i / partSize);
+    }
+    baseUriMockRule.stubFor(get(urlEqualTo(url))
+        .withHeader(HttpHeaders.RANGE, equalTo("bytes=" + partSize + "-"))
+        .withHeader(HttpHeaders.IF_RANGE, equalTo("v1"))
+        .willReturn(aResponse()
+        .withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+        .withHeader(HttpHeaders.ETAG, "v1")
+        .withHeader(HttpHeaders.CONTENT_RANGE, "bytes " + partSize + "-"
+            + (data.length - 1) + "/" + data.length)
+        .withBody(Arrays.copyOfRange(data, partSize, data.length))));
+
+    // Resumable download takes precedence over parallel download
+    GalaxyFDSClient resumableClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withResumableDownload(true)
+            .withParallelDownload(true)
+            .withDownloadRangeSize(partSize));
+    File file = File.createTempFile("testGetFileResumeNotParallel", "");
+    file.deleteOnExit();
+    File checkpointFile = new File(file.getPath() + ".fdsresume");
+    checkpointFile.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data, 0, partSize);
+    } finally {
+      out.close();
+    }
+    DownloadCheckpoint.save(file, uri, "v1");
+
+    try {
+      ObjectMetadata metadata = resumableClient.getObject(bucketName,
+          objectName, file, null, null);
+      assertEquals(data.length, metadata.getContentLength());
+      assertArrayEquals(data, readFile(file));
+      assertFalse(checkpointFile.exists());
+      baseUriMockRule.verify(1, getRequestedFor(urlEqualTo(url)));
+      baseUriMockRule.verify(0, getRequestedFor(urlEqualTo(url))
+          .withHeader(HttpHeaders.RANGE, equalTo("bytes=0-"
+              + (partSize - 1))));
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+      fail("Should not raise exception");
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testDownloadManager() throws Exception {
+    String bucketName = "testDownloadManager_bucket";
+    String[] objectNames = {"first", "low", "high"};
+    for (String objectName : objectNames) {
+      baseUriMockRule.stubFor(get(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+          .willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withFixedDelay(objectName.equals("first") ? 500 : 0)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+          .withBody(objectName.getBytes())));
+    }
+
+    // Only one download at a time, the others wait for the first one
+    FDSDownloadManager downloadManager = new FDSDownloadManager(
+        (GalaxyFDSClientImpl) client, 1, 1);
+    final List<String> finishedObjects =
+        Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch latch = new CountDownLatch(objectNames.length);
+    List<FDSDownloadManager.DownloadTask> tasks =
+        new ArrayList<FDSDownloadManager.DownloadTask>();
+    List<File> files = new ArrayList<File>();
+    try {
+      for (int i = 0; i < objectNames.length; i++) {
+        final String objectName = objectNames[i];
+        File file = File.createTempFile("testDownloadManager", "");
+        file.deleteOnExit();
+        files.add(file);
+        tasks.add(downloadManager.download(bucketName, objectName, file, null,
+            i, null, new FDSCallback<ObjectMetadata>() {
+              @Override
+              public void onSuccess(ObjectMetadata result) {
+                finishedObjects.add(objectName);
+                latch.countDown();
+              }
+
+              @Override
+              public void onFailure(Exception e) {
+              }
+            }));
+      }
+      // The same download is joined
+      assertTrue(tasks.get(1) == downloadManager.download(bucketName,
+          objectNames[1], files.get(1), null, 0, null, null));
+
+      for (FDSDownloadManager.DownloadTask task : tasks) {
+        task.get();
+      }
+      latch.await();
+      assertEquals(Arrays.asList("first", "high", "low"), finishedObjects);
+      for (int i = 0; i < objectNames.length; i++) {
+        assertArrayEquals(objectNames[i].getBytes(), readFile(files.get(i)));
+        baseUriMockRule.verify(1, getRequestedFor(urlEqualTo("/" + bucketName
+            + "/" + objectNames[i] + "?serviceToken=" + SSO_SERVICE_TOKEN)));
+      }
+    } finally {
+      downloadManager.shutdown();
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testDownloadManagerCancel() throws Exception {
+    String bucketName = "testDownloadManagerCancel_bucket";
+    String[] objectNames = {"slow", "next"};
+    for (String objectName : objectNames) {
+      baseUriMockRule.stubFor(get(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+          .willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withFixedDelay(objectName.equals("slow") ? 60 * 1000 : 0)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+          .withBody(objectName.getBytes())));
+    }
+
+    FDSDownloadManager downloadManager = new FDSDownloadManager(
+        (GalaxyFDSClientImpl) client, 1, 1);
+    try {
+      File slowFile = File.createTempFile("testDownloadManagerCancel", "");
+      slowFile.deleteOnExit();
+      File nextFile = File.createTempFile("testDownloadManagerCancel", "");
+      nextFile.deleteOnExit();
+      FDSDownloadManager.DownloadTask slowTask = downloadManager.download(
+          bucketName, objectNames[0], slowFile, null, 0, null, null);
+      FDSDownloadManager.DownloadTask nextTask = downloadManager.download(
+          bucketName, objectNames[1], nextFile, null, 0, null, null);
+      assertTrue(slowTask == downloadManager.download(bucketName,
+          objectNames[0], slowFile, null, 0, null, null));
+      while (WireMock.findAll(getRequestedFor(urlEqualTo("/" + bucketName
+          + "/" + objectNames[0] + "?serviceToken=" + SSO_SERVICE_TOKEN)))
+          .isEmpty()) {
+        Thread.sleep(10);
+      }
+
+      // The download goes on until every caller has cancelled it
+      assertFalse(slowTask.cancel(false));
+      assertFalse(slowTask.isCancelled());
+      assertTrue(slowTask.cancel(false));
+      assertTrue(slowTask.isCancelled());
+
+      // The request in flight is aborted rather than waited for
+      assertEquals(objectNames[1].length(), nextTask.get(10, TimeUnit.SECONDS)
+          .getContentLength());
+      assertArrayEquals(objectNames[1].getBytes(), readFile(nextFile));
+    } finally {
+      downloadManager.shutdown();
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testDownloadManagerReprioritize() throws Exception {
+    String bucketName = "testDownloadManagerReprioritize_bucket";
+    String[] objectNames = {"first", "low", "raised"};
+    for (String objectName : objectNames) {
+      baseUriMockRule.stubFor(get(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+          .willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withFixedDelay(objectName.equals("first") ? 500 : 0)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+          .withBody(objectName.getBytes())));
+    }
+
+    FDSDownloadManager downloadManager = new FDSDownloadManager(
+        (GalaxyFDSClientImpl) client, 1, 1);
+    final List<String> finishedObjects =
+        Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch latch = new CountDownLatch(objectNames.length);
+    List<FDSDownloadManager.DownloadTask> tasks =
+        new ArrayList<FDSDownloadManager.DownloadTask>();
+    try {
+      for (int i = 0; i < objectNames.length; i++) {
+        final String objectName = objectNames[i];
+        File file = File.createTempFile("testDownloadManagerReprioritize", "");
+        file.deleteOnExit();
+        tasks.add(downloadManager.download(bucketName, objectName, file, null,
+            1, null, new FDSCallback<ObjectMetadata>() {
+              @Override
+              public void onSuccess(ObjectMetadata result) {
+                finishedObjects.add(objectName);
+                latch.countDown();
+              }
+
+              @Override
+              public void onFailure(Exception e) {
+              }
+            }));
+      }
+      // The pending download is moved ahead of the earlier one
+      tasks.get(2).setPriority(2);
+      assertEquals(2, tasks.get(2).getPriority());
+
+      latch.await();
+      assertEquals(Arrays.asList("first", "raised", "low"), finishedObjects);
+    } finally {
+      downloadManager.shutdown();
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testDownloadManagerJoinCompleted() throws Exception {
+    String bucketName = "testDownloadManagerJoinCompleted_bucket";
+    String objectName = "object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+        .withBody(objectName.getBytes())));
 
-    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(HttpStatus.SC_FORBIDDEN)));
-    try {
-      client.getObject(bucketName, objectName);
-      fail("Have no rights to access file, should fail");
-    } catch (GalaxyFDSClientException e) {
-      System.out.print(Util.getStackTrace(e));
-    }
+    FDSDownloadManager downloadManager = new FDSDownloadManager(
+        (GalaxyFDSClientImpl) client, 1, 1);
     try {
-      client.getObject(bucketName, objectName);
-      fail("Have no rights to access file, should fail");
-    } catch (GalaxyFDSClientException e) {
-      System.out.print(Util.getStackTrace(e));
+      File file = File.createTempFile("testDownloadManagerJoinCompleted", "");
+      file.deleteOnExit();
+      final CountDownLatch firstLatch = new CountDownLatch(1);
+      FDSDownloadManager.DownloadTask task = downloadManager.download(
+          bucketName, objectName, file, null, 0, null,
+          new FDSCallback<ObjectMetadata>() {
+            @Override
+            public void onSuccess(ObjectMetadata result) {
+              firstLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+            }
+          });
+      firstLatch.await();
+
+      // A completed download is started again rather than joined
+      final CountDownLatch secondLatch = new CountDownLatch(1);
+      FDSDownloadManager.DownloadTask secondTask = downloadManager.download(
+          bucketName, objectName, file, null, 0, null,
+          new FDSCallback<ObjectMetadata>() {
+            @Override
+            public void onSuccess(ObjectMetadata result) {
+              secondLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+            }
+          });
+      assertTrue(task != secondTask);
+      secondLatch.await();
+      baseUriMockRule.verify(2, getRequestedFor(urlEqualTo(url)));
+    } finally {
+      downloadManager.shutdown();
     }
   }
 
   @Test(timeout = 120*1000)
-  public void testGetNormal() {
-    String bucketName = "testGetNormal_bucket";
-    String objectName = "testGetNormal_object";
+  public void testMemoryCacheInvalidatedByPut() throws Exception {
+    String bucketName = "testMemoryCacheInvalidatedByPut_bucket";
+    String objectName = "object";
     String url = "/" + bucketName + "/" + objectName + "?serviceToken="
         + SSO_SERVICE_TOKEN;
-    int size = FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE * 10;
-    byte[] data = new byte[size];
-    Arrays.fill(data, (byte) 2);
+    GalaxyFDSClientImpl cachingClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize)
+            .withMemoryCacheSize(1024 * 1024));
+
+    String[] versions = {"v1", "v2"};
+    for (String version : versions) {
+      baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+          .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(version.length()))
+          .withBody(version.getBytes())));
+      // Served from the memory cache the second time
+      for (int i = 0; i < 2; i++) {
+        InputStream in = cachingClient.getObject(bucketName, objectName)
+            .getObjectContent();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int data;
+        while ((data = in.read()) != -1) {
+          out.write(data);
+        }
+        in.close();
+        assertEquals(version, out.toString());
+      }
 
-    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
-        .withStatus(HttpStatus.SC_OK)
-        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
-        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(size))
-        .withBody(data)));
+      // The object is changed by the client itself
+      PutObjectResult putObjectResult = new PutObjectResult();
+      putObjectResult.setBucketName(bucketName);
+      putObjectResult.setObjectName(objectName);
+      putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+      putObjectResult.setExpires(Long.MAX_VALUE);
+      putObjectResult.setSignature("signature");
+      baseUriMockRule.stubFor(put(urlEqualTo(url)).willReturn(aResponse()
+          .withStatus(HttpStatus.SC_OK)
+          .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+          .withBody(new Gson().toJson(putObjectResult))));
+      ObjectMetadata metadata = new ObjectMetadata();
+      metadata.setContentLength(2);
+      cachingClient.putObject(bucketName, objectName,
+          new ByteArrayInputStream("v2".getBytes()), metadata);
+    }
+    baseUriMockRule.verify(2, getRequestedFor(urlEqualTo(url)));
+    cachingClient.shutdown();
+  }
+
+  private byte[] readFile(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
     try {
-      FDSObject object = client.getObject(bucketName, objectName);
-      assertNotNull(object);
-      assertEquals(data.length, object.getObjectMetadata().getContentLength());
-      assertEquals(ContentType.APPLICATION_OCTET_STREAM.toString(),
-          object.getObjectMetadata().getContentType());
-      InputStream in = object.getObjectContent();
-      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
       byte[] buffer = new byte[partSize];
       int bytesRead;
       while ((bytesRead = in.read(buffer)) != -1) {
         out.write(buffer, 0, bytesRead);
       }
-      assertArrayEquals(data, out.toByteArray());
-    } catch (Exception e) {
-      fail("Should not throw any exception here");
+      return out.toByteArray();
+    } finally {
+      in.close();
     }
-    baseUriMockRule.verify(getRequestedFor(urlEqualTo(url)));
   }
 
   @Test(timeout = 120*1000)
-  public void testGetRange() {
-    String bucketName = "testGetRange_bucket";
-    String objectName = "testGetRange_object";
-    long expire = 123456;
-    String url = "/" + bucketName + "/" + objectName + "?expires=" + expire
-        + "&serviceToken=" + SSO_SERVICE_TOKEN;
-    int numParts = 10;
-    int size = partSize * numParts;
-    int off = (int) (2.5 * partSize);
-    byte[] data = new byte[size];
-    for (int partNumber = 1; partNumber <= numParts; partNumber++) {
-      Arrays.fill(data, (partNumber - 1) * partSize, partNumber * partSize,
-          (byte) partNumber);
-    }
-
-    byte[] rangeData = Arrays.copyOfRange(data, off, size);
+  public void testGetFromObjectCache() throws Exception {
+    String bucketName = "testGetFromObjectCache_bucket";
+    String objectName = "testGetFromObjectCache_object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    byte[] data = "cached content".getBytes();
     baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
         .withStatus(HttpStatus.SC_OK)
-        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
-        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(size - off))
-        .withHeader(HttpHeaders.CONTENT_RANGE, "bytes=" + Integer.toString(off) + "-")
-        .withBody(rangeData)));
+        .withHeader(HttpHeaders.ETAG, "\"etag\"")
+        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(data.length))
+        .withBody(data)));
+    baseUriMockRule.stubFor(get(urlEqualTo(url))
+        .withHeader(HttpHeaders.IF_NONE_MATCH, equalTo("\"etag\""))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_NOT_MODIFIED)));
+
+    File cacheDir = File.createTempFile("testGetFromObjectCache", "");
+    cacheDir.delete();
+    cacheDir.deleteOnExit();
+    FDSClientConfiguration cacheConfig = new FDSClientConfiguration()
+        .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+        .withUnitTestMode(true)
+        .withBaseUriForUnitTest("http://localhost:" + WIRE_MOCK_BASE_URI_PORT + "/")
+        .withObjectCacheDir(cacheDir);
+    GalaxyFDSClient cacheClient = new GalaxyFDSClientImpl(cacheConfig);
 
-    try {
-      List<UserParam> params = new ArrayList<UserParam>(1);
-      params.add(new ExpiresParam(expire));
-      FDSObject object = client.getObject(bucketName, objectName, off, params, null);
-      assertNotNull(object);
-      assertEquals(rangeData.length, object.getObjectMetadata().getContentLength());
-      assertEquals(ContentType.APPLICATION_OCTET_STREAM.toString(),
-          object.getObjectMetadata().getContentType());
+    for (int i = 0; i < 2; i++) {
+      FDSObject object = cacheClient.getObject(bucketName, objectName);
       InputStream in = object.getObjectContent();
-      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
-      byte[] buffer = new byte[FDSClientConfiguration.DEFAULT_UPLOAD_PART_SIZE];
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4];
       int bytesRead;
       while ((bytesRead = in.read(buffer)) != -1) {
         out.write(buffer, 0, bytesRead);
       }
-      assertArrayEquals(rangeData, out.toByteArray());
-    } catch (Exception e) {
-      System.out.print(Util.getStackTrace(e));
-      fail("Should not throw any exception here");
+      in.close();
+      assertArrayEquals(data, out.toByteArray());
+      assertEquals(data.length, object.getObjectMetadata().getContentLength());
     }
+    // The second read is revalidated and served from the cache
+    baseUriMockRule.verify(2, getRequestedFor(urlEqualTo(url)));
+    baseUriMockRule.verify(1, getRequestedFor(urlEqualTo(url))
+        .withHeader(HttpHeaders.IF_NONE_MATCH, equalTo("\"etag\"")));
   }
 
   @Test(timeout = 120*1000)
@@ -906,6 +2286,74 @@ public class TestGalaxyFDSClient {
     baseUriMockRule.verify(getRequestedFor(urlEqualTo(getObjectUri)));
   }
 
+  @Test(timeout = 120*1000)
+  public void testOauthTokenStore() throws Exception {
+    StorageAccessToken accessToken = new StorageAccessToken(
+        STORAGE_ACCESS_TOKEN, System.currentTimeMillis() + 3600 * 1000);
+    String getStorageAccessTokenUri = "/?storageAccessToken&appId=" + APP_ID
+        + "&oauthAppId=" + OAUTH_APPID + "&oauthAccessToken=" + OAUTH_ACCESS_TOKEN
+        + "&oauthProvider=" + OAUTH_PROVIDER + "&oauthMacAlgorithm=" + OAUTH_MAC_ALGORITHM
+        + "&oauthMacKey=" + OAUTH_MAC_KEY;
+    baseUriMockRule.stubFor(get(urlEqualTo(getStorageAccessTokenUri)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withBody(new Gson().toJson(accessToken))));
+
+    final AtomicReference<StorageAccessToken> savedToken =
+        new AtomicReference<StorageAccessToken>();
+    StorageAccessTokenStore tokenStore = new StorageAccessTokenStore() {
+      @Override
+      public StorageAccessToken load() {
+        return savedToken.get();
+      }
+
+      @Override
+      public void save(StorageAccessToken token) {
+        savedToken.set(token);
+      }
+    };
+
+    // The second credential reuses the token saved by the first one
+    for (int i = 0; i < 2; i++) {
+      OAuthCredential credential = new OAuthCredential(
+          config.getBaseUriForUnitTest(), APP_ID, OAUTH_APPID,
+          OAUTH_ACCESS_TOKEN, OAUTH_PROVIDER, OAUTH_MAC_KEY,
+          OAUTH_MAC_ALGORITHM, tokenStore);
+      assertEquals("/?appId=" + APP_ID + "&storageAccessToken="
+          + STORAGE_ACCESS_TOKEN, credential.addParam("/"));
+    }
+    assertEquals(STORAGE_ACCESS_TOKEN, savedToken.get().getToken());
+    baseUriMockRule.verify(1,
+        getRequestedFor(urlEqualTo(getStorageAccessTokenUri)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testOauthExpiredTokenRefresh() throws Exception {
+    String getStorageAccessTokenUri = "/?storageAccessToken&appId=" + APP_ID
+        + "&oauthAppId=" + OAUTH_APPID + "&oauthAccessToken=" + OAUTH_ACCESS_TOKEN
+        + "&oauthProvider=" + OAUTH_PROVIDER + "&oauthMacAlgorithm=" + OAUTH_MAC_ALGORITHM
+        + "&oauthMacKey=" + OAUTH_MAC_KEY;
+    baseUriMockRule.stubFor(get(urlEqualTo(getStorageAccessTokenUri)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withBody(new Gson().toJson(new StorageAccessToken("expiring_token",
+            System.currentTimeMillis() + 500)))));
+    OAuthCredential credential = new OAuthCredential(
+        config.getBaseUriForUnitTest(), APP_ID, OAUTH_APPID,
+        OAUTH_ACCESS_TOKEN, OAUTH_PROVIDER, OAUTH_MAC_KEY,
+        OAUTH_MAC_ALGORITHM);
+
+    baseUriMockRule.stubFor(get(urlEqualTo(getStorageAccessTokenUri)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withBody(new Gson().toJson(new StorageAccessToken(
+            STORAGE_ACCESS_TOKEN, System.currentTimeMillis() + 3600 * 1000)))));
+    Thread.sleep(1000);
+
+    // Expired within the min refresh interval, still refreshed at once
+    assertEquals("/?appId=" + APP_ID + "&storageAccessToken="
+        + STORAGE_ACCESS_TOKEN, credential.addParam("/"));
+    baseUriMockRule.verify(2,
+        getRequestedFor(urlEqualTo(getStorageAccessTokenUri)));
+  }
+
   @Test(timeout = 120*1000)
   public void testGetObjectWithSlashInName() {
     String bucketName = "testGetObjectWithSlashInName_bucket";
@@ -941,6 +2389,492 @@ public class TestGalaxyFDSClient {
     baseUriMockRule.verify(getRequestedFor(urlEqualTo(url)));
   }
 
+  @Test(timeout = 120*1000)
+  public void testDoesObjectsExist() throws GalaxyFDSClientException {
+    String bucketName = "testDoesObjectsExist_bucket";
+    List<ObjectKey> keys = new ArrayList<ObjectKey>();
+    for (int i = 0; i < 20; i++) {
+      String objectName = "object" + i;
+      keys.add(new ObjectKey(bucketName, objectName));
+      baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/"
+          + objectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+          .willReturn(aResponse().withStatus(i % 2 == 0 ? HttpStatus.SC_OK
+              : HttpStatus.SC_NOT_FOUND)));
+    }
+    keys.add(new ObjectKey(bucketName, "object0"));
+
+    Map<ObjectKey, Boolean> existences = client.doesObjectsExist(keys);
+    assertEquals(20, existences.size());
+    int i = 0;
+    for (Map.Entry<ObjectKey, Boolean> entry : existences.entrySet()) {
+      assertEquals(keys.get(i), entry.getKey());
+      assertEquals(i % 2 == 0, entry.getValue().booleanValue());
+      i++;
+    }
+    baseUriMockRule.verify(1, headRequestedFor(urlEqualTo("/" + bucketName
+        + "/object0?serviceToken=" + SSO_SERVICE_TOKEN)));
+
+    String brokenObjectName = "broken";
+    baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/"
+        + brokenObjectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_FORBIDDEN)));
+    keys.add(new ObjectKey(bucketName, brokenObjectName));
+    try {
+      client.doesObjectsExist(keys);
+      fail("Should fail as the server returns 403");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testMetadataCache() throws GalaxyFDSClientException {
+    String bucketName = "testMetadataCache_bucket";
+    String objectName = "testMetadataCache_object";
+    String missingObjectName = "testMetadataCache_missing";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    String missingUrl = "/" + bucketName + "/" + missingObjectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN;
+    baseUriMockRule.stubFor(head(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_LENGTH, "10")));
+    baseUriMockRule.stubFor(head(urlEqualTo(missingUrl)).willReturn(
+        aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
+
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature("signature");
+    baseUriMockRule.stubFor(put(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+
+    GalaxyFDSClient cacheClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(partSize)
+            .withMetadataCacheTtlMs(60 * 1000));
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(cacheClient.doesObjectExist(bucketName, objectName));
+      assertEquals(10, cacheClient.getObjectMetadata(bucketName, objectName)
+          .getContentLength());
+      assertFalse(cacheClient.doesObjectExist(bucketName, missingObjectName));
+      assertNull(cacheClient.getObjectMetadata(bucketName,
+          missingObjectName));
+    }
+    baseUriMockRule.verify(1, headRequestedFor(urlEqualTo(url)));
+    baseUriMockRule.verify(1, headRequestedFor(urlEqualTo(missingUrl)));
+
+    // Putting the object invalidates its cached metadata
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(3);
+    cacheClient.putObject(bucketName, objectName,
+        new ByteArrayInputStream("abc".getBytes()), metadata);
+    assertTrue(cacheClient.doesObjectExist(bucketName, objectName));
+    baseUriMockRule.verify(2, headRequestedFor(urlEqualTo(url)));
+  }
+
+  @Test(timeout = 120*1000)
+  public void testGeneratePresignedUri() throws GalaxyFDSClientException {
+    String bucketName = "testGeneratePresignedUri_bucket";
+    String objectName = "testGeneratePresignedUri_object";
+    GalaxyFDSClient signatureClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SignatureCredential("accessKey", "secretKey"))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest()));
+
+    long now = System.currentTimeMillis();
+    String uri = signatureClient.generatePresignedUri(bucketName, objectName,
+        HttpMethod.GET, 3600 * 1000);
+    String prefix = config.getBaseUriForUnitTest() + "/" + bucketName + "/"
+        + objectName + "?" + Consts.GALAXY_ACCESS_KEY_ID + "=accessKey&"
+        + Consts.EXPIRES + "=";
+    assertTrue(uri.startsWith(prefix));
+    long expires = Long.parseLong(uri.substring(prefix.length(),
+        uri.indexOf('&', prefix.length())));
+    assertTrue(expires >= now + 3600 * 1000);
+    assertTrue(uri.contains("&" + Consts.SIGNATURE + "="));
+
+    // Recently signed URIs are reused, unless they would expire too soon
+    assertEquals(uri, signatureClient.generatePresignedUri(bucketName,
+        objectName, HttpMethod.GET, 3600 * 1000));
+    assertFalse(uri.equals(signatureClient.generatePresignedUri(bucketName,
+        objectName, HttpMethod.GET, 7200 * 1000)));
+    assertFalse(uri.equals(signatureClient.generatePresignedUri(bucketName,
+        objectName, HttpMethod.PUT, 3600 * 1000)));
+
+    try {
+      client.generatePresignedUri(bucketName, objectName, HttpMethod.GET,
+          3600 * 1000);
+      fail("Should fail as SSO credential can't sign URIs");
+    } catch (GalaxyFDSClientException e) {
+      System.out.print(Util.getStackTrace(e));
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testConnectionPoolStats() throws GalaxyFDSClientException {
+    String bucketName = "testConnectionPoolStats_bucket";
+    String objectName = "testConnectionPoolStats_object";
+    baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+    GalaxyFDSClientImpl poolClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withMaxConnectionsPerRoute(4)
+            .withMaxConnections(8));
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(poolClient.doesObjectExist(bucketName, objectName));
+    }
+    ConnectionPoolStats stats = poolClient.getConnectionPoolStats();
+    assertEquals(3, stats.getRequests());
+    assertEquals(0, stats.getLeased());
+    assertEquals(0, stats.getPending());
+    assertEquals(8, stats.getMax());
+    // The kept-alive connection is reused
+    assertEquals(1, stats.getAvailable());
+  }
+
+  @Test(timeout = 120*1000)
+  public void testShutdown() throws GalaxyFDSClientException {
+    String bucketName = "testShutdown_bucket";
+    String objectName = "testShutdown_object";
+    baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+    GalaxyFDSClientImpl reapedClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withIdleConnectionReaper(true));
+
+    assertTrue(reapedClient.doesObjectExist(bucketName, objectName));
+    assertEquals(1, reapedClient.getConnectionPoolStats().getAvailable());
+    reapedClient.shutdown();
+    try {
+      reapedClient.doesObjectExist(bucketName, objectName);
+      fail("The client is shut down");
+    } catch (Exception e) {
+      // Expected
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testShutdownTimeout() throws Exception {
+    final String bucketName = "testShutdownTimeout_bucket";
+    final String objectName = "testShutdownTimeout_object";
+    String uploadId = "8964";
+    InitMultipartUploadResult initMultipartUploadResult =
+        new InitMultipartUploadResult();
+    initMultipartUploadResult.setBucketName(bucketName);
+    initMultipartUploadResult.setObjectName(objectName);
+    initMultipartUploadResult.setUploadId(uploadId);
+    baseUriMockRule.stubFor(put(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?uploads&serviceToken=" + SSO_SERVICE_TOKEN)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(initMultipartUploadResult))));
+    // The part upload never finishes in time
+    baseUriMockRule.stubFor(put(urlEqualTo(getUploadPartUrl(bucketName,
+        objectName, uploadId, 1))).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withFixedDelay(60 * 1000)));
+
+    final GalaxyFDSClientImpl shutdownClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest())
+            .withDirectUploadThreshold(0));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<PutObjectResult> future = executor.submit(
+          new Callable<PutObjectResult>() {
+            @Override
+            public PutObjectResult call() throws Exception {
+              ObjectMetadata metadata = new ObjectMetadata();
+              metadata.setContentLength(partSize);
+              return shutdownClient.putObject(bucketName, objectName,
+                  new ByteArrayInputStream(new byte[partSize]), metadata);
+            }
+          });
+      while (WireMock.findAll(putRequestedFor(urlEqualTo(getUploadPartUrl(
+          bucketName, objectName, uploadId, 1)))).isEmpty()) {
+        Thread.sleep(10);
+      }
+
+      // The upload in progress is stopped rather than waited for
+      long startTime = System.currentTimeMillis();
+      shutdownClient.shutdown(100, TimeUnit.MILLISECONDS);
+      assertTrue(System.currentTimeMillis() - startTime < 10 * 1000);
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail("The upload is stopped");
+      } catch (ExecutionException e) {
+        // Expected
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 120*1000)
+  public void testPrewarm() {
+    baseUriMockRule.stubFor(head(urlEqualTo("/"))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_FORBIDDEN)));
+    GalaxyFDSClientImpl prewarmedClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            .withBaseUriForUnitTest(config.getBaseUriForUnitTest()));
+
+    // The upload and download hosts are the same in unit test mode
+    assertEquals(3, prewarmedClient.prewarm(3));
+    baseUriMockRule.verify(3, headRequestedFor(urlEqualTo("/")));
+    ConnectionPoolStats stats = prewarmedClient.getConnectionPoolStats();
+    assertEquals(3, stats.getRequests());
+    assertEquals(0, stats.getLeased());
+    assertTrue(stats.getAvailable() >= 1);
+    prewarmedClient.shutdown();
+  }
+
+  @Test(timeout = 120*1000)
+  public void testUrlConnectionTransport() throws Exception {
+    checkTransport(HttpTransportType.URL_CONNECTION,
+        "testUrlConnectionTransport_bucket", "Java/.*");
+  }
+
+  @Test(timeout = 120*1000)
+  public void testOkHttpTransport() throws Exception {
+    // Make sure OkHttp is used rather than the fallback
+    assertTrue(HttpTransportFactory.isAvailable(HttpTransportType.OKHTTP));
+    checkTransport(HttpTransportType.OKHTTP, "testOkHttpTransport_bucket",
+        "okhttp/.*");
+  }
+
+  /**
+   * @param userAgentPattern The default user agent of the HTTP stack, which
+   *                         tells what actually sent the requests
+   */
+  private void checkTransport(HttpTransportType transportType,
+      String bucketName, String userAgentPattern) throws Exception {
+    String objectName = "object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    GalaxyFDSClientImpl transportClient = new GalaxyFDSClientImpl(
+        new FDSClientConfiguration()
+            .withCredential(new SSOCredential(SSO_SERVICE_TOKEN))
+            .withUnitTestMode(true)
+            // Unlike HttpClient, the other stacks keep the "//" that a
+            // trailing slash of the base URI would add to the path
+            .withBaseUriForUnitTest("http://localhost:"
+                + WIRE_MOCK_BASE_URI_PORT)
+            .withDirectUploadThreshold(partSize)
+            .withHttpTransportType(transportType));
+    assertNull(transportClient.getConnectionPoolStats());
+
+    PutObjectResult putObjectResult = new PutObjectResult();
+    putObjectResult.setBucketName(bucketName);
+    putObjectResult.setObjectName(objectName);
+    putObjectResult.setAccessKeyId(SSO_SERVICE_TOKEN);
+    putObjectResult.setExpires(Long.MAX_VALUE);
+    putObjectResult.setSignature("signature");
+    baseUriMockRule.stubFor(put(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())
+        .withBody(new Gson().toJson(putObjectResult))));
+    byte[] data = new byte[partSize / 2];
+    Arrays.fill(data, (byte) 'a');
+    baseUriMockRule.stubFor(get(urlEqualTo(url)).willReturn(aResponse()
+        .withStatus(HttpStatus.SC_OK)
+        .withHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_OCTET_STREAM.toString())
+        .withHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(data.length))
+        .withBody(data)));
+
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(data.length);
+    PutObjectResult result = transportClient.putObject(bucketName, objectName,
+        new ByteArrayInputStream(data), metadata);
+    assertEquals(objectName, result.getObjectName());
+    baseUriMockRule.verify(putRequestedFor(urlEqualTo(url))
+        .withHeader(HttpHeaders.AUTHORIZATION, equalTo("SSO"))
+        .withHeader(HttpHeaders.CONTENT_LENGTH,
+            equalTo(Integer.toString(data.length)))
+        .withRequestBody(equalTo(new String(data))));
+
+    FDSObject object = transportClient.getObject(bucketName, objectName);
+    assertEquals(data.length, object.getObjectMetadata().getContentLength());
+    InputStream in = object.getObjectContent();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+    byte[] buffer = new byte[partSize];
+    int bytesRead;
+    while ((bytesRead = in.read(buffer)) != -1) {
+      out.write(buffer, 0, bytesRead);
+    }
+    in.close();
+    assertArrayEquals(data, out.toByteArray());
+    baseUriMockRule.verify(getRequestedFor(urlEqualTo(url))
+        .withHeader("User-Agent", matching(userAgentPattern)));
+    assertFalse(transportClient.doesObjectExist(bucketName, "missing_object"));
+    transportClient.shutdown();
+  }
+
+  @Test(timeout = 120*1000)
+  public void testAsyncDoesObjectExist() throws Exception {
+    String bucketName = "testAsyncDoesObjectExist_bucket";
+    String objectName = "testAsyncDoesObjectExist_object";
+    String brokenObjectName = "testAsyncDoesObjectExist_broken";
+    baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/" + objectName
+        + "?serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+    baseUriMockRule.stubFor(head(urlEqualTo("/" + bucketName + "/"
+        + brokenObjectName + "?serviceToken=" + SSO_SERVICE_TOKEN))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AsyncGalaxyFDSClient asyncClient = new AsyncGalaxyFDSClientImpl(client,
+          executor);
+      final CountDownLatch latch = new CountDownLatch(2);
+      final AtomicReference<Boolean> exists = new AtomicReference<Boolean>();
+      final AtomicReference<Exception> failure =
+          new AtomicReference<Exception>();
+      Future<Boolean> future = asyncClient.doesObjectExist(bucketName,
+          objectName, new FDSCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+              exists.set(result);
+              latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+              latch.countDown();
+            }
+          });
+      Future<Boolean> brokenFuture = asyncClient.doesObjectExist(bucketName,
+          brokenObjectName, new FDSCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+              latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+              failure.set(e);
+              latch.countDown();
+            }
+          });
+
+      assertTrue(future.get());
+      try {
+        brokenFuture.get();
+        fail("Should fail as the server returns 500");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof GalaxyFDSClientException);
+      }
+      latch.await();
+      assertEquals(Boolean.TRUE, exists.get());
+      assertTrue(failure.get() instanceof GalaxyFDSClientException);
+    } finally {
+      executor.shutdown();
+    }
+  }
+  @Test(timeout = 120*1000)
+  public void testAsyncRequestNotRun() throws Exception {
+    String bucketName = "testAsyncRequestNotRun_bucket";
+    String objectName = "testAsyncRequestNotRun_object";
+    String url = "/" + bucketName + "/" + objectName + "?serviceToken="
+        + SSO_SERVICE_TOKEN;
+    baseUriMockRule.stubFor(head(urlEqualTo(url))
+        .willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+
+    final List<Exception> failures =
+        Collections.synchronizedList(new ArrayList<Exception>());
+    FDSCallback<Boolean> callback = new FDSCallback<Boolean>() {
+      @Override
+      public void onSuccess(Boolean result) {
+        fail("Should not succeed");
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        failures.add(e);
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      AsyncGalaxyFDSClient asyncClient = new AsyncGalaxyFDSClientImpl(client,
+          executor);
+      // An invalid argument fails the future, not the caller
+      Future<Boolean> invalidFuture = asyncClient.doesObjectExist(null,
+          objectName, callback);
+      try {
+        invalidFuture.get();
+        fail("Bucket name is null, should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+      }
+
+      // A queued request cancelled by its future is never sent
+      final CountDownLatch isUnblocked = new CountDownLatch(1);
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            isUnblocked.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      Future<Boolean> cancelledFuture = asyncClient.doesObjectExist(bucketName,
+          objectName, callback);
+      assertTrue(cancelledFuture.cancel(false));
+      isUnblocked.countDown();
+      try {
+        cancelledFuture.get();
+        fail("The request is cancelled, should fail");
+      } catch (CancellationException e) {
+      }
+
+      // A request rejected by the executor is reported as a failure
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      Future<Boolean> rejectedFuture = asyncClient.doesObjectExist(bucketName,
+          objectName, callback);
+      assertTrue(rejectedFuture.isDone());
+      try {
+        rejectedFuture.get();
+        fail("The executor is shut down, should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof GalaxyFDSClientException);
+      }
+
+      // The cancelled request doesn't notify the callback
+      assertEquals(2, failures.size());
+      assertTrue(failures.get(0) instanceof IllegalArgumentException);
+      assertTrue(failures.get(1) instanceof GalaxyFDSClientException);
+      baseUriMockRule.verify(0, headRequestedFor(urlEqualTo(url)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
   @Test(timeout = 120 * 1000)
   public void testInvalidObjectMetadata() {
     ObjectMetadata metadata = new ObjectMetadata();
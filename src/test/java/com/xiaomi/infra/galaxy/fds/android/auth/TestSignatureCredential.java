@@ -0,0 +1,141 @@
+package com.xiaomi.infra.galaxy.fds.android.auth;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.message.BasicHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.xiaomi.infra.galaxy.fds.Common;
+import com.xiaomi.infra.galaxy.fds.android.model.HttpHeaders;
+import com.xiaomi.infra.galaxy.fds.android.util.Util;
+import com.xiaomi.infra.galaxy.fds.auth.signature.SignAlgorithm;
+import com.xiaomi.infra.galaxy.fds.auth.signature.Signer;
+import com.xiaomi.infra.galaxy.fds.model.HttpMethod;
+
+public class TestSignatureCredential {
+  private static final String ACCESS_KEY = "key";
+  private static final String SECRET_KEY = "secret";
+
+  @Test
+  public void testStringToSign() throws Exception {
+    Header[] headers = new Header[] {
+        new BasicHeader(Common.CONTENT_TYPE, "text/plain"),
+        new BasicHeader("X-Xiaomi-Meta-B", "1"),
+        new BasicHeader("x-xiaomi-meta-a", "2"),
+        new BasicHeader("x-xiaomi-meta-b", "3"),
+        new BasicHeader(Common.DATE, "Thu, 01 Jan 2015 00:00:00 GMT")
+    };
+    Assert.assertEquals("PUT\n\ntext/plain\nThu, 01 Jan 2015 00:00:00 GMT\n"
+        + "x-xiaomi-meta-a:2\nx-xiaomi-meta-b:1,3\n"
+        + "/bucket/object?partNumber=1&uploadId=id",
+        SignatureCredential.getStringToSign(HttpMethod.PUT, new URI(
+            "http://host/bucket/object?uploadId=id&foo=bar&partNumber=1"),
+            headers));
+
+    // The date is left empty when the Xiaomi date is present
+    headers = new Header[] {
+        new BasicHeader(Common.DATE, "Thu, 01 Jan 2015 00:00:00 GMT"),
+        new BasicHeader("x-xiaomi-date", "Thu, 01 Jan 2015 00:00:01 GMT")
+    };
+    Assert.assertEquals("PUT\n\n\n\n"
+        + "x-xiaomi-date:Thu, 01 Jan 2015 00:00:01 GMT\n/bucket/object?uploads",
+        SignatureCredential.getStringToSign(HttpMethod.PUT, new URI(
+            "http://host/bucket/object?uploads"), headers));
+
+    // The expiration time of a presigned URI replaces the date
+    Assert.assertEquals("GET\n\n\n1000\n/bucket/object",
+        SignatureCredential.getStringToSign(HttpMethod.GET, new URI(
+            "http://host/bucket/object?GalaxyAccessKeyId=key&Expires=1000"),
+            null));
+  }
+
+  @Test
+  public void testSign() throws Exception {
+    HttpPut request = new HttpPut("http://host/bucket/object?uploads");
+    new SignatureCredential("key", "secret").addHeader(request);
+
+    Mac mac = Mac.getInstance("HmacSHA1");
+    mac.init(new SecretKeySpec("secret".getBytes("UTF-8"), "HmacSHA1"));
+    String stringToSign = SignatureCredential.getStringToSign(HttpMethod.PUT,
+        request.getURI(), request.getAllHeaders());
+    Assert.assertEquals("Galaxy-V2 key:" + Util.encodeBase64(
+        mac.doFinal(stringToSign.getBytes("UTF-8"))),
+        request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+
+    // RFC 2202 test case 2
+    mac.init(new SecretKeySpec("Jefe".getBytes("UTF-8"), "HmacSHA1"));
+    Assert.assertEquals("7/zfauXrL6LSdBbV8YTfnCWafHk=", Util.encodeBase64(
+        mac.doFinal("what do ya want for nothing?".getBytes("UTF-8"))));
+    Assert.assertEquals("Zm8=", Util.encodeBase64("fo".getBytes("UTF-8")));
+    Assert.assertEquals("Zg==", Util.encodeBase64("f".getBytes("UTF-8")));
+  }
+
+  @Test
+  public void testSameAsSigner() throws Exception {
+    // Mixed-case meta headers with repeated values and sub-resources
+    HttpPut request = new HttpPut("http://host/bucket/object"
+        + "?uploadId=id&foo=bar&partNumber=1");
+    request.addHeader(Common.CONTENT_TYPE, "text/plain");
+    request.addHeader(Common.CONTENT_MD5, "md5");
+    request.addHeader("X-Xiaomi-Meta-B", "1");
+    request.addHeader("x-xiaomi-Meta-a", "2");
+    request.addHeader("X-Xiaomi-Meta-B", "3");
+    checkAuthorization(request);
+
+    // The date is not signed when the Xiaomi date is present
+    request = new HttpPut("http://host/bucket/object?uploads");
+    request.addHeader("x-xiaomi-date", "Thu, 01 Jan 2015 00:00:00 GMT");
+    checkAuthorization(request);
+  }
+
+  @Test
+  public void testPresignSameAsSigner() throws Exception {
+    long expires = System.currentTimeMillis() + 3600 * 1000;
+    String presignedUri = new SignatureCredential(ACCESS_KEY, SECRET_KEY)
+        .presignUri("http://host/bucket/object", HttpMethod.GET, expires);
+    Assert.assertEquals(Signer.generatePresignedUri("http://host/",
+        "bucket", "object", null, new Date(expires), HttpMethod.GET,
+        ACCESS_KEY, SECRET_KEY, SignAlgorithm.HmacSHA1).toString(),
+        presignedUri);
+
+    // Presigned URIs with sub-resources
+    URI uri = new URI("http://host/bucket/object?acl&GalaxyAccessKeyId="
+        + ACCESS_KEY + "&Expires=" + expires);
+    Mac mac = Mac.getInstance("HmacSHA1");
+    mac.init(new SecretKeySpec(SECRET_KEY.getBytes("UTF-8"), "HmacSHA1"));
+    Assert.assertEquals(Signer.signToBase64(HttpMethod.GET, uri, null,
+        SECRET_KEY, SignAlgorithm.HmacSHA1), Util.encodeBase64(mac.doFinal(
+        SignatureCredential.getStringToSign(HttpMethod.GET, uri, null)
+            .getBytes("UTF-8"))));
+    Assert.assertEquals(Signer.generatePresignedUri("http://host/",
+        "bucket", "object", Arrays.asList("acl"), new Date(expires),
+        HttpMethod.GET, ACCESS_KEY, SECRET_KEY, SignAlgorithm.HmacSHA1)
+        .getRawQuery(), uri.getRawQuery() + "&Signature=" + Signer
+        .signToBase64(HttpMethod.GET, uri, null, SECRET_KEY,
+            SignAlgorithm.HmacSHA1));
+  }
+
+  private void checkAuthorization(HttpPut request) throws Exception {
+    new SignatureCredential(ACCESS_KEY, SECRET_KEY).addHeader(request);
+
+    LinkedListMultimap<String, String> headers = LinkedListMultimap.create();
+    for (Header header : request.getAllHeaders()) {
+      if (!header.getName().equals(HttpHeaders.AUTHORIZATION)) {
+        headers.put(header.getName(), header.getValue());
+      }
+    }
+    Assert.assertEquals(Signer.getAuthorizationHeader(HttpMethod.PUT,
+        request.getURI(), headers, ACCESS_KEY, SECRET_KEY,
+        SignAlgorithm.HmacSHA1),
+        request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+  }
+}
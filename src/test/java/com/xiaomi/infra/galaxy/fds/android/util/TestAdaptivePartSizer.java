@@ -0,0 +1,49 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestAdaptivePartSizer {
+
+  @Test
+  public void testInitialPartSize() {
+    Assert.assertEquals(4096, new AdaptivePartSizer(4096, 1024, 8192)
+        .getPartSize());
+    Assert.assertEquals(1024, new AdaptivePartSizer(100, 1024, 8192)
+        .getPartSize());
+    Assert.assertEquals(8192, new AdaptivePartSizer(100000, 1024, 8192)
+        .getPartSize());
+  }
+
+  @Test
+  public void testGrowOnFastLink() {
+    AdaptivePartSizer sizer = new AdaptivePartSizer(1024, 1024,
+        1024 * 1024);
+    // 1 MB per second, parts should grow to 2 MB but are bounded by max
+    sizer.onPartUploaded(1024, 1);
+    Assert.assertEquals(2048, sizer.getPartSize());
+    for (int i = 0; i < 20; i++) {
+      sizer.onPartUploaded(sizer.getPartSize(), sizer.getPartSize() / 1024);
+    }
+    Assert.assertEquals(1024 * 1024, sizer.getPartSize());
+  }
+
+  @Test
+  public void testShrinkOnSlowLink() {
+    AdaptivePartSizer sizer = new AdaptivePartSizer(1024 * 1024, 1024,
+        1024 * 1024);
+    // 1 KB per second
+    for (int i = 0; i < 20; i++) {
+      sizer.onPartUploaded(sizer.getPartSize(), sizer.getPartSize());
+    }
+    Assert.assertEquals(2000, sizer.getPartSize());
+    sizer.onPartUploaded(1024, 100 * 1000);
+    sizer.onPartUploaded(1024, 100 * 1000);
+    Assert.assertEquals(1024, sizer.getPartSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBounds() {
+    new AdaptivePartSizer(1024, 8192, 1024);
+  }
+}
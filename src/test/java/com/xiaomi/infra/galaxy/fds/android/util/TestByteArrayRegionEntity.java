@@ -0,0 +1,60 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteArrayRegionEntity {
+
+  @Test
+  public void testRegion() throws IOException {
+    byte[] buffer = "0123456789".getBytes();
+    ByteArrayRegionEntity entity = new ByteArrayRegionEntity(buffer, 2, 5);
+    Assert.assertSame(buffer, entity.getBuffer());
+    Assert.assertEquals(5, entity.getContentLength());
+    Assert.assertTrue(entity.isRepeatable());
+    Assert.assertFalse(entity.isStreaming());
+
+    // Repeatable, the same region is written every time
+    for (int i = 0; i < 2; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      entity.writeTo(out);
+      Assert.assertEquals("23456", out.toString());
+      InputStream in = entity.getContent();
+      out = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1) {
+        out.write(b);
+      }
+      Assert.assertEquals("23456", out.toString());
+    }
+  }
+
+  @Test
+  public void testNotCopied() throws IOException {
+    byte[] buffer = "0123456789".getBytes();
+    ByteArrayRegionEntity entity = new ByteArrayRegionEntity(buffer, 0, 3);
+    buffer[0] = 'a';
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    Assert.assertEquals("a12", out.toString());
+  }
+
+  @Test
+  public void testInvalidRegion() {
+    byte[] buffer = new byte[10];
+    int[][] regions = {{-1, 5}, {0, -1}, {6, 5}, {0, 11}};
+    for (int[] region : regions) {
+      try {
+        new ByteArrayRegionEntity(buffer, region[0], region[1]);
+        Assert.fail("Invalid region, should fail");
+      } catch (IllegalArgumentException e) {
+      }
+    }
+    Assert.assertEquals(0, new ByteArrayRegionEntity(buffer, 10, 0)
+        .getContentLength());
+  }
+}
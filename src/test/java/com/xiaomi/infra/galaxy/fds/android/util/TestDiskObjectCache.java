@@ -0,0 +1,120 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+
+public class TestDiskObjectCache {
+  private File directory;
+
+  @Before
+  public void setup() throws IOException {
+    directory = File.createTempFile("TestDiskObjectCache", "");
+    directory.delete();
+    directory.mkdirs();
+    directory.deleteOnExit();
+  }
+
+  @Test
+  public void testCacheObject() throws IOException {
+    DiskObjectCache cache = new DiskObjectCache(directory, 1024);
+    Assert.assertNull(cache.get("key"));
+
+    ObjectMetadata metadata = createMetadata(3);
+    metadata.addUserMetadata(Consts.XIAOMI_META_HEADER_PREFIX + "test",
+        "value");
+    Assert.assertArrayEquals("abc".getBytes(), readFully(cache.cache(
+        new ByteArrayInputStream("abc".getBytes()), "key", metadata, "etag")));
+
+    DiskObjectCache.Entry entry = cache.get("key");
+    Assert.assertNotNull(entry);
+    Assert.assertEquals("etag", entry.getEtag());
+    Assert.assertEquals(3, entry.getMetadata().getContentLength());
+    Assert.assertEquals("value", entry.getMetadata().getUserMetadata().get(
+        Consts.XIAOMI_META_HEADER_PREFIX + "test"));
+    Assert.assertArrayEquals("abc".getBytes(), readFully(entry.getContent()));
+
+    // Entries are kept across instances
+    cache = new DiskObjectCache(directory, 1024);
+    entry = cache.get("key");
+    Assert.assertNotNull(entry);
+    entry.getContent().close();
+
+    cache.remove("key");
+    Assert.assertNull(cache.get("key"));
+  }
+
+  @Test
+  public void testClosedAfterWholeContent() throws IOException {
+    DiskObjectCache cache = new DiskObjectCache(directory, 1024);
+    InputStream in = cache.cache(new ByteArrayInputStream("abc".getBytes()),
+        "key", createMetadata(3), null);
+    // Closed without reading the end of the stream
+    Assert.assertEquals(3, in.read(new byte[3]));
+    in.close();
+
+    DiskObjectCache.Entry entry = cache.get("key");
+    Assert.assertNotNull(entry);
+    Assert.assertArrayEquals("abc".getBytes(), readFully(entry.getContent()));
+  }
+
+  @Test
+  public void testPartiallyReadObject() throws IOException {
+    DiskObjectCache cache = new DiskObjectCache(directory, 1024);
+    InputStream in = cache.cache(new ByteArrayInputStream("abc".getBytes()),
+        "key", createMetadata(3), null);
+    in.read();
+    in.close();
+    Assert.assertNull(cache.get("key"));
+
+    // Truncated content
+    readFully(cache.cache(new ByteArrayInputStream("ab".getBytes()), "key",
+        createMetadata(3), null));
+    Assert.assertNull(cache.get("key"));
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    DiskObjectCache cache = new DiskObjectCache(directory, 10);
+    for (String key : new String[] {"a", "b", "c"}) {
+      readFully(cache.cache(new ByteArrayInputStream(new byte[4]), key,
+          createMetadata(4), null));
+    }
+    // a is evicted as the least recently used
+    Assert.assertNull(cache.get("a"));
+    cache.get("b").getContent().close();
+    readFully(cache.cache(new ByteArrayInputStream(new byte[4]), "d",
+        createMetadata(4), null));
+    Assert.assertNull(cache.get("c"));
+    cache.get("b").getContent().close();
+    cache.get("d").getContent().close();
+  }
+
+  private static ObjectMetadata createMetadata(long contentLength) {
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(contentLength);
+    return metadata;
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[2];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        out.write(buffer, 0, bytesRead);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
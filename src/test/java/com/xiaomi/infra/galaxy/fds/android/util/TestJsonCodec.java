@@ -0,0 +1,65 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.xiaomi.infra.galaxy.fds.android.model.InitMultipartUploadResult;
+import com.xiaomi.infra.galaxy.fds.android.model.PutObjectResult;
+import com.xiaomi.infra.galaxy.fds.android.model.UploadPartResult;
+
+public class TestJsonCodec {
+
+  @Test
+  public void testParseResults() throws IOException {
+    InitMultipartUploadResult initResult =
+        JsonCodec.parseInitMultipartUploadResult(toStream("{\"bucketName\":"
+            + "\"bucket\",\"objectName\":\"object\",\"uploadId\":\"id\"}"));
+    Assert.assertEquals("bucket", initResult.getBucketName());
+    Assert.assertEquals("object", initResult.getObjectName());
+    Assert.assertEquals("id", initResult.getUploadId());
+
+    UploadPartResult partResult = JsonCodec.parseUploadPartResult(toStream(
+        "{\"partNumber\":3,\"etag\":\"etag\",\"partSize\":4096,"
+            + "\"unknown\":{\"a\":[1,2]}}"));
+    Assert.assertEquals(3, partResult.getPartNumber());
+    Assert.assertEquals("etag", partResult.getEtag());
+    Assert.assertEquals(4096, partResult.getPartSize());
+
+    PutObjectResult putResult = new PutObjectResult();
+    putResult.setBucketName("bucket");
+    putResult.setObjectName("object");
+    putResult.setAccessKeyId("key");
+    putResult.setSignature("signature");
+    putResult.setExpires(Long.MAX_VALUE);
+    PutObjectResult parsedResult = JsonCodec.parsePutObjectResult(toStream(
+        JsonCodec.toJson(putResult)));
+    Assert.assertEquals(putResult.getRelativePresignedUri(),
+        parsedResult.getRelativePresignedUri());
+
+    parsedResult = JsonCodec.parsePutObjectResult(toStream(
+        "{\"bucketName\":null}"));
+    Assert.assertNull(parsedResult.getBucketName());
+  }
+
+  @Test
+  public void testParseMalformedResults() {
+    String[] malformedJsons = new String[] {"", "[]", "{\"partNumber\":\"a\"}",
+        "{\"partNumber\":1"};
+    for (String json : malformedJsons) {
+      try {
+        JsonCodec.parseUploadPartResult(toStream(json));
+        Assert.fail("Should fail to parse " + json);
+      } catch (IOException e) {
+        // Expected
+      }
+    }
+  }
+
+  private static InputStream toStream(String json) throws IOException {
+    return new ByteArrayInputStream(json.getBytes("UTF-8"));
+  }
+}
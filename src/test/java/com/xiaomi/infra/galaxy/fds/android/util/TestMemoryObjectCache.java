@@ -0,0 +1,147 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.xiaomi.infra.galaxy.fds.android.model.ObjectMetadata;
+
+public class TestMemoryObjectCache {
+
+  @Test
+  public void testCacheObject() throws IOException {
+    MemoryObjectCache cache = new MemoryObjectCache(1024, 16, 60000);
+    Assert.assertNull(cache.get("key"));
+
+    ObjectMetadata metadata = createMetadata(3);
+    metadata.addUserMetadata(Consts.XIAOMI_META_HEADER_PREFIX + "test",
+        "value");
+    Assert.assertArrayEquals("abc".getBytes(), readFully(cache.cache(
+        new ByteArrayInputStream("abc".getBytes()), "key", "object",
+        metadata)));
+
+    MemoryObjectCache.Entry entry = cache.get("key");
+    Assert.assertNotNull(entry);
+    Assert.assertArrayEquals("abc".getBytes(), entry.getContent());
+    Assert.assertEquals(3, entry.getMetadata().getContentLength());
+    Assert.assertEquals("value", entry.getMetadata().getUserMetadata().get(
+        Consts.XIAOMI_META_HEADER_PREFIX + "test"));
+
+    cache.remove("key");
+    Assert.assertNull(cache.get("key"));
+  }
+
+  @Test
+  public void testClosedAfterWholeContent() throws IOException {
+    MemoryObjectCache cache = new MemoryObjectCache(1024, 16, 60000);
+    InputStream in = cache.cache(new ByteArrayInputStream("abc".getBytes()),
+        "key", "object", createMetadata(3));
+    // Closed without reading the end of the stream
+    Assert.assertEquals(3, in.read(new byte[3]));
+    in.close();
+
+    MemoryObjectCache.Entry entry = cache.get("key");
+    Assert.assertNotNull(entry);
+    Assert.assertArrayEquals("abc".getBytes(), entry.getContent());
+  }
+
+  @Test
+  public void testUncacheableObject() throws IOException {
+    MemoryObjectCache cache = new MemoryObjectCache(1024, 16, 60000);
+    InputStream in = cache.cache(new ByteArrayInputStream("abc".getBytes()),
+        "key", "object", createMetadata(3));
+    in.read();
+    in.close();
+    Assert.assertNull(cache.get("key"));
+
+    // Truncated content
+    readFully(cache.cache(new ByteArrayInputStream("ab".getBytes()), "key",
+        "object", createMetadata(3)));
+    Assert.assertNull(cache.get("key"));
+
+    // Too large
+    readFully(cache.cache(new ByteArrayInputStream(new byte[17]), "key",
+        "object", createMetadata(17)));
+    Assert.assertNull(cache.get("key"));
+
+    // Unknown size
+    readFully(cache.cache(new ByteArrayInputStream("abc".getBytes()), "key",
+        "object", new ObjectMetadata()));
+    Assert.assertNull(cache.get("key"));
+  }
+
+  @Test
+  public void testRemoveObject() throws IOException {
+    MemoryObjectCache cache = new MemoryObjectCache(1024, 16, 60000);
+    readFully(cache.cache(new ByteArrayInputStream("abc".getBytes()), "key1",
+        "object", createMetadata(3)));
+    readFully(cache.cache(new ByteArrayInputStream("abc".getBytes()), "key2",
+        "object", createMetadata(3)));
+    readFully(cache.cache(new ByteArrayInputStream("abc".getBytes()), "key3",
+        "other", createMetadata(3)));
+    InputStream in = cache.cache(new ByteArrayInputStream("abc".getBytes()),
+        "key4", "other", createMetadata(3));
+
+    // All the entries of the object are removed
+    cache.removeObject("object");
+    Assert.assertNull(cache.get("key1"));
+    Assert.assertNull(cache.get("key2"));
+    Assert.assertNotNull(cache.get("key3"));
+
+    // The content being read may be stale and is not cached
+    readFully(in);
+    Assert.assertNull(cache.get("key4"));
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    MemoryObjectCache cache = new MemoryObjectCache(160, 16, 60000);
+    for (int i = 0; i < 100; i++) {
+      readFully(cache.cache(new ByteArrayInputStream(new byte[4]), "key" + i,
+          "object" + i, createMetadata(4)));
+    }
+    int cachedSize = 0;
+    for (int i = 0; i < 100; i++) {
+      MemoryObjectCache.Entry entry = cache.get("key" + i);
+      if (entry != null) {
+        cachedSize += entry.getContent().length;
+      }
+    }
+    Assert.assertTrue(cachedSize > 0 && cachedSize <= 160);
+    // The most recently cached object is kept
+    Assert.assertNotNull(cache.get("key99"));
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    MemoryObjectCache cache = new MemoryObjectCache(1024, 16, 1);
+    readFully(cache.cache(new ByteArrayInputStream("abc".getBytes()), "key",
+        "object", createMetadata(3)));
+    Thread.sleep(10);
+    Assert.assertNull(cache.get("key"));
+  }
+
+  private static ObjectMetadata createMetadata(long contentLength) {
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(contentLength);
+    return metadata;
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[2];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        out.write(buffer, 0, bytesRead);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestReleasableTask {
+
+  @Test(timeout = 10 * 1000)
+  public void testReleasedOnce() throws Exception {
+    final Semaphore permits = new Semaphore(3);
+    final AtomicInteger releases = new AtomicInteger(0);
+    final CountDownLatch isStarted = new CountDownLatch(1);
+    final CountDownLatch isUnblocked = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      List<ReleasableTask<Integer>> tasks =
+          new ArrayList<ReleasableTask<Integer>>();
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 3; i++) {
+        final int value = i;
+        permits.acquire();
+        ReleasableTask<Integer> task = new ReleasableTask<Integer>(
+            new Callable<Integer>() {
+              @Override
+              public Integer call() throws Exception {
+                isStarted.countDown();
+                isUnblocked.await();
+                return value;
+              }
+            }, new Runnable() {
+              @Override
+              public void run() {
+                releases.incrementAndGet();
+                permits.release();
+              }
+            });
+        tasks.add(task);
+        futures.add(executor.submit(task));
+      }
+      isStarted.await();
+      Assert.assertEquals(0, permits.availablePermits());
+
+      // The running task can't be cancelled, the queued ones give back their
+      // permits at once
+      Assert.assertFalse(tasks.get(0).cancelIfNotStarted());
+      Assert.assertTrue(tasks.get(1).cancelIfNotStarted());
+      Assert.assertFalse(tasks.get(1).cancelIfNotStarted());
+      futures.get(1).cancel(false);
+      Assert.assertEquals(1, permits.availablePermits());
+
+      // The last one is cancelled without cancelling its future, it must not
+      // run once the executor gets to it
+      Assert.assertTrue(tasks.get(2).cancelIfNotStarted());
+      Assert.assertEquals(2, permits.availablePermits());
+      isUnblocked.countDown();
+      Assert.assertEquals(0, futures.get(0).get().intValue());
+      try {
+        futures.get(2).get();
+        Assert.fail("The task is cancelled");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof CancellationException);
+      }
+      Assert.assertEquals(3, permits.availablePermits());
+      Assert.assertEquals(3, releases.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
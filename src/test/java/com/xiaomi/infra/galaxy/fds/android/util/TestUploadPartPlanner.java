@@ -0,0 +1,77 @@
+package com.xiaomi.infra.galaxy.fds.android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestUploadPartPlanner {
+
+  @Test
+  public void testSmallObject() {
+    UploadPartPlanner planner = new UploadPartPlanner(10, 10000);
+    List<UploadPartPlanner.Part> parts = planAll(planner, 4);
+    Assert.assertEquals(3, parts.size());
+    Assert.assertEquals(4, parts.get(0).getLength());
+    Assert.assertEquals(8, parts.get(2).getOffset());
+    Assert.assertEquals(2, parts.get(2).getLength());
+    Assert.assertEquals(3, parts.get(2).getPartNumber());
+
+    Assert.assertFalse(new UploadPartPlanner(0, 10000).hasNextPart());
+  }
+
+  @Test
+  public void testVaryingPartSize() {
+    UploadPartPlanner planner = new UploadPartPlanner(100, 10000);
+    UploadPartPlanner.Part part = planner.nextPart(10);
+    Assert.assertEquals(10, part.getLength());
+    part = planner.nextPart(30);
+    Assert.assertEquals(10, part.getOffset());
+    Assert.assertEquals(30, part.getLength());
+    part = planner.nextPart(100);
+    Assert.assertEquals(40, part.getOffset());
+    Assert.assertEquals(60, part.getLength());
+    Assert.assertFalse(planner.hasNextPart());
+  }
+
+  @Test
+  public void testLargeObject() {
+    long contentLength = 5L * 1024 * 1024 * 1024 + 1;
+    int maxPartNumber = 10000;
+    UploadPartPlanner planner = new UploadPartPlanner(contentLength,
+        maxPartNumber);
+    List<UploadPartPlanner.Part> parts = planAll(planner, 4096);
+    Assert.assertTrue(parts.get(0).getLength() > 4096);
+    Assert.assertTrue(parts.size() <= maxPartNumber);
+
+    UploadPartPlanner.Part last = parts.get(parts.size() - 1);
+    Assert.assertEquals(parts.size(), last.getPartNumber());
+    Assert.assertTrue(last.getLength() > 0);
+    Assert.assertEquals(contentLength, last.getOffset() + last.getLength());
+  }
+
+  @Test
+  public void testMaxPartNumber() {
+    UploadPartPlanner planner = new UploadPartPlanner(100, 3);
+    // 100 bytes must fit in 3 parts
+    Assert.assertEquals(34, planner.nextPart(10).getLength());
+    Assert.assertEquals(33, planner.nextPart(10).getLength());
+    Assert.assertEquals(33, planner.nextPart(10).getLength());
+    Assert.assertFalse(planner.hasNextPart());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooLargeObject() {
+    new UploadPartPlanner(Long.MAX_VALUE, 10000);
+  }
+
+  private List<UploadPartPlanner.Part> planAll(UploadPartPlanner planner,
+      int partSize) {
+    List<UploadPartPlanner.Part> parts = new ArrayList<UploadPartPlanner.Part>();
+    while (planner.hasNextPart()) {
+      parts.add(planner.nextPart(partSize));
+    }
+    return parts;
+  }
+}